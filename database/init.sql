@@ -41,6 +41,8 @@ CREATE TABLE `clients` (
   `client_id` BIGINT    NOT NULL AUTO_INCREMENT,
   `full_name` VARCHAR(255) NOT NULL,
   `account_number` VARCHAR(8)  NOT NULL,
+  -- Bumped by every insert and update, including renames, so the backend can tell the table changed
+  `updated_at`     DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6) ON UPDATE CURRENT_TIMESTAMP(6),
   PRIMARY KEY (`client_id`),
   UNIQUE KEY `uk_clients_account_number` (`account_number`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci; 
@@ -96,7 +98,8 @@ CREATE TABLE `documents` (
   `document_id`    BIGINT    NOT NULL AUTO_INCREMENT,
   `client_id`      BIGINT    NOT NULL,
   `department_id`  BIGINT    DEFAULT NULL,
-  `file_name`      VARCHAR(255) NOT NULL,
+  -- Binary collation: file names that differ only in case or accents are different files
+  `file_name`      VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL,
   `file_path`      TEXT      NOT NULL,
   `date_modified`  DATETIME  NOT NULL,
   `fund_date`      DATE      DEFAULT NULL,
@@ -106,6 +109,7 @@ CREATE TABLE `documents` (
   `index_status`   ENUM('Indexed','Pending','Error') DEFAULT 'Pending',
   `snippet`        TEXT,
   PRIMARY KEY (`document_id`),
+  UNIQUE KEY `uk_documents_file_name` (`file_name`),
   KEY `fk_documents_clients`     (`client_id`),
   KEY `fk_documents_departments` (`department_id`),
   CONSTRAINT `fk_documents_clients`
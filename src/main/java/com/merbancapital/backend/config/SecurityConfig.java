@@ -3,6 +3,7 @@ package com.merbancapital.backend.config;
 import com.merbancapital.backend.security.CustomUserDetailsService;
 import com.merbancapital.backend.security.JwtAuthFilter;
 import com.merbancapital.backend.security.JwtTokenProvider;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
@@ -55,6 +56,10 @@ public class SecurityConfig {
                 // Error path should be accessible so you can see actual errors
                 .requestMatchers("/error").permitAll()
 
+                // Async dispatches finish a request that was already authorised (streaming exports); the
+                // JWT filter does not run again for them
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                 // Allow preflight requests
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
 
@@ -1,9 +1,18 @@
 package com.merbancapital.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.merbancapital.backend.dto.SearchFilters;
 import com.merbancapital.backend.dto.SearchResponse;
 import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.search.CursorExpiredException;
+import com.merbancapital.backend.search.SearchScope;
+import com.merbancapital.backend.service.CatalogFacetService;
+import com.merbancapital.backend.service.ClientAutocompleteService;
+import com.merbancapital.backend.service.DocumentExportWriter;
 import com.merbancapital.backend.service.DocumentSearchService;
+import com.merbancapital.backend.service.SecurityService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import java.io.File;
 import java.net.URLEncoder;
@@ -17,11 +26,16 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -30,21 +44,91 @@ public class DocumentController {
 
     // Filesystem-based search service that scans OCR folders
     private final DocumentSearchService documentSearchService;
+    private final CatalogFacetService catalogFacetService;
+    private final ClientAutocompleteService clientAutocompleteService;
+    private final SecurityService securityService;
+    private final ObjectMapper objectMapper;
 
-    public DocumentController(DocumentSearchService documentSearchService) {
+    // How long one search export may stream before the request times out (ms)
+    @Value("${documents.export.timeout-ms:600000}")
+    private long exportTimeoutMs;
+
+    public DocumentController(DocumentSearchService documentSearchService, CatalogFacetService catalogFacetService,
+                              ClientAutocompleteService clientAutocompleteService, SecurityService securityService,
+                              ObjectMapper objectMapper) {
         this.documentSearchService = documentSearchService;
+        this.catalogFacetService = catalogFacetService;
+        this.clientAutocompleteService = clientAutocompleteService;
+        this.securityService = securityService;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * 1) Search documents with filters.
      *    Admins see all; users see only their department’s documents.
+     *    Send back the response's nextCursor as "cursor" to page deep result sets without offsets.
+     *    Admins may set "explain": true to get per-stage timings and strategies with the results.
      */
     @PostMapping("/search")
     @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
-    public ResponseEntity<SearchResponse> searchDocuments(@RequestBody SearchFilters filters) {
-        // Use the filesystem-backed search service which scans the OCR folders
-        SearchResponse resp = documentSearchService.search(filters);
-        return ResponseEntity.ok(resp);
+    public ResponseEntity<?> searchDocuments(@RequestBody SearchFilters filters, Authentication authentication) {
+        // Department visibility is applied inside the search engine, so totals and pages are per caller
+        if (Boolean.TRUE.equals(filters.getExplain()) && !securityService.isAdmin(authentication)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "explain is available to admins only"));
+        }
+        try {
+            SearchResponse resp = documentSearchService.search(filters, securityService.searchScopeOf(authentication));
+            return ResponseEntity.ok(resp);
+        } catch (IllegalArgumentException e) {
+            // malformed cursor or cursor reused with different filters
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (CursorExpiredException e) {
+            // the catalog generation the cursor was paging has been dropped
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Export every document matching the filters, same visibility rules as search.
+     *    Example: POST /api/documents/search/export?format=csv
+     *    format is ndjson (default) or csv. Results come in sortBy order, or catalog order without one;
+     *    paging fields and the cursor are ignored. Documents are written as they are visited from a single
+     *    catalog snapshot, so a slow reader only slows the export down. On timeout the export stops at the
+     *    next document instead of writing on into a response the container has already finished.
+     */
+    @PostMapping("/search/export")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
+    public WebAsyncTask<ResponseEntity<?>> exportDocuments(@RequestBody SearchFilters filters,
+                                                          @RequestParam(value = "format", required = false) String format,
+                                                          Authentication authentication, HttpServletResponse response) {
+        DocumentExportWriter.Format fmt = DocumentExportWriter.Format.parse(format);
+        SearchScope scope = securityService.searchScopeOf(authentication);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        // Exports may stream for minutes; the longer timeout applies to this endpoint only
+        WebAsyncTask<ResponseEntity<?>> task = new WebAsyncTask<>(exportTimeoutMs, () -> {
+            if (fmt == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Unsupported export format: " + format));
+            }
+            response.setContentType(fmt.contentType() + ";charset=UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                    .filename("documents." + fmt.extension()).build().toString());
+            try (DocumentExportWriter writer = DocumentExportWriter.open(fmt, response.getOutputStream(), objectMapper, timedOut::get)) {
+                documentSearchService.forEachMatch(filters, scope, writer);
+            } catch (UncheckedIOException e) {
+                // client went away mid-export
+                throw e.getCause();
+            } catch (CancellationException e) {
+                // timed out; the container has already completed the request
+            }
+            // Written straight to the response
+            return null;
+        });
+        task.onTimeout(() -> {
+            timedOut.set(true);
+            // No result of our own: the default timeout handling answers if nothing has been written yet
+            return null;
+        });
+        return task;
     }
 
     /**
@@ -128,24 +212,23 @@ public class DocumentController {
     /**
      * 4a) List all departments for dropdown.
      *     Admin sees all; users also see all departments (UI may disable others).
+     *     Answered from the catalog's facet counters: departments that have documents, most first.
      */
     @GetMapping("/filters/departments")
     @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
     public ResponseEntity<List<String>> listDepartments() {
-    // Departments require DB-backed data; not implemented for filesystem-only mode
-    return ResponseEntity.ok(List.of());
+        return ResponseEntity.ok(catalogFacetService.departments());
     }
 
     /**
-     * 4b) Search clients by prefix.
+     * 4b) Search clients by prefix (full name, any word of it, or account number), busiest clients first.
      */
     @GetMapping("/filters/clients")
     @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
     public ResponseEntity<List<String>> searchClients(
             @RequestParam("q") String query,
             @RequestParam(value = "limit", defaultValue = "10") int limit) {
-    // Client search requires DB; return empty list in filesystem mode
-    return ResponseEntity.ok(List.of());
+        return ResponseEntity.ok(clientAutocompleteService.complete(query, Math.max(0, limit)));
     }
 
     /**
@@ -153,9 +236,9 @@ public class DocumentController {
      */
     @GetMapping("/filters/file-extensions")
     @PreAuthorize("hasRole('ADMIN') or hasRole('USER')")
-    public ResponseEntity<List<Object>> listFileExtensions() {
-        // File extension counts require DB aggregation. Return empty list for now.
-        return ResponseEntity.ok(List.of());
+    public ResponseEntity<List<Map<String, Object>>> listFileExtensions() {
+        // Maintained incrementally as the catalog changes; no aggregation at request time
+        return ResponseEntity.ok(catalogFacetService.extensions());
     }
 
     /**
@@ -1,6 +1,12 @@
 package com.merbancapital.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.merbancapital.backend.dto.OcrBulkNotifyResponse;
 import com.merbancapital.backend.dto.OcrMetadata;
+import com.merbancapital.backend.service.OcrNotificationService;
+import com.merbancapital.backend.service.PersistBacklogException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,26 +16,75 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/ocr")
 @CrossOrigin(origins = "*")
 public class OcrController {
 
+    // Suggested wait before resending a notification refused for a documents write backlog
+    private static final int RETRY_AFTER_SECONDS = 5;
+
     private final Logger log = LoggerFactory.getLogger(OcrController.class);
     private final RestTemplate restTemplate;
+    private final OcrNotificationService notificationService;
+    private final ObjectMapper objectMapper;
 
     @Value("${OCR_API_URL:http://159.203.97.98:8000}")
     private String ocrApiUrl;
 
-    public OcrController(RestTemplateBuilder restTemplateBuilder) {
+    public OcrController(RestTemplateBuilder restTemplateBuilder, OcrNotificationService notificationService,
+                         ObjectMapper objectMapper) {
         this.restTemplate = restTemplateBuilder.build();
+        this.notificationService = notificationService;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * The OCR service reports a renamed, (partially) indexed file. The catalog entry is replaced in place, so
+     * the file is searchable under its new name once this returns. Answers 503 with Retry-After while the
+     * documents table is too far behind to take the row.
+     */
     @PostMapping("/notify")
-    public OcrMetadata receiveMetadata(@RequestBody OcrMetadata meta) {
+    public ResponseEntity<?> receiveMetadata(@Valid @RequestBody OcrMetadata meta) {
         log.info("Received OCR metadata: {}", meta);
-        // TODO: later, save to DB or index
-        return meta;
+        try {
+            notificationService.apply(meta);
+        } catch (PersistBacklogException e) {
+            return backlog(e);
+        }
+        return ResponseEntity.ok(meta);
+    }
+
+    /**
+     * Bulk variant of {@link #receiveMetadata} for backfills: a JSON array of metadata records, or NDJSON (one
+     * record per line). Records are validated as they stream in and the valid ones applied to the catalog in one
+     * change; the response reports the outcome of every record. Reading stops where the documents table's
+     * write queue runs out of room (the response is then incomplete), and the request is refused with 503 when
+     * there is no room at all.
+     */
+    @PostMapping(value = "/notify/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public ResponseEntity<?> receiveMetadataBulk(HttpServletRequest request) throws IOException {
+        OcrBulkNotifyResponse response;
+        try {
+            response = notificationService.applyBulk(request.getInputStream(), objectMapper);
+        } catch (PersistBacklogException e) {
+            return backlog(e);
+        }
+        log.info("Received OCR metadata batch: {} records, {} applied, {} superseded, {} rejected, {} not persisted{}",
+                response.getReceived(), response.getApplied(), response.getSuperseded(), response.getRejected(),
+                response.getNotPersisted(), response.isComplete() ? ""
+                        : " (incomplete, resume from " + response.getResumeFrom() + ": " + response.getStopReason() + ")");
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<?> backlog(PersistBacklogException e) {
+        log.warn("Refusing OCR notification: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                .body(Map.of("error", e.getMessage()));
     }
 
     /**
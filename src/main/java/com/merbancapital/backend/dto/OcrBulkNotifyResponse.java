@@ -0,0 +1,46 @@
+package com.merbancapital.backend.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OcrBulkNotifyResponse {
+    // Records read from the request; received = applied + superseded + rejected
+    private int received;
+    private int applied;
+    // Records that failed validation
+    private int rejected;
+    // Valid records replaced by a later record for the same file in this batch
+    private int superseded;
+    // Applied records the documents table's write queue could not take (it was full); resend them later
+    private int notPersisted;
+    // False when reading stopped early (malformed input, the batch limit or a full write queue)
+    private boolean complete;
+    // When incomplete: index of the first record not read, to resend from; null otherwise
+    private Integer resumeFrom;
+    // When incomplete: why reading stopped
+    private String stopReason;
+    // Catalog generation that holds the applied records; 0 when nothing was applied
+    private long generation;
+    private List<Item> results;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Item {
+        // Position of the record in the request, from 0; one item per record read
+        private int index;
+        private String originalFileName;
+        private String newFileName;
+        // applied, superseded or rejected
+        private String status;
+        // For applied records: false when the row could not be queued for the documents table; resend it
+        private Boolean persisted;
+        private List<String> errors;
+    }
+}
@@ -14,6 +14,14 @@ public class SearchFilters {
     @Size(max = 100, message = "Client name must not exceed 100 characters")
     private String clientName;
 
+    // Typo-tolerant clientName matching against filename tokens instead of exact substring matching
+    private Boolean clientNameFuzzy;
+
+    // Edit budget per token in fuzzy mode; shorter tokens get less (see TermDictionary). Defaults to 2
+    @Min(value = 0, message = "Max edits must be between 0 and 2")
+    @Max(value = 2, message = "Max edits must be between 0 and 2")
+    private Integer clientNameMaxEdits;
+
     @Pattern(regexp = "^[0-9]{1,20}$", message = "Account number must contain only digits")
     private String accountNumber;
 
@@ -62,6 +70,16 @@ public class SearchFilters {
 
     @Pattern(regexp = "^(asc|desc)$", message = "Sort order must be 'asc' or 'desc'")
     private String sortOrder;
+
+    // Opaque continuation token from a previous SearchResponse.nextCursor; when set, page is ignored
+    @Size(max = 512, message = "Cursor must not exceed 512 characters")
+    private String cursor;
+
+    // When true the response carries facet counts (extension, department, status, client) for the filtered set
+    private Boolean facets;
+
+    // Admins only: when true the response carries per-stage timings, candidate counts and strategies (explain)
+    private Boolean explain;
     
     public Integer getOcrConfidenceMin() {
         return ocrConfidenceMin;
@@ -1,9 +1,11 @@
 package com.merbancapital.backend.dto;
 
 import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.search.SearchProfile;
 import lombok.*;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -15,6 +17,12 @@ public class SearchResponse {
     private int page;
     private int pageSize;
     private int totalPages;
+    // Pass back as SearchFilters.cursor to fetch the following page; null when there are no more results
+    private String nextCursor;
+    // Facet name -> value -> count over all matches (not just this page); only when SearchFilters.facets is true
+    private Map<String, Map<String, Long>> facets;
+    // Per-stage profile of this search; only when SearchFilters.explain is true
+    private SearchProfile explain;
     // All fields from SearchFilters, no default values (will be set in service)
     private String clientName;
     private String accountNumber;
@@ -1,6 +1,7 @@
 package com.merbancapital.backend.model;
 
 import jakarta.persistence.*;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,6 +20,10 @@ public class Client {
     @Column(name = "account_number", nullable = false, unique = true, length = 8)
     private String accountNumber;
 
+    // Maintained by the database on every insert and update
+    @Column(name = "updated_at", insertable = false, updatable = false)
+    private Instant updatedAt;
+
     @OneToMany(mappedBy = "client", cascade = CascadeType.ALL)
     private List<Document> documents = new ArrayList<>();
 
@@ -56,6 +61,10 @@ public class Client {
         this.accountNumber = accountNumber;
     }
 
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
     public List<Document> getDocuments() {
         return documents;
     }
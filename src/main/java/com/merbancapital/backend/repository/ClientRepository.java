@@ -2,11 +2,24 @@ package com.merbancapital.backend.repository;
 
 import com.merbancapital.backend.model.Client;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ClientRepository extends JpaRepository<Client, Integer> {
     List<Client> findByFullNameContainingIgnoreCase(String fragment);
+
+    Optional<Client> findByAccountNumber(String accountNumber);
+
+    // Cheap change check for the in-memory autocomplete index
+    @Query("select max(c.clientId) from Client c")
+    Integer findMaxClientId();
+
+    // Latest insert or update, so renames show up in the change check too
+    @Query("select max(c.updatedAt) from Client c")
+    Instant findLastUpdatedAt();
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.merbancapital.backend.search;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for plain {@code long[]} bitsets (bit i of word i >>> 6) used to pass match sets between the
+ * index lookups and the column filters without boxing.
+ */
+public final class Bits {
+
+    private Bits() {
+    }
+
+    public static int words(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    /** Bitset with ordinals {@code [0, n)} set. */
+    public static long[] all(int n) {
+        long[] words = new long[words(n)];
+        Arrays.fill(words, -1L);
+        int tail = n & 63;
+        if (tail != 0) words[words.length - 1] = (1L << tail) - 1;
+        return words;
+    }
+
+    /** Bitset with exactly the given ordinals set. */
+    public static long[] of(int[] ordinals, int n) {
+        long[] words = new long[words(n)];
+        for (int i : ordinals) words[i >>> 6] |= 1L << i;
+        return words;
+    }
+
+    public static boolean get(long[] words, int i) {
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public static int count(long[] words) {
+        int c = 0;
+        for (long w : words) c += Long.bitCount(w);
+        return c;
+    }
+
+    /** Set ordinals in ascending order. */
+    public static int[] toOrdinals(long[] words) {
+        int[] out = new int[count(words)];
+        int n = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                out[n++] = (w << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+}
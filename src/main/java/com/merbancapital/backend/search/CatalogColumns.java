@@ -0,0 +1,306 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column-oriented copy of the filterable {@link Document} fields, one fixed-width primitive column per field.
+ *
+ * Missing values are stored as {@link #NO_VALUE} (longs) or -1 (confidence); extensions and index
+ * statuses are dictionary encoded with code 0 meaning "none". Filters scan these columns directly instead
+ * of walking Document objects and unboxing their fields. Columns are NIO buffers so the same code reads
+ * heap arrays or off-heap memory, depending on the {@link CatalogStorage} they were built in; only
+ * absolute get/put is used, so they are safe for concurrent readers.
+ *
+ * Rows appended by an incremental change are kept in their own small heap columns behind the shared base
+ * ones (see {@link #appended(List)}), so a change never copies the base. The per-row accessors such as
+ * {@link #department(int)} cover both; the filters read the buffers of each part directly.
+ */
+public final class CatalogColumns {
+
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    // Bytes per row across all columns
+    private static final int ROW_BYTES = 8 + 8 + 8 + 1 + 2 + 1 + 4 + 4;
+
+    final LongBuffer fileSize;
+    final LongBuffer dateModified;   // epoch millis
+    final LongBuffer fundDate;       // epoch millis at UTC midnight
+    final ByteBuffer ocrConfidence;  // 0..100, -1 when unknown
+    final ShortBuffer extension;     // index into extensions, 0 = none
+    final ByteBuffer indexStatus;    // Document.IndexStatus ordinal + 1, 0 = none
+    final IntBuffer department;      // departmentId, -1 when unknown
+    final IntBuffer client;          // clientId, -1 when unknown
+
+    // Rows in the buffers above; rows from here on are in tail
+    private final int rows;
+    // Rows appended since the last full build, in their own heap columns (ordinals from rows); null when none
+    final CatalogColumns tail;
+
+    // Extension dictionary; a tail's extends the base's, so codes mean the same in both
+    private final String[] extensions;
+    private final Map<String, Short> extensionCodes;
+
+    private CatalogColumns(int n, CatalogStorage storage, List<String> extensions, Map<String, Short> extensionCodes) {
+        this.fileSize = storage.longs(n);
+        this.dateModified = storage.longs(n);
+        this.fundDate = storage.longs(n);
+        this.ocrConfidence = storage.bytes(n);
+        this.extension = storage.shorts(n);
+        this.indexStatus = storage.bytes(n);
+        this.department = storage.ints(n);
+        this.client = storage.ints(n);
+        this.rows = n;
+        this.tail = null;
+        this.extensions = extensions.toArray(new String[0]);
+        this.extensionCodes = extensionCodes;
+    }
+
+    public static CatalogColumns of(List<Document> documents) {
+        return of(documents, CatalogStorage.heap());
+    }
+
+    public static CatalogColumns of(List<Document> documents, CatalogStorage storage) {
+        int n = documents.size();
+        List<String> dict = new ArrayList<>();
+        dict.add(null);
+        Map<String, Short> codes = new HashMap<>();
+        short[] ext = encodeExtensions(documents, dict, codes);
+
+        CatalogColumns c = new CatalogColumns(n, storage, dict, codes);
+        for (int i = 0; i < n; i++) c.set(i, documents.get(i), ext[i]);
+        return c;
+    }
+
+    private CatalogColumns(LongBuffer fileSize, LongBuffer dateModified, LongBuffer fundDate, ByteBuffer ocrConfidence,
+                           ShortBuffer extension, ByteBuffer indexStatus, IntBuffer department, IntBuffer client,
+                           String[] extensions) {
+        this.fileSize = fileSize;
+        this.dateModified = dateModified;
+        this.fundDate = fundDate;
+        this.ocrConfidence = ocrConfidence;
+        this.extension = extension;
+        this.indexStatus = indexStatus;
+        this.department = department;
+        this.client = client;
+        this.rows = fileSize.capacity();
+        this.tail = null;
+        this.extensions = extensions;
+        this.extensionCodes = new HashMap<>();
+        for (int code = 1; code < extensions.length; code++) extensionCodes.put(extensions[code], (short) code);
+    }
+
+    /** Write these single-part columns for {@link #readFrom}. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        if (tail != null) throw new IllegalStateException("Only single-part columns are written");
+        out.writeStrings(extensions);
+        out.writeLongs(fileSize);
+        out.writeLongs(dateModified);
+        out.writeLongs(fundDate);
+        out.writeBytes(ocrConfidence);
+        out.writeShorts(extension);
+        out.writeBytes(indexStatus);
+        out.writeInts(department);
+        out.writeInts(client);
+    }
+
+    /**
+     * Columns of {@code n} rows as written by {@link #writeTo}; with mapped storage they are read-only views of
+     * the catalog file's mapping, otherwise they are copied into {@code storage}.
+     */
+    static CatalogColumns readFrom(CatalogFile.Input in, int n, CatalogStorage storage) {
+        String[] extensions = in.readStrings();
+        if (extensions.length == 0 || extensions[0] != null) throw new IllegalStateException("Bad extension dictionary");
+        return new CatalogColumns(in.readLongs(n, storage), in.readLongs(n, storage), in.readLongs(n, storage),
+                in.readBytes(n, storage), in.readShorts(n, storage), in.readBytes(n, storage),
+                in.readInts(n, storage), in.readInts(n, storage), extensions);
+    }
+
+    /** The base buffers of {@code base} with {@code tail} after them. */
+    private CatalogColumns(CatalogColumns base, CatalogColumns tail) {
+        this.fileSize = base.fileSize;
+        this.dateModified = base.dateModified;
+        this.fundDate = base.fundDate;
+        this.ocrConfidence = base.ocrConfidence;
+        this.extension = base.extension;
+        this.indexStatus = base.indexStatus;
+        this.department = base.department;
+        this.client = base.client;
+        this.rows = base.rows;
+        this.tail = tail;
+        this.extensions = tail.extensions;
+        this.extensionCodes = tail.extensionCodes;
+    }
+
+    /**
+     * These columns followed by {@code added}. The base buffers are shared as they are; the rows appended since
+     * the last full build, these columns' tail included, are copied into new heap columns of their own, so the
+     * cost is linear in the tail rather than in the catalog.
+     */
+    CatalogColumns appended(List<Document> added) {
+        if (added.isEmpty()) return this;
+        CatalogColumns rest = tail != null ? tail
+                : new CatalogColumns(0, CatalogStorage.heap(), Arrays.asList(extensions), extensionCodes);
+        return new CatalogColumns(this, rest.copyWith(added));
+    }
+
+    /**
+     * New single-part columns holding these rows followed by {@code added}, on the heap; only used for tails.
+     * Existing rows are bulk-copied, so only the appended rows are encoded.
+     */
+    private CatalogColumns copyWith(List<Document> added) {
+        int n = size();
+        List<String> dict = new ArrayList<>(Arrays.asList(extensions));
+        Map<String, Short> codes = new HashMap<>(extensionCodes);
+        short[] ext = encodeExtensions(added, dict, codes);
+
+        CatalogColumns c = new CatalogColumns(n + added.size(), CatalogStorage.heap(), dict, codes);
+        c.fileSize.put(0, fileSize, 0, n);
+        c.dateModified.put(0, dateModified, 0, n);
+        c.fundDate.put(0, fundDate, 0, n);
+        c.ocrConfidence.put(0, ocrConfidence, 0, n);
+        c.extension.put(0, extension, 0, n);
+        c.indexStatus.put(0, indexStatus, 0, n);
+        c.department.put(0, department, 0, n);
+        c.client.put(0, client, 0, n);
+        for (int j = 0; j < added.size(); j++) c.set(n + j, added.get(j), ext[j]);
+        return c;
+    }
+
+    /** Extension code per document, growing {@code dict}/{@code codes} with extensions not seen yet. */
+    private static short[] encodeExtensions(List<Document> documents, List<String> dict, Map<String, Short> codes) {
+        short[] ext = new short[documents.size()];
+        for (int i = 0; i < ext.length; i++) {
+            String e = extensionOf(documents.get(i));
+            if (e == null) continue;
+            Short code = codes.get(e);
+            if (code == null) {
+                if (dict.size() > Short.MAX_VALUE) continue; // pathological dictionary; treat as unknown
+                code = (short) dict.size();
+                codes.put(e, code);
+                dict.add(e);
+            }
+            ext[i] = code;
+        }
+        return ext;
+    }
+
+    private void set(int i, Document d, short ext) {
+        fileSize.put(i, d.getFileSize() == null ? NO_VALUE : d.getFileSize());
+        dateModified.put(i, d.getDateModified() == null ? NO_VALUE : d.getDateModified().toEpochMilli());
+        fundDate.put(i, d.getFundDate() == null ? NO_VALUE : startOfDay(d.getFundDate()));
+        Integer conf = d.getOcrConfidence();
+        ocrConfidence.put(i, conf == null ? -1 : (byte) Math.max(0, Math.min(100, conf)));
+        extension.put(i, ext);
+        indexStatus.put(i, d.getIndexStatus() == null ? 0 : (byte) (d.getIndexStatus().ordinal() + 1));
+        department.put(i, d.getDepartmentId() == null ? -1 : d.getDepartmentId());
+        client.put(i, d.getClientId() == null ? -1 : d.getClientId());
+    }
+
+    public int size() {
+        return tail == null ? rows : rows + tail.rows;
+    }
+
+    /** Rows in the base buffers; ordinals from here on are in {@link #tail}. */
+    int baseSize() {
+        return rows;
+    }
+
+    long fileSize(int i) {
+        return i < rows ? fileSize.get(i) : tail.fileSize.get(i - rows);
+    }
+
+    long dateModified(int i) {
+        return i < rows ? dateModified.get(i) : tail.dateModified.get(i - rows);
+    }
+
+    long fundDate(int i) {
+        return i < rows ? fundDate.get(i) : tail.fundDate.get(i - rows);
+    }
+
+    byte ocrConfidence(int i) {
+        return i < rows ? ocrConfidence.get(i) : tail.ocrConfidence.get(i - rows);
+    }
+
+    short extension(int i) {
+        return i < rows ? extension.get(i) : tail.extension.get(i - rows);
+    }
+
+    byte indexStatus(int i) {
+        return i < rows ? indexStatus.get(i) : tail.indexStatus.get(i - rows);
+    }
+
+    int department(int i) {
+        return i < rows ? department.get(i) : tail.department.get(i - rows);
+    }
+
+    int client(int i) {
+        return i < rows ? client.get(i) : tail.client.get(i - rows);
+    }
+
+    /** Heap bytes held by the columns (0 when they are off-heap), excluding the small extension dictionary. */
+    long heapBytes() {
+        long bytes = fileSize.hasArray() ? (long) ROW_BYTES * rows : 0;
+        return tail == null ? bytes : bytes + tail.heapBytes();
+    }
+
+    /** Off-heap bytes held by the columns (0 when they are on the heap). */
+    long offHeapBytes() {
+        return fileSize.hasArray() ? 0 : (long) ROW_BYTES * rows;
+    }
+
+    /** Dictionary code for a normalised extension, or 0 when no document has it. */
+    public short extensionCode(String extension) {
+        Short code = extensionCodes.get(normaliseExtension(extension));
+        return code == null ? 0 : code;
+    }
+
+    /** Number of distinct extension codes, including the "none" code 0. */
+    public int extensionCount() {
+        return extensions.length;
+    }
+
+    public String extensionName(short code) {
+        return extensions[code];
+    }
+
+    /**
+     * Lower-cased extension without the leading dot: the document's own value when set, otherwise derived
+     * from the file name.
+     */
+    public static String extensionOf(Document d) {
+        String e = d.getFileExtension();
+        if (e == null || e.isBlank()) {
+            String name = d.getFileName();
+            if (name == null) return null;
+            int dot = name.lastIndexOf('.');
+            if (dot < 0 || dot == name.length() - 1) return null;
+            e = name.substring(dot + 1);
+        }
+        return normaliseExtension(e);
+    }
+
+    static String normaliseExtension(String e) {
+        if (e == null) return null;
+        e = e.trim();
+        if (e.startsWith(".")) e = e.substring(1);
+        return e.isEmpty() ? null : e.toLowerCase(Locale.ROOT);
+    }
+
+    static long startOfDay(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,423 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary copy of a built catalog snapshot on local disk, so a restart can serve the last known catalog
+ * before the OCR service has answered, without re-tokenising, re-hashing or re-sorting anything.
+ *
+ * Layout (big-endian): magic, version, generation, count, then the snapshot's parts in turn: columns, records,
+ * the name and text indexes and the sort permutations, each as length-prefixed primitive arrays and UTF-8
+ * strings (see {@link Output}), and last a CRC-32 of everything before it, checked before anything is decoded. Reading maps the file read-only and copies the arrays out in bulk; with mapped
+ * {@link CatalogStorage} the fixed-width columns are views of the mapping itself. Only the per-document
+ * strings are decoded. Version 1 files (one record per document) are still read, and rebuilt.
+ *
+ * The file is written to a sibling temp file and moved into place, so a reader never sees a half-written file.
+ */
+public final class CatalogFile {
+
+    private static final int MAGIC = 0x4D434154; // "MCAT"
+    private static final int VERSION = 2;
+    // One record per document; still read, then indexed from scratch
+    private static final int VERSION_DOCUMENTS = 1;
+
+    private static final int NAME = 1, PATH = 1 << 1, SNIPPET = 1 << 2, EXTENSION = 1 << 3, SIZE = 1 << 4,
+            MODIFIED = 1 << 5, FUND_DATE = 1 << 6, CONFIDENCE = 1 << 7, STATUS = 1 << 8, CLIENT = 1 << 9,
+            DEPARTMENT = 1 << 10;
+
+    /** Generation and mapped contents of a catalog file; {@link #snapshot} decodes them. */
+    public static final class Contents {
+        private final Path file;
+        private final int version;
+        private final long generation;
+        private final int count;
+        private final ByteBuffer body;
+
+        Contents(Path file, int version, long generation, int count, ByteBuffer body) {
+            this.file = file;
+            this.version = version;
+            this.generation = generation;
+            this.count = count;
+            this.body = body;
+        }
+
+        /** Generation the catalog had when it was written. */
+        public long generation() {
+            return generation;
+        }
+
+        /**
+         * The stored catalog as snapshot {@code generation}, with records and columns in {@code storage}.
+         *
+         * @throws IOException when the contents are truncated or inconsistent
+         */
+        public CatalogSnapshot snapshot(long generation, CatalogStorage storage) throws IOException {
+            ByteBuffer buf = body.duplicate();
+            try {
+                if (version == VERSION_DOCUMENTS) {
+                    List<Document> documents = new ArrayList<>(Math.min(count, buf.remaining() / 2));
+                    for (int i = 0; i < count; i++) documents.add(readDocument(buf));
+                    return CatalogSnapshot.build(generation, documents, storage);
+                }
+                Input in = new Input(buf);
+                CatalogSnapshot snapshot = CatalogSnapshot.readFrom(in, generation, count, storage);
+                if (buf.hasRemaining()) throw new IOException("Trailing bytes in catalog file: " + file);
+                return snapshot;
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt catalog file: " + file, e);
+            }
+        }
+    }
+
+    private CatalogFile() {
+    }
+
+    /**
+     * Write {@code snapshot} to {@code file}. A snapshot with a tail or removed entries is first rebuilt from its
+     * live documents, so the file always holds a full build.
+     */
+    public static void write(Path file, CatalogSnapshot snapshot) throws IOException {
+        if (snapshot.tailSize() > 0 || snapshot.liveCount() != snapshot.size()) {
+            snapshot = CatalogSnapshot.build(snapshot.generation(), new ArrayList<>(snapshot.documents()));
+        }
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Output out = new Output(Files.newOutputStream(tmp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.generation());
+            out.writeInt(snapshot.size());
+            snapshot.writeTo(out);
+            out.writeLong(out.checksum());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map {@code file} and read its header; the rest is decoded by {@link Contents#snapshot}.
+     *
+     * @throws IOException when the file is missing, truncated or not a catalog file of a known version
+     */
+    public static Contents read(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Catalog file too large to map: " + ch.size());
+            // The mapping stays valid after the channel is closed, and after the file is replaced by a newer copy
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            try {
+                int version = buf.getInt() == MAGIC ? buf.getInt() : -1;
+                if (version != VERSION && version != VERSION_DOCUMENTS) throw new IOException("Not a catalog file: " + file);
+                long generation = buf.getLong();
+                int count = buf.getInt();
+                if (count < 0) throw new IOException("Corrupt catalog file: " + file);
+                if (version == VERSION_DOCUMENTS) return new Contents(file, version, generation, count, buf.slice());
+                int end = buf.limit() - Long.BYTES;
+                CRC32 crc = new CRC32();
+                crc.update(buf.slice(0, end));
+                if (crc.getValue() != buf.getLong(end)) throw new IOException("Catalog file checksum mismatch: " + file);
+                return new Contents(file, version, generation, count, buf.slice(buf.position(), end - buf.position()));
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt catalog file: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the parts of a snapshot: primitive arrays as a length followed by the values, strings as a byte
+     * length (-1 for null) followed by UTF-8. Arrays go through a scratch buffer rather than value by value.
+     */
+    static final class Output implements Closeable {
+        private final CheckedOutputStream checked;
+        private final DataOutputStream out;
+        private final ByteBuffer scratch = ByteBuffer.allocate(1 << 16);
+
+        Output(OutputStream out) {
+            this.checked = new CheckedOutputStream(new BufferedOutputStream(out, 1 << 16), new CRC32());
+            this.out = new DataOutputStream(checked);
+        }
+
+        /** CRC-32 of everything written so far. */
+        long checksum() {
+            return checked.getChecksum().getValue();
+        }
+
+        void writeInt(int v) throws IOException {
+            out.writeInt(v);
+        }
+
+        void writeLong(long v) throws IOException {
+            out.writeLong(v);
+        }
+
+        void writeFloat(float v) throws IOException {
+            out.writeFloat(v);
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+
+        void writeStrings(String[] values) throws IOException {
+            out.writeInt(values.length);
+            for (String v : values) writeString(v);
+        }
+
+        void writeBytes(byte[] values) throws IOException {
+            out.writeInt(values.length);
+            out.write(values);
+        }
+
+        void writeInts(int[] values) throws IOException {
+            writeInts(IntBuffer.wrap(values));
+        }
+
+        /** The whole of {@code values}, from index 0 to its capacity. */
+        void writeInts(IntBuffer values) throws IOException {
+            int n = values.capacity();
+            out.writeInt(n);
+            for (int from = 0; from < n; from += scratch.capacity() / Integer.BYTES) {
+                int len = Math.min(n - from, scratch.capacity() / Integer.BYTES);
+                scratch.clear();
+                scratch.asIntBuffer().put(0, values, from, len);
+                out.write(scratch.array(), 0, len * Integer.BYTES);
+            }
+        }
+
+        void writeLongs(long[] values) throws IOException {
+            writeLongs(LongBuffer.wrap(values));
+        }
+
+        void writeLongs(LongBuffer values) throws IOException {
+            int n = values.capacity();
+            out.writeInt(n);
+            for (int from = 0; from < n; from += scratch.capacity() / Long.BYTES) {
+                int len = Math.min(n - from, scratch.capacity() / Long.BYTES);
+                scratch.clear();
+                scratch.asLongBuffer().put(0, values, from, len);
+                out.write(scratch.array(), 0, len * Long.BYTES);
+            }
+        }
+
+        void writeShorts(ShortBuffer values) throws IOException {
+            int n = values.capacity();
+            out.writeInt(n);
+            for (int from = 0; from < n; from += scratch.capacity() / Short.BYTES) {
+                int len = Math.min(n - from, scratch.capacity() / Short.BYTES);
+                scratch.clear();
+                scratch.asShortBuffer().put(0, values, from, len);
+                out.write(scratch.array(), 0, len * Short.BYTES);
+            }
+        }
+
+        void writeBytes(ByteBuffer values) throws IOException {
+            int n = values.capacity();
+            out.writeInt(n);
+            for (int from = 0; from < n; from += scratch.capacity()) {
+                int len = Math.min(n - from, scratch.capacity());
+                scratch.clear();
+                scratch.put(0, values, from, len);
+                out.write(scratch.array(), 0, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads what {@link Output} wrote from the mapped file. Arrays are copied out in bulk, or handed out as views
+     * of the mapping; every length is checked against the bytes that remain.
+     */
+    static final class Input {
+        private final ByteBuffer buf;
+
+        Input(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        int readInt() {
+            return buf.getInt();
+        }
+
+        long readLong() {
+            return buf.getLong();
+        }
+
+        float readFloat() {
+            return buf.getFloat();
+        }
+
+        String readString() {
+            int len = buf.getInt();
+            return len < 0 ? null : CatalogFile.readString(buf, len);
+        }
+
+        String[] readStrings() {
+            String[] values = new String[length(1)];
+            for (int i = 0; i < values.length; i++) values[i] = readString();
+            return values;
+        }
+
+        byte[] readByteArray() {
+            byte[] values = new byte[length(1)];
+            buf.get(values);
+            return values;
+        }
+
+        int[] readInts() {
+            int[] values = new int[length(Integer.BYTES)];
+            buf.asIntBuffer().get(values);
+            skip(values.length, Integer.BYTES);
+            return values;
+        }
+
+        long[] readLongs() {
+            long[] values = new long[length(Long.BYTES)];
+            buf.asLongBuffer().get(values);
+            skip(values.length, Long.BYTES);
+            return values;
+        }
+
+        /**
+         * Next array of {@code n} values, which must be what was written, as a read-only view of the mapping
+         * when {@code storage} is mapped and as a copy in {@code storage} otherwise.
+         */
+        LongBuffer readLongs(int n, CatalogStorage storage) {
+            LongBuffer view = slice(n, Long.BYTES).asLongBuffer();
+            if (storage.kind() == CatalogStorage.Kind.MAPPED) return view;
+            LongBuffer out = storage.longs(n);
+            out.put(0, view, 0, n);
+            return out;
+        }
+
+        IntBuffer readInts(int n, CatalogStorage storage) {
+            IntBuffer view = slice(n, Integer.BYTES).asIntBuffer();
+            if (storage.kind() == CatalogStorage.Kind.MAPPED) return view;
+            IntBuffer out = storage.ints(n);
+            out.put(0, view, 0, n);
+            return out;
+        }
+
+        ShortBuffer readShorts(int n, CatalogStorage storage) {
+            ShortBuffer view = slice(n, Short.BYTES).asShortBuffer();
+            if (storage.kind() == CatalogStorage.Kind.MAPPED) return view;
+            ShortBuffer out = storage.shorts(n);
+            out.put(0, view, 0, n);
+            return out;
+        }
+
+        ByteBuffer readBytes(int n, CatalogStorage storage) {
+            ByteBuffer view = slice(n, 1);
+            if (storage.kind() == CatalogStorage.Kind.MAPPED) return view;
+            ByteBuffer out = storage.bytes(n);
+            out.put(0, view, 0, n);
+            return out;
+        }
+
+        /** Reads an array or value count, which must be {@code n}. */
+        void readLength(int n) {
+            int len = buf.getInt();
+            if (len != n) throw new IllegalStateException("Expected " + n + " values, found " + len);
+        }
+
+        /** The rest of the input as its own buffer, for data read in place; see {@link #skip(int)}. */
+        ByteBuffer view() {
+            return buf.slice();
+        }
+
+        /** Move past {@code bytes} bytes consumed through {@link #view()}. */
+        void skip(int bytes) {
+            buf.position(buf.position() + bytes);
+        }
+
+        /** The next array, which must hold {@code n} values of {@code width} bytes, as its own buffer. */
+        private ByteBuffer slice(int n, int width) {
+            readLength(n);
+            ByteBuffer view = buf.slice(buf.position(), checked(n, width));
+            skip(n, width);
+            return view;
+        }
+
+        /** Next array length, checked against the bytes left for values of at least {@code width} bytes. */
+        private int length(int width) {
+            int len = buf.getInt();
+            checked(len, width);
+            return len;
+        }
+
+        private int checked(int len, int width) {
+            if (len < 0 || (long) len * width > buf.remaining()) throw new IllegalStateException("Bad array length " + len);
+            return len * width;
+        }
+
+        private void skip(int len, int width) {
+            buf.position(buf.position() + len * width);
+        }
+    }
+
+    private static Document readDocument(ByteBuffer buf) {
+        int mask = buf.getShort() & 0xFFFF;
+        Document d = new Document();
+        if ((mask & NAME) != 0) d.setFileName(readString(buf));
+        if ((mask & PATH) != 0) d.setFilePath(readString(buf));
+        if ((mask & SNIPPET) != 0) d.setSnippet(readString(buf));
+        if ((mask & EXTENSION) != 0) d.setFileExtension(readString(buf));
+        if ((mask & SIZE) != 0) d.setFileSize(buf.getLong());
+        if ((mask & MODIFIED) != 0) d.setDateModified(Instant.ofEpochMilli(buf.getLong()));
+        if ((mask & FUND_DATE) != 0) d.setFundDate(LocalDate.ofEpochDay(buf.getLong()));
+        if ((mask & CONFIDENCE) != 0) d.setOcrConfidence(buf.getInt());
+        if ((mask & STATUS) != 0) d.setIndexStatus(Document.IndexStatus.values()[buf.get()]);
+        if ((mask & CLIENT) != 0) d.setClientId(buf.getInt());
+        if ((mask & DEPARTMENT) != 0) d.setDepartmentId(buf.getInt());
+        return d;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        return readString(buf, buf.getInt());
+    }
+
+    private static String readString(ByteBuffer buf, int len) {
+        if (len < 0 || len > buf.remaining()) throw new IllegalStateException("Bad string length " + len);
+        String s;
+        if (buf.hasArray()) {
+            s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+        } else {
+            byte[] b = new byte[len];
+            buf.get(buf.position(), b);
+            s = new String(b, StandardCharsets.UTF_8);
+        }
+        buf.position(buf.position() + len);
+        return s;
+    }
+}
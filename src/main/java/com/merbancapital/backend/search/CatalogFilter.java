@@ -0,0 +1,225 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.dto.SearchFilters;
+import com.merbancapital.backend.model.Document;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The column-backed part of a {@link SearchFilters} query (size, dates, confidence, extensions, status,
+ * department),
+ * compiled once against a {@link CatalogColumns} and then evaluated as one tight loop per predicate that
+ * clears non-matching bits in a {@code long[]} bitset.
+ *
+ * Date bounds are whole UTC days and inclusive; documents with no value for a constrained field never match.
+ */
+public final class CatalogFilter {
+
+    private boolean active;
+
+    private boolean bySize;
+    private long sizeMin = Long.MIN_VALUE + 1;
+    private long sizeMax = Long.MAX_VALUE;
+
+    private boolean byModified;
+    private long modifiedMin = Long.MIN_VALUE + 1;
+    private long modifiedMax = Long.MAX_VALUE;
+
+    private boolean byFundDate;
+    private long fundMin = Long.MIN_VALUE + 1;
+    private long fundMax = Long.MAX_VALUE;
+
+    private int confidenceMin = -1;
+
+    private boolean[] extensionAllowed;
+
+    private boolean byStatus;
+    private byte status;
+
+    // Department ids the named department resolved to, ascending; empty matches nothing
+    private int[] departments;
+
+    private CatalogFilter() {
+    }
+
+    public static CatalogFilter compile(SearchFilters f, CatalogColumns columns) {
+        return compile(f, columns, null);
+    }
+
+    /**
+     * @param departmentIds ids of the department {@link SearchFilters#getDepartment() named} in {@code f}
+     *                      (empty when no department has that name); null when the query names none
+     */
+    public static CatalogFilter compile(SearchFilters f, CatalogColumns columns, Collection<Integer> departmentIds) {
+        CatalogFilter c = new CatalogFilter();
+        if (f.getFileSizeMin() != null) {
+            c.bySize = true;
+            c.sizeMin = f.getFileSizeMin();
+        }
+        if (f.getFileSizeMax() != null) {
+            c.bySize = true;
+            c.sizeMax = f.getFileSizeMax();
+        }
+        if (f.getDateModifiedStart() != null) {
+            c.byModified = true;
+            c.modifiedMin = CatalogColumns.startOfDay(f.getDateModifiedStart());
+        }
+        if (f.getDateModifiedEnd() != null) {
+            c.byModified = true;
+            c.modifiedMax = endOfDay(f.getDateModifiedEnd());
+        }
+        if (f.getFundDateStart() != null) {
+            c.byFundDate = true;
+            c.fundMin = CatalogColumns.startOfDay(f.getFundDateStart());
+        }
+        if (f.getFundDateEnd() != null) {
+            c.byFundDate = true;
+            c.fundMax = endOfDay(f.getFundDateEnd());
+        }
+        if (f.getOcrConfidenceMin() != null) {
+            c.confidenceMin = Math.max(0, f.getOcrConfidenceMin());
+        }
+        if (f.getFileExtensions() != null && !f.getFileExtensions().isEmpty()) {
+            c.extensionAllowed = new boolean[columns.extensionCount()];
+            for (String e : f.getFileExtensions()) {
+                short code = columns.extensionCode(e);
+                if (code > 0) c.extensionAllowed[code] = true;
+            }
+        }
+        if (f.getIndexStatus() != null && !f.getIndexStatus().isBlank()) {
+            c.byStatus = true;
+            Document.IndexStatus s = statusOf(f.getIndexStatus());
+            c.status = s == null ? -1 : (byte) (s.ordinal() + 1); // -1 matches nothing
+        }
+        if (departmentIds != null) {
+            c.departments = departmentIds.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        }
+        c.active = c.bySize || c.byModified || c.byFundDate || c.confidenceMin >= 0
+                || c.extensionAllowed != null || c.byStatus || c.departments != null;
+        return c;
+    }
+
+    /** True when the query constrains none of the columnar fields. */
+    public boolean isEmpty() {
+        return !active;
+    }
+
+    /**
+     * Clear the bits of documents in {@code [from, to)} that fail any predicate. Bits outside the range are
+     * left untouched, so disjoint ranges can be evaluated independently.
+     */
+    public void apply(CatalogColumns c, long[] words, int from, int to) {
+        if (!active || from >= to) return;
+        int split = c.baseSize();
+        apply(c, 0, words, from, Math.min(to, split));
+        if (c.tail != null) apply(c.tail, split, words, Math.max(from, split), to);
+    }
+
+    /** Evaluate the buffers of one part of the columns, whose row 0 is ordinal {@code base}. */
+    private void apply(CatalogColumns c, int base, long[] words, int from, int to) {
+        if (from >= to) return;
+        if (bySize) retainRange(c.fileSize, base, sizeMin, sizeMax, words, from, to);
+        if (byModified) retainRange(c.dateModified, base, modifiedMin, modifiedMax, words, from, to);
+        if (byFundDate) retainRange(c.fundDate, base, fundMin, fundMax, words, from, to);
+        if (confidenceMin >= 0) retainConfidence(c.ocrConfidence, base, confidenceMin, words, from, to);
+        if (extensionAllowed != null) retainExtensions(c.extension, base, extensionAllowed, words, from, to);
+        if (byStatus) retainStatus(c.indexStatus, base, status, words, from, to);
+        if (departments != null) retainDepartments(c.department, base, departments, words, from, to);
+    }
+
+    /**
+     * Map the API's status vocabulary (PENDING/COMPLETED/FAILED) onto the entity enum; the enum's own names
+     * are accepted too. Returns null for anything else.
+     */
+    public static Document.IndexStatus statusOf(String s) {
+        switch (s.trim().toUpperCase()) {
+            case "PENDING":
+                return Document.IndexStatus.Pending;
+            case "COMPLETED":
+            case "INDEXED":
+                return Document.IndexStatus.Indexed;
+            case "FAILED":
+            case "ERROR":
+                return Document.IndexStatus.Error;
+            default:
+                return null;
+        }
+    }
+
+    private static long endOfDay(LocalDate date) {
+        return CatalogColumns.startOfDay(date.plusDays(1)) - 1;
+    }
+
+    private static void retainRange(LongBuffer col, int base, long min, long max, long[] words, int from, int to) {
+        for (int w = from >>> 6, last = (to - 1) >>> 6; w <= last; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int i = (w << 6) | bit;
+                if (i < from || i >= to) continue;
+                long v = col.get(i - base);
+                if (v == CatalogColumns.NO_VALUE || v < min || v > max) words[w] &= ~(1L << bit);
+            }
+        }
+    }
+
+    private static void retainConfidence(ByteBuffer col, int base, int min, long[] words, int from, int to) {
+        for (int w = from >>> 6, last = (to - 1) >>> 6; w <= last; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int i = (w << 6) | bit;
+                if (i < from || i >= to) continue;
+                if (col.get(i - base) < min) words[w] &= ~(1L << bit); // unknown (-1) is always below min
+            }
+        }
+    }
+
+    private static void retainExtensions(ShortBuffer col, int base, boolean[] allowed, long[] words, int from, int to) {
+        for (int w = from >>> 6, last = (to - 1) >>> 6; w <= last; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int i = (w << 6) | bit;
+                if (i < from || i >= to) continue;
+                if (!allowed[col.get(i - base)]) words[w] &= ~(1L << bit);
+            }
+        }
+    }
+
+    private static void retainStatus(ByteBuffer col, int base, byte status, long[] words, int from, int to) {
+        for (int w = from >>> 6, last = (to - 1) >>> 6; w <= last; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int i = (w << 6) | bit;
+                if (i < from || i >= to) continue;
+                if (col.get(i - base) != status) words[w] &= ~(1L << bit);
+            }
+        }
+    }
+
+    private static void retainDepartments(IntBuffer col, int base, int[] allowed, long[] words, int from, int to) {
+        for (int w = from >>> 6, last = (to - 1) >>> 6; w <= last; w++) {
+            long word = words[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int i = (w << 6) | bit;
+                if (i < from || i >= to) continue;
+                int dept = col.get(i - base);
+                if (dept < 0 || Arrays.binarySearch(allowed, dept) < 0) words[w] &= ~(1L << bit);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, column-oriented storage of the catalog entries themselves, replacing one {@link Document} entity
+ * per row on the in-memory path.
+ *
+ * Numeric, date, status and owner fields live in the {@link CatalogColumns} fixed-width columns. What remains
+ * is kept here without per-row objects beyond the strings that are actually unique:
+ * <ul>
+ *   <li>file paths are split at the last '/': the directory/URL prefix is pooled and the last segment is
+ *       dropped entirely when it is just the URL-encoded file name, which is the case for every
+ *       {@code <ocr>/api/files/<name>} download URL;</li>
+ *   <li>file extension strings are pooled (the raw value as listed, not the normalised column code);</li>
+ *   <li>document ids, which catalog entries normally lack, take no space unless some entry has one.</li>
+ * </ul>
+ * With off-heap {@link CatalogStorage} the per-row columns and the name, snippet and path strings live
+ * outside the Java heap as well (see {@link StringColumn}); only the small prefix and extension pools stay.
+ *
+ * Entries appended by an incremental change go into small heap records of their own behind the shared base
+ * ones (see {@link #appended}), with their own part of the columns.
+ *
+ * {@link #document(int)} reassembles an equivalent, detached Document on demand. Modification dates are kept
+ * at millisecond precision, as in {@link CatalogFile}, and OCR confidence within 0..100.
+ */
+final class CatalogRecords {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final CatalogColumns columns;
+    private final StringColumn names;
+    private final StringColumn snippets;
+    private final ShortBuffer pathPrefix;   // index into prefixes; -1 when the document has no path
+    private final StringColumn pathTail;    // last path segment, null when it is the encoded file name
+    private final String[] prefixes;
+    private final ShortBuffer extension;    // index into extensions; 0 = none
+    private final String[] extensions;
+    private final IntBuffer documentId;     // null when no document has an id; otherwise Integer.MIN_VALUE = none
+    // Entries in the buffers above; entries from here on are in tail
+    private final int rows;
+    // Entries appended since the last full build, read with their own part of the columns; null when none
+    private final CatalogRecords tail;
+
+    private CatalogRecords(CatalogColumns columns, StringColumn names, StringColumn snippets, ShortBuffer pathPrefix,
+                           StringColumn pathTail, String[] prefixes, ShortBuffer extension, String[] extensions,
+                           IntBuffer documentId) {
+        this(columns, names, snippets, pathPrefix, pathTail, prefixes, extension, extensions, documentId, null);
+    }
+
+    private CatalogRecords(CatalogColumns columns, StringColumn names, StringColumn snippets, ShortBuffer pathPrefix,
+                           StringColumn pathTail, String[] prefixes, ShortBuffer extension, String[] extensions,
+                           IntBuffer documentId, CatalogRecords tail) {
+        this.rows = pathPrefix.capacity();
+        this.tail = tail;
+        this.columns = columns;
+        this.names = names;
+        this.snippets = snippets;
+        this.pathPrefix = pathPrefix;
+        this.pathTail = pathTail;
+        this.prefixes = prefixes;
+        this.extension = extension;
+        this.extensions = extensions;
+        this.documentId = documentId;
+    }
+
+    static CatalogRecords of(List<Document> documents, CatalogColumns columns, CatalogStorage storage) {
+        int n = documents.size();
+        Pool prefixes = new Pool();
+        prefixes.codeOf(""); // always available as the fallback prefix
+        Pool extensions = new Pool();
+        extensions.codeOf(null);
+        Builder b = new Builder(StringColumn.create(n, storage), StringColumn.create(n, storage), storage.shorts(n),
+                StringColumn.create(n, storage), prefixes, storage.shorts(n), extensions, null, storage);
+        for (int i = 0; i < n; i++) b.set(i, documents.get(i));
+        return b.build(columns);
+    }
+
+    /**
+     * These records followed by {@code added}; {@code columns} must be these records' columns
+     * {@link CatalogColumns#appended appended} with the same documents. The base entries are shared as they are;
+     * those appended since the last full build, this tail included, are copied into new heap records of their
+     * own, so the cost is linear in the tail rather than in the catalog.
+     */
+    CatalogRecords appended(List<Document> added, CatalogColumns columns) {
+        if (added.isEmpty()) return this;
+        CatalogRecords rest = tail != null ? tail : of(List.of(), null, CatalogStorage.heap());
+        return new CatalogRecords(this.columns, names, snippets, pathPrefix, pathTail, prefixes, extension, extensions,
+                documentId, rest.copyWith(added, columns.tail));
+    }
+
+    /**
+     * New single-part records holding these entries followed by {@code added}, on the heap; only used for tails.
+     * {@code columns} must already include the added rows. Fixed-width columns are bulk-copied, so only the
+     * appended entries are encoded.
+     */
+    private CatalogRecords copyWith(List<Document> added, CatalogColumns columns) {
+        CatalogStorage storage = CatalogStorage.heap();
+        int n = size();
+        int total = n + added.size();
+        ShortBuffer prefixCodes = storage.shorts(total);
+        prefixCodes.put(0, pathPrefix, 0, n);
+        ShortBuffer extensionCodes = storage.shorts(total);
+        extensionCodes.put(0, extension, 0, n);
+        IntBuffer ids = null;
+        if (documentId != null) {
+            ids = storage.ints(total);
+            ids.put(0, documentId, 0, n);
+        }
+        Builder b = new Builder(names.copyOf(total), snippets.copyOf(total), prefixCodes, pathTail.copyOf(total),
+                Pool.of(prefixes), extensionCodes, Pool.of(extensions), ids, storage);
+        for (int j = 0; j < added.size(); j++) b.set(n + j, added.get(j));
+        return b.build(columns);
+    }
+
+    /** Write these single-part records for {@link #readFrom}; the columns are written separately. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        if (tail != null) throw new IllegalStateException("Only single-part records are written");
+        names.writeTo(out);
+        snippets.writeTo(out);
+        out.writeShorts(pathPrefix);
+        pathTail.writeTo(out);
+        out.writeStrings(prefixes);
+        out.writeShorts(extension);
+        out.writeStrings(extensions);
+        out.writeInt(documentId == null ? 0 : 1);
+        if (documentId != null) out.writeInts(documentId);
+    }
+
+    /** Records of {@code columns.size()} entries as written by {@link #writeTo}, in {@code storage}. */
+    static CatalogRecords readFrom(CatalogFile.Input in, CatalogColumns columns, CatalogStorage storage) {
+        int n = columns.size();
+        StringColumn names = StringColumn.readFrom(in, n, storage);
+        StringColumn snippets = StringColumn.readFrom(in, n, storage);
+        ShortBuffer pathPrefix = in.readShorts(n, storage);
+        StringColumn pathTail = StringColumn.readFrom(in, n, storage);
+        String[] prefixes = in.readStrings();
+        ShortBuffer extension = in.readShorts(n, storage);
+        String[] extensions = in.readStrings();
+        IntBuffer documentId = in.readInt() != 0 ? in.readInts(n, storage) : null;
+        for (int i = 0; i < n; i++) {
+            // codes index the pools directly later on
+            if (pathPrefix.get(i) >= prefixes.length || pathPrefix.get(i) < -1) throw new IllegalStateException("Bad path prefix");
+            if (extension.get(i) >= extensions.length || extension.get(i) < 0) throw new IllegalStateException("Bad extension");
+        }
+        return new CatalogRecords(columns, names, snippets, pathPrefix, pathTail, prefixes, extension, extensions, documentId);
+    }
+
+    int size() {
+        return tail == null ? rows : rows + tail.rows;
+    }
+
+    String fileName(int i) {
+        return i < rows ? names.get(i) : tail.names.get(i - rows);
+    }
+
+    String snippet(int i) {
+        return i < rows ? snippets.get(i) : tail.snippets.get(i - rows);
+    }
+
+    String filePath(int i) {
+        if (i >= rows) return tail.filePath(i - rows);
+        short p = pathPrefix.get(i);
+        if (p < 0) return null;
+        String tail = pathTail.get(i);
+        return prefixes[p] + (tail != null ? tail : encodeName(names.get(i)));
+    }
+
+    /** A detached Document with this entry's values; callers may keep or modify it freely. */
+    Document document(int i) {
+        if (i >= rows) return tail.document(i - rows);
+        Document d = new Document();
+        if (documentId != null && documentId.get(i) != Integer.MIN_VALUE) d.setDocumentId(documentId.get(i));
+        String name = names.get(i);
+        d.setFileName(name);
+        short p = pathPrefix.get(i);
+        if (p >= 0) {
+            String tail = pathTail.get(i);
+            d.setFilePath(prefixes[p] + (tail != null ? tail : encodeName(name)));
+        }
+        d.setSnippet(snippets.get(i));
+        d.setFileExtension(extensions[extension.get(i)]);
+        long size = columns.fileSize.get(i);
+        if (size != CatalogColumns.NO_VALUE) d.setFileSize(size);
+        long modified = columns.dateModified.get(i);
+        if (modified != CatalogColumns.NO_VALUE) d.setDateModified(Instant.ofEpochMilli(modified));
+        long fund = columns.fundDate.get(i);
+        if (fund != CatalogColumns.NO_VALUE) d.setFundDate(LocalDate.ofEpochDay(Math.floorDiv(fund, MILLIS_PER_DAY)));
+        byte confidence = columns.ocrConfidence.get(i);
+        if (confidence >= 0) d.setOcrConfidence((int) confidence);
+        byte status = columns.indexStatus.get(i);
+        if (status != 0) d.setIndexStatus(Document.IndexStatus.values()[status - 1]);
+        int dept = columns.department.get(i);
+        if (dept >= 0) d.setDepartmentId(dept);
+        int client = columns.client.get(i);
+        if (client >= 0) d.setClientId(client);
+        return d;
+    }
+
+    /**
+     * Approximate Java heap held per document by these records plus the columns, assuming compressed oops:
+     * array slots and the strings they reference. Pooled strings are counted once; off-heap storage counts
+     * only its buffer objects.
+     */
+    long heapBytesPerDocument() {
+        int n = size();
+        return n == 0 ? 0 : heapBytes() / n;
+    }
+
+    /** Heap bytes held by these records and the columns, tail included. */
+    private long heapBytes() {
+        long bytes = names.heapBytes() + snippets.heapBytes() + pathTail.heapBytes() + columns.heapBytes();
+        if (pathPrefix.hasArray()) bytes += 2L * rows;
+        if (extension.hasArray()) bytes += 2L * rows;
+        if (documentId != null && documentId.hasArray()) bytes += 4L * rows;
+        for (String p : prefixes) bytes += stringBytes(p);
+        for (String e : extensions) bytes += stringBytes(e);
+        return tail == null ? bytes : bytes + tail.heapBytes();
+    }
+
+    /** Off-heap bytes reserved by these records and the columns; 0 on the heap. */
+    long offHeapBytes() {
+        long bytes = names.offHeapBytes() + snippets.offHeapBytes() + pathTail.offHeapBytes() + columns.offHeapBytes();
+        if (!pathPrefix.hasArray()) bytes += 2L * rows;
+        if (!extension.hasArray()) bytes += 2L * rows;
+        if (documentId != null && !documentId.hasArray()) bytes += 4L * rows;
+        return bytes;
+    }
+
+    /** String object plus its backing array (Latin-1 compact strings take one byte per char). */
+    static long stringBytes(String s) {
+        if (s == null) return 0;
+        long data = 16 + (long) s.length() * (isLatin1(s) ? 1 : 2);
+        return 24 + ((data + 7) & ~7L);
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    /** Last path segment the OCR service serves a file under; same encoding as its download URLs. */
+    static String encodeName(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /** Fills the per-row columns; document ids get a column only once some entry has one. */
+    private static final class Builder {
+        private final StringColumn names;
+        private final StringColumn snippets;
+        private final ShortBuffer pathPrefix;
+        private final StringColumn pathTail;
+        private final Pool prefixes;
+        private final ShortBuffer extension;
+        private final Pool extensions;
+        private IntBuffer documentId;
+        private final CatalogStorage storage;
+
+        Builder(StringColumn names, StringColumn snippets, ShortBuffer pathPrefix, StringColumn pathTail, Pool prefixes,
+                ShortBuffer extension, Pool extensions, IntBuffer documentId, CatalogStorage storage) {
+            this.names = names;
+            this.snippets = snippets;
+            this.pathPrefix = pathPrefix;
+            this.pathTail = pathTail;
+            this.prefixes = prefixes;
+            this.extension = extension;
+            this.extensions = extensions;
+            this.documentId = documentId;
+            this.storage = storage;
+        }
+
+        void set(int i, Document d) {
+            String name = d.getFileName();
+            names.set(i, name);
+            snippets.set(i, d.getSnippet());
+            // pathological number of distinct extensions: the rest are dropped, as in CatalogColumns
+            extension.put(i, (short) Math.max(0, extensions.codeOf(d.getFileExtension())));
+            if (documentId != null) documentId.put(i, Integer.MIN_VALUE);
+            if (d.getDocumentId() != null) {
+                if (documentId == null) {
+                    int n = pathPrefix.capacity();
+                    documentId = storage.ints(n);
+                    for (int j = 0; j < n; j++) documentId.put(j, Integer.MIN_VALUE);
+                }
+                documentId.put(i, d.getDocumentId());
+            }
+
+            String path = d.getFilePath();
+            if (path == null) {
+                pathPrefix.put(i, (short) -1);
+                return;
+            }
+            int cut = path.lastIndexOf('/') + 1;
+            short code = prefixes.codeOf(path.substring(0, cut));
+            if (code < 0) {
+                // pool full: keep the whole path in the tail under the empty prefix
+                code = prefixes.codeOf("");
+                cut = 0;
+            }
+            pathPrefix.put(i, code);
+            String tail = path.substring(cut);
+            if (name == null || !tail.equals(encodeName(name))) pathTail.set(i, tail);
+        }
+
+        CatalogRecords build(CatalogColumns columns) {
+            return new CatalogRecords(columns, names, snippets, pathPrefix, pathTail, prefixes.values(), extension,
+                    extensions.values(), documentId);
+        }
+    }
+
+    /** Interns strings to short codes; {@link #codeOf} returns -1 once the pool is full. */
+    private static final class Pool {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Short> codes = new HashMap<>();
+
+        /** A pool already holding {@code values}, with their existing codes. */
+        static Pool of(String[] values) {
+            Pool pool = new Pool();
+            for (String v : values) pool.codeOf(v);
+            return pool;
+        }
+
+        short codeOf(String s) {
+            Short code = codes.get(s);
+            if (code != null) return code;
+            if (values.size() > Short.MAX_VALUE) return -1;
+            code = (short) values.size();
+            codes.put(s, code);
+            values.add(s);
+            return code;
+        }
+
+        String[] values() {
+            return values.toArray(new String[0]);
+        }
+    }
+}
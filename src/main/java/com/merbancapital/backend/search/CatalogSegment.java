@@ -0,0 +1,188 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * The name and text indexes over one contiguous run of a snapshot's ordinals, {@code [offset, offset + size)}.
+ *
+ * A full build has a single segment over every ordinal. Incremental changes append entries to the snapshot and
+ * index only those, in a small tail segment that is rebuilt with each change while the large base segment is
+ * shared as it is. Lookups take and return snapshot ordinals either way.
+ */
+final class CatalogSegment {
+
+    private final int offset;
+    private final int size;
+    // Exact case-insensitive name -> ordinal, with a Bloom filter in front for misses
+    private final FileNameIndex byName;
+    // Trigram index over lower-cased file names
+    private final TrigramIndex fileNames;
+    // Filename tokens with their postings, for fuzzy (edit-distance) name matching
+    private final TermDictionary nameTerms;
+    // 6-digit gram index over each filename's digit projection, computed once at build time for account lookups
+    private final DigitIndex fileDigits;
+    // BM25 inverted index over the OCR snippet text
+    private final FullTextIndex text;
+
+    private CatalogSegment(int offset, String[] rawNames, String[] snippets, CatalogRecords records, boolean onHeap) {
+        this.offset = offset;
+        this.size = rawNames.length;
+        String[] names = new String[size];
+        String[] digits = new String[size];
+        for (int i = 0; i < size; i++) {
+            if (rawNames[i] == null) continue;
+            names[i] = rawNames[i].toLowerCase();
+            digits[i] = CatalogSnapshot.digitsOf(rawNames[i]);
+        }
+        this.byName = FileNameIndex.build(rawNames, i -> records.fileName(offset + i));
+        if (onHeap) {
+            this.fileNames = TrigramIndex.build(names);
+            this.fileDigits = DigitIndex.build(digits, i -> digits[i]);
+        } else {
+            // Keys are recomputed from the off-heap names when candidates are verified
+            this.fileNames = TrigramIndex.build(names, i -> lowerCase(records.fileName(offset + i)));
+            this.fileDigits = DigitIndex.build(digits, i -> {
+                String name = records.fileName(offset + i);
+                return name == null ? null : CatalogSnapshot.digitsOf(name);
+            });
+        }
+        this.nameTerms = TermDictionary.build(names);
+        this.text = FullTextIndex.build(snippets);
+    }
+
+    private CatalogSegment(int offset, int size, FileNameIndex byName, TrigramIndex fileNames, TermDictionary nameTerms,
+                           DigitIndex fileDigits, FullTextIndex text) {
+        this.offset = offset;
+        this.size = size;
+        this.byName = byName;
+        this.fileNames = fileNames;
+        this.nameTerms = nameTerms;
+        this.fileDigits = fileDigits;
+        this.text = text;
+    }
+
+    /** Write the indexes for {@link #readFrom}; the names they verify against are written with the records. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        out.writeInt(offset);
+        out.writeInt(size);
+        byName.writeTo(out);
+        fileNames.writeTo(out);
+        nameTerms.writeTo(out);
+        fileDigits.writeTo(out);
+        text.writeTo(out);
+    }
+
+    /**
+     * The segment written by {@link #writeTo}, over every entry of {@code records}. Keys for verifying
+     * candidates are derived from the records again: once up front on the heap, on each probe otherwise.
+     */
+    static CatalogSegment readFrom(CatalogFile.Input in, CatalogRecords records, boolean onHeap) {
+        int offset = in.readInt();
+        int size = in.readInt();
+        if (offset != 0 || size != records.size()) throw new IllegalStateException("Segment does not cover the records");
+        FileNameIndex byName = FileNameIndex.readFrom(in, size, records::fileName);
+        IntFunction<String> names;
+        IntFunction<String> digits;
+        if (onHeap) {
+            String[] lower = new String[size];
+            String[] projected = new String[size];
+            for (int i = 0; i < size; i++) {
+                String name = records.fileName(i);
+                if (name == null) continue;
+                lower[i] = name.toLowerCase();
+                projected[i] = CatalogSnapshot.digitsOf(name);
+            }
+            names = i -> lower[i];
+            digits = i -> projected[i];
+        } else {
+            names = i -> lowerCase(records.fileName(i));
+            digits = i -> {
+                String name = records.fileName(i);
+                return name == null ? null : CatalogSnapshot.digitsOf(name);
+            };
+        }
+        TrigramIndex fileNames = TrigramIndex.readFrom(in, names);
+        TermDictionary nameTerms = TermDictionary.readFrom(in, size);
+        DigitIndex fileDigits = DigitIndex.readFrom(in, digits);
+        FullTextIndex text = FullTextIndex.readFrom(in, size);
+        if (fileNames.size() != size) throw new IllegalStateException("Trigram index does not cover the records");
+        return new CatalogSegment(offset, size, byName, fileNames, nameTerms, fileDigits, text);
+    }
+
+    /**
+     * Index ordinals {@code [offset, offset + rawNames.length)}.
+     *
+     * @param rawNames file names by ordinal from {@code offset}; only read while building
+     * @param snippets OCR text by ordinal from {@code offset}; only read while building
+     * @param records  the snapshot's records, which the indexes read names back from when verifying candidates
+     */
+    static CatalogSegment build(int offset, String[] rawNames, String[] snippets, CatalogRecords records, boolean onHeap) {
+        return new CatalogSegment(offset, rawNames, snippets, records, onHeap);
+    }
+
+    /** Index the entries {@code [from, to)} of {@code records}, reading names and text back from them. */
+    static CatalogSegment of(CatalogRecords records, int from, int to, boolean onHeap) {
+        String[] rawNames = new String[to - from];
+        String[] snippets = new String[to - from];
+        for (int i = from; i < to; i++) {
+            rawNames[i - from] = records.fileName(i);
+            snippets[i - from] = records.snippet(i);
+        }
+        return new CatalogSegment(from, rawNames, snippets, records, onHeap);
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    /** First ordinal after this segment. */
+    int end() {
+        return offset + size;
+    }
+
+    /** First ordinal in this segment whose file name equals {@code fileName} ignoring case, or -1. */
+    int find(String fileName) {
+        int i = byName.find(fileName);
+        return i < 0 ? -1 : offset + i;
+    }
+
+    int[] matchFileName(String lowerQuery) {
+        return shift(fileNames.search(lowerQuery));
+    }
+
+    int[] matchFileNameFuzzy(String query, int maxEdits) {
+        return shift(nameTerms.searchFuzzy(query, maxEdits, size));
+    }
+
+    int[] matchFileDigits(String digits) {
+        return shift(fileDigits.search(digits));
+    }
+
+    /**
+     * Matches in this segment, scored against the statistics of this segment and {@code other} together so
+     * scores from both are comparable. Ordinals are local to this segment; see {@link FullTextIndex.Result#concat}.
+     */
+    FullTextIndex.Result matchFullText(String query, CatalogSegment other) {
+        return text.search(query, other == null ? null : other.text);
+    }
+
+    private int[] shift(int[] ordinals) {
+        if (offset == 0) return ordinals;
+        for (int i = 0; i < ordinals.length; i++) ordinals[i] += offset;
+        return ordinals;
+    }
+
+    /** Two ascending ordinal arrays where every entry of {@code tail} is above those of {@code head}. */
+    static int[] concat(int[] head, int[] tail) {
+        if (tail.length == 0) return head;
+        int[] out = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, out, head.length, tail.length);
+        return out;
+    }
+
+    private static String lowerCase(String s) {
+        return s == null ? null : s.toLowerCase();
+    }
+}
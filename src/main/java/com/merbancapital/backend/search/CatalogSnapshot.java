@@ -0,0 +1,444 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Immutable, versioned view of the remote document catalog together with the indexes built over it.
+ *
+ * A snapshot is never modified after construction, so readers can use it without locking or copying;
+ * a refresh builds a new snapshot and publishes it in one atomic step. Ordinals used by the indexes are
+ * positions in the snapshot's records, {@code [0, size())}.
+ *
+ * Entries are held in compact {@link CatalogRecords} form rather than as Document entities; the Documents
+ * handed out by {@link #document(int)} and {@link #documents()} are assembled on access and detached, so
+ * two calls for the same ordinal return equal but distinct objects.
+ *
+ * With off-heap {@link CatalogStorage} the records and columns live outside the Java heap, and the name
+ * indexes verify candidates against names decoded from there instead of keeping their own copies; what
+ * remains on the heap is the index postings (primitive arrays) and per-department bitsets.
+ *
+ * {@link #withChanges} derives the next snapshot from this one without a full rebuild: removed entries are
+ * only marked, added ones are appended to small tail records, columns and sort runs of their own and indexed
+ * in a tail {@link CatalogSegment}, and everything built for the base is shared as it is. Queries merge base
+ * and tail, so a change costs time in proportion to the tail, not the catalog. Marked entries keep their ordinals but are never matched, listed or found. A full
+ * {@link #build} folds the tail back in and drops removed entries.
+ */
+public final class CatalogSnapshot {
+
+    private static final CatalogSnapshot EMPTY = new CatalogSnapshot(0L, List.of(), CatalogStorage.heap());
+
+    private final long generation;
+    private final Instant builtAt;
+    private final CatalogStorage storage;
+    private final CatalogRecords records;
+    private final List<Document> documents;
+    // Name and text indexes over the ordinals of the last full build
+    private final CatalogSegment base;
+    // Same over the ordinals appended since, or null
+    private final CatalogSegment tail;
+    // Removed ordinals since the last full build, or null when there are none
+    private final long[] removed;
+    private final int liveCount;
+    // Live ordinals in order (the positions of documents()) when some are removed; computed on first use
+    private volatile int[] liveOrdinals;
+    // Primitive columns for the range/equality filters
+    private final CatalogColumns columns;
+    // Per-department bitsets over the ordinals of the last full build, and the bitset of documents without a
+    // department; the tail is read from its columns
+    private final Map<Integer, long[]> departmentBits;
+    private final long[] unassignedBits;
+    // Sort permutation per key (by Key ordinal), built with the snapshot so no request ever waits for one
+    private final SortOrder[] sortOrders = new SortOrder[SortOrder.Key.values().length];
+
+    private CatalogSnapshot(long generation, List<Document> source, CatalogStorage storage) {
+        this.generation = generation;
+        this.builtAt = Instant.now();
+        this.storage = storage;
+        CatalogColumns columns = CatalogColumns.of(source, storage);
+        CatalogRecords records = CatalogRecords.of(source, columns, storage);
+        this.columns = columns;
+        this.records = records;
+        this.documents = new DocumentView();
+
+        int n = source.size();
+        String[] rawNames = new String[n];
+        String[] snippets = new String[n];
+        for (int i = 0; i < n; i++) {
+            Document d = source.get(i);
+            snippets[i] = d.getSnippet();
+            rawNames[i] = d.getFileName();
+        }
+        this.base = CatalogSegment.build(0, rawNames, snippets, records, storage.onHeap());
+        this.tail = null;
+        this.removed = null;
+        this.liveCount = n;
+
+        this.unassignedBits = new long[Bits.words(n)];
+        this.departmentBits = departmentBits(columns, unassignedBits);
+
+        for (SortOrder.Key key : SortOrder.Key.values()) {
+            sortOrders[key.ordinal()] = SortOrder.build(key, key == SortOrder.Key.FILE_NAME ? rawNames : null, columns);
+        }
+    }
+
+    /** A full build from parts read back by {@link #readFrom}. */
+    private CatalogSnapshot(long generation, CatalogStorage storage, CatalogColumns columns, CatalogRecords records,
+                            CatalogSegment base, SortOrder[] sortOrders) {
+        this.generation = generation;
+        this.builtAt = Instant.now();
+        this.storage = storage;
+        this.columns = columns;
+        this.records = records;
+        this.documents = new DocumentView();
+        this.base = base;
+        this.tail = null;
+        this.removed = null;
+        this.liveCount = records.size();
+        this.unassignedBits = new long[Bits.words(liveCount)];
+        this.departmentBits = departmentBits(columns, unassignedBits);
+        System.arraycopy(sortOrders, 0, this.sortOrders, 0, sortOrders.length);
+    }
+
+    /** Bitset of the ordinals per department; ordinals without one are set in {@code unassigned}. */
+    private static Map<Integer, long[]> departmentBits(CatalogColumns columns, long[] unassigned) {
+        Map<Integer, long[]> byDepartment = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            int dept = columns.department(i);
+            long[] bits = dept < 0 ? unassigned : byDepartment.computeIfAbsent(dept, d -> new long[unassigned.length]);
+            bits[i >>> 6] |= 1L << i;
+        }
+        return byDepartment;
+    }
+
+    /** {@code parent} with {@code added} appended and the ordinals in {@code removed} (sized for the result) marked. */
+    private CatalogSnapshot(CatalogSnapshot parent, long generation, List<Document> added, long[] removed) {
+        this.generation = generation;
+        this.builtAt = Instant.now();
+        this.storage = parent.storage;
+        int n = parent.size() + added.size();
+        if (added.isEmpty()) {
+            this.columns = parent.columns;
+            this.records = parent.records;
+            this.tail = parent.tail;
+        } else {
+            // Base rows are shared; only the tail's rows are copied, on the heap
+            this.columns = parent.columns.appended(added);
+            this.records = parent.records.appended(added, columns);
+            // Re-index only what was appended since the last full build
+            this.tail = CatalogSegment.of(records, parent.base.end(), n, true);
+        }
+        this.base = parent.base;
+        this.documents = new DocumentView();
+
+        int dead = removed == null ? 0 : Bits.count(removed);
+        this.removed = dead == 0 ? null : removed;
+        this.liveCount = n - dead;
+
+        this.departmentBits = parent.departmentBits;
+        this.unassignedBits = parent.unassignedBits;
+
+        // The parent's permutations keep their base and get a run for the tail, so sorted searches stay cheap
+        for (SortOrder.Key key : SortOrder.Key.values()) {
+            sortOrders[key.ordinal()] = parent.sortOrders[key.ordinal()].withTail(key, records::fileName, columns);
+        }
+    }
+
+    /** Default fuzzy edit budget when a request does not set one. */
+    public static final int DEFAULT_MAX_EDITS = 2;
+
+    /** Generation 0: nothing loaded yet. */
+    public static CatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a snapshot of {@code documents} and index it. The values are copied into compact records, so the
+     * list and its Documents are not retained.
+     */
+    public static CatalogSnapshot build(long generation, List<Document> documents) {
+        return build(generation, documents, CatalogStorage.heap());
+    }
+
+    /** {@link #build(long, List)} with records and columns kept in {@code storage}. */
+    public static CatalogSnapshot build(long generation, List<Document> documents, CatalogStorage storage) {
+        return new CatalogSnapshot(generation, documents, storage);
+    }
+
+    /**
+     * Write what a full build produced, columns, records, indexes and sort permutations, for {@link #readFrom}.
+     * Only a full build can be written: one with a tail or removed entries must be rebuilt first.
+     */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        if (tail != null || removed != null) throw new IllegalStateException("Only a full build can be written");
+        columns.writeTo(out);
+        records.writeTo(out);
+        base.writeTo(out);
+        for (SortOrder order : sortOrders) order.writeTo(out);
+    }
+
+    /**
+     * Snapshot {@code generation} of the {@code n} entries written by {@link #writeTo}, with records and columns
+     * in {@code storage}. Nothing is tokenised, hashed or sorted again; see {@link CatalogFile}.
+     */
+    static CatalogSnapshot readFrom(CatalogFile.Input in, long generation, int n, CatalogStorage storage) {
+        CatalogColumns columns = CatalogColumns.readFrom(in, n, storage);
+        CatalogRecords records = CatalogRecords.readFrom(in, columns, storage);
+        CatalogSegment base = CatalogSegment.readFrom(in, records, storage.onHeap());
+        SortOrder[] sortOrders = new SortOrder[SortOrder.Key.values().length];
+        for (int k = 0; k < sortOrders.length; k++) sortOrders[k] = SortOrder.readFrom(in, n);
+        return new CatalogSnapshot(generation, storage, columns, records, base, sortOrders);
+    }
+
+    /**
+     * Snapshot {@code generation}: this catalog without the live documents whose file name is in
+     * {@code removedNames} or is the name of an {@code added} document, and with {@code added} appended.
+     * Names compare exactly, as in a listing delta. Only the added documents are indexed; the documents that
+     * left are collected into {@code removedOut}. This snapshot is unchanged and stays usable.
+     */
+    public CatalogSnapshot withChanges(long generation, Collection<String> removedNames, List<Document> added,
+                                       List<Document> removedOut) {
+        Set<String> dropped = new HashSet<>(removedNames);
+        for (Document d : added) {
+            if (d.getFileName() != null) dropped.add(d.getFileName());
+        }
+        long[] marks = null;
+        for (String name : dropped) {
+            if (name == null) continue;
+            for (int o : matchFileName(name.toLowerCase())) {
+                if (!isLive(o) || !name.equals(records.fileName(o))) continue;
+                if (marks == null) marks = removed == null ? new long[Bits.words(size())] : removed.clone();
+                if (Bits.get(marks, o)) continue;
+                marks[o >>> 6] |= 1L << o;
+                removedOut.add(records.document(o));
+            }
+        }
+        if (marks == null && removed != null) marks = removed;
+        if (marks != null) marks = Arrays.copyOf(marks, Bits.words(size() + added.size()));
+        return new CatalogSnapshot(this, generation, added, marks);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public Instant builtAt() {
+        return builtAt;
+    }
+
+    /** Number of ordinals, including removed entries not yet dropped by a full build. */
+    public int size() {
+        return records.size();
+    }
+
+    /** Number of documents in the catalog: {@link #size()} minus removed entries. */
+    public int liveCount() {
+        return liveCount;
+    }
+
+    /** False for an entry removed by {@link #withChanges}. */
+    public boolean isLive(int ordinal) {
+        return removed == null || !Bits.get(removed, ordinal);
+    }
+
+    /** Ordinals appended by {@link #withChanges} since the last full build. */
+    public int tailSize() {
+        return size() - base.end();
+    }
+
+    /**
+     * True when both snapshots were derived from the same full build, so they share its records, columns,
+     * indexes and sort permutations and differ only in their tails and removed entries.
+     */
+    public boolean sharesBase(CatalogSnapshot other) {
+        return base == other.base;
+    }
+
+    /** A detached Document for {@code ordinal}, assembled from the compact records. */
+    public Document document(int ordinal) {
+        return records.document(ordinal);
+    }
+
+    /**
+     * Unmodifiable list view of the catalog's live documents in ordinal order; safe to share with any number of
+     * readers. Each {@code get} assembles a fresh Document, so iterate once rather than indexing the same
+     * position repeatedly. Positions equal ordinals unless entries were removed by {@link #withChanges}.
+     */
+    public List<Document> documents() {
+        return documents;
+    }
+
+    public String fileName(int ordinal) {
+        return records.fileName(ordinal);
+    }
+
+    public String filePath(int ordinal) {
+        return records.filePath(ordinal);
+    }
+
+    public String snippet(int ordinal) {
+        return records.snippet(ordinal);
+    }
+
+    public CatalogStorage storage() {
+        return storage;
+    }
+
+    /** Estimated heap per document held by the entries themselves (records and columns, not the indexes). */
+    public long heapBytesPerDocument() {
+        return records.heapBytesPerDocument();
+    }
+
+    /** Off-heap bytes held by the records and columns; 0 for heap storage. */
+    public long offHeapBytes() {
+        return records.offHeapBytes();
+    }
+
+    public CatalogColumns columns() {
+        return columns;
+    }
+
+    /**
+     * Fresh bitset of the live ordinals visible in {@code scope}, or null when the scope is unrestricted and no
+     * entry has been removed.
+     */
+    public long[] visible(SearchScope scope) {
+        long[] out;
+        if (scope.restricted()) {
+            Integer department = scope.departmentId();
+            long[] own = department == null ? null : departmentBits.get(department);
+            int words = Bits.words(size());
+            out = own == null ? new long[words] : Arrays.copyOf(own, words);
+            if (scope.includeUnassigned()) {
+                for (int w = 0; w < unassignedBits.length; w++) out[w] |= unassignedBits[w];
+            }
+            for (int i = base.end(); i < size(); i++) {
+                int dept = columns.department(i);
+                if (dept < 0 ? scope.includeUnassigned() : department != null && dept == department) out[i >>> 6] |= 1L << i;
+            }
+        } else if (removed != null) {
+            out = Bits.all(size());
+        } else {
+            return null;
+        }
+        if (removed != null) {
+            for (int w = 0; w < out.length; w++) out[w] &= ~removed[w];
+        }
+        return out;
+    }
+
+    /**
+     * Sort permutation for {@code key}. Every key's is built with the snapshot, by a full build or, for the tail,
+     * by {@link #withChanges}, so this never sorts on the caller's thread.
+     */
+    public SortOrder sortOrder(SortOrder.Key key) {
+        return sortOrders[key.ordinal()];
+    }
+
+    /**
+     * A live document whose file name equals {@code fileName} ignoring case, or null: the newest one added by
+     * {@link #withChanges}, otherwise the first in the catalog. Most misses are answered by the Bloom filters alone.
+     */
+    public Document findByName(String fileName) {
+        int ordinal = tail == null ? -1 : tail.find(fileName);
+        if (ordinal < 0) ordinal = base.find(fileName);
+        if (ordinal >= 0 && !isLive(ordinal)) {
+            // The indexed entry was replaced or removed: look for a live one among same-named entries
+            ordinal = -1;
+            for (int o : matchFileName(fileName.toLowerCase())) {
+                if (isLive(o) && fileName.equalsIgnoreCase(records.fileName(o))) ordinal = o;
+            }
+        }
+        return ordinal < 0 ? null : records.document(ordinal);
+    }
+
+    /**
+     * Ascending ordinals of documents whose lower-cased file name contains {@code lowerQuery}. Like the other
+     * index lookups this may include removed entries; {@link #visible} excludes them.
+     */
+    public int[] matchFileName(String lowerQuery) {
+        int[] hits = base.matchFileName(lowerQuery);
+        return tail == null ? hits : CatalogSegment.concat(hits, tail.matchFileName(lowerQuery));
+    }
+
+    /**
+     * Ascending ordinals of documents whose file name contains {@code query} (ignoring case), as
+     * {@link #matchFileName} finds them, or has, for every token of {@code query}, a token within
+     * {@code maxEdits} edits (less for short tokens). Names run words and digits together ("KwameMensah.pdf",
+     * "Mensah12345678.pdf"), so a token match alone would miss names that an exact search finds; the fuzzy
+     * result always includes the exact one.
+     */
+    public int[] matchFileNameFuzzy(String query, int maxEdits) {
+        int[] hits = base.matchFileNameFuzzy(query, maxEdits);
+        if (tail != null) hits = CatalogSegment.concat(hits, tail.matchFileNameFuzzy(query, maxEdits));
+        return TrigramIndex.union(matchFileName(query.toLowerCase()), hits);
+    }
+
+    /**
+     * Ascending ordinals of documents whose filename digit projection contains {@code digits}.
+     */
+    public int[] matchFileDigits(String digits) {
+        int[] hits = base.matchFileDigits(digits);
+        return tail == null ? hits : CatalogSegment.concat(hits, tail.matchFileDigits(digits));
+    }
+
+    /**
+     * Documents whose snippet contains every term of {@code query}, with their BM25 scores. Base and tail
+     * matches are scored against their combined statistics.
+     */
+    public FullTextIndex.Result matchFullText(String query) {
+        FullTextIndex.Result hits = base.matchFullText(query, tail);
+        return tail == null ? hits : hits.concat(tail.matchFullText(query, base), tail.offset());
+    }
+
+    /**
+     * Digit projection of a string: same result as {@code s.replaceAll("\\D+", "")} without the regex.
+     */
+    public static String digitsOf(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (sb == null) sb = new StringBuilder(s.length() - i);
+                sb.append(c);
+            }
+        }
+        return sb == null ? "" : sb.toString();
+    }
+
+    /** Ordinal of each position of {@link #documents()}, or null when they are the same. */
+    private int[] liveOrdinals() {
+        if (removed == null) return null;
+        int[] ordinals = liveOrdinals;
+        if (ordinals == null) {
+            long[] live = Bits.all(size());
+            for (int w = 0; w < live.length; w++) live[w] &= ~removed[w];
+            liveOrdinals = ordinals = Bits.toOrdinals(live);
+        }
+        return ordinals;
+    }
+
+    private final class DocumentView extends AbstractList<Document> implements RandomAccess {
+        @Override
+        public Document get(int index) {
+            int[] ordinals = liveOrdinals();
+            return records.document(ordinals == null ? index : ordinals[index]);
+        }
+
+        @Override
+        public int size() {
+            return liveCount;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Where a catalog snapshot keeps its fixed-width columns and, off-heap, its strings.
+ *
+ * <ul>
+ *   <li>{@code heap}: ordinary Java arrays (wrapped in heap buffers) and String objects. Fastest access,
+ *       but every entry adds to the heap the collector has to manage.</li>
+ *   <li>{@code direct}: {@link ByteBuffer#allocateDirect} memory, bounded by {@code -XX:MaxDirectMemorySize}.</li>
+ *   <li>{@code mapped}: memory-mapped scratch files in a directory (unlinked once mapped), backed by the page
+ *       cache rather than the JVM's direct-memory budget.</li>
+ * </ul>
+ * Off-heap memory is released when the snapshot owning it is garbage collected.
+ */
+public final class CatalogStorage {
+
+    public enum Kind { HEAP, DIRECT, MAPPED }
+
+    private static final CatalogStorage HEAP = new CatalogStorage(Kind.HEAP, null);
+
+    private final Kind kind;
+    private final Path dir;
+
+    private CatalogStorage(Kind kind, Path dir) {
+        this.kind = kind;
+        this.dir = dir;
+    }
+
+    public static CatalogStorage heap() {
+        return HEAP;
+    }
+
+    /**
+     * Storage for a {@code catalog.storage} value ({@code heap}, {@code direct} or {@code mapped});
+     * {@code dir} is where mapped scratch files go (blank = the system temp directory).
+     *
+     * @throws IllegalArgumentException for an unknown kind
+     */
+    public static CatalogStorage of(String kind, String dir) {
+        Kind k = kind == null || kind.isBlank() ? Kind.HEAP : Kind.valueOf(kind.trim().toUpperCase(Locale.ROOT));
+        if (k == Kind.HEAP) return HEAP;
+        Path d = k == Kind.MAPPED ? Path.of(dir == null || dir.isBlank() ? System.getProperty("java.io.tmpdir") : dir) : null;
+        return new CatalogStorage(k, d);
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public boolean onHeap() {
+        return kind == Kind.HEAP;
+    }
+
+    public LongBuffer longs(int n) {
+        return onHeap() ? LongBuffer.allocate(n) : allocate((long) n * Long.BYTES).asLongBuffer();
+    }
+
+    public IntBuffer ints(int n) {
+        return onHeap() ? IntBuffer.allocate(n) : allocate((long) n * Integer.BYTES).asIntBuffer();
+    }
+
+    public ShortBuffer shorts(int n) {
+        return onHeap() ? ShortBuffer.allocate(n) : allocate((long) n * Short.BYTES).asShortBuffer();
+    }
+
+    public ByteBuffer bytes(int n) {
+        return onHeap() ? ByteBuffer.allocate(n) : allocate(n);
+    }
+
+    /** Zeroed off-heap region of {@code size} bytes in native byte order. */
+    ByteBuffer allocate(long size) {
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Catalog region too large: " + size);
+        ByteBuffer buf;
+        if (kind == Kind.MAPPED) {
+            try {
+                Files.createDirectories(dir);
+                Path file = Files.createTempFile(dir, "catalog-", ".region");
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(1, size));
+                } finally {
+                    // The mapping outlives the file name; where unlinking an open file is not allowed, clean up at exit
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        file.toFile().deleteOnExit();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map catalog region in " + dir, e);
+            }
+        } else {
+            buf = ByteBuffer.allocateDirect((int) size);
+        }
+        return buf.order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.MAPPED ? "mapped(" + dir + ")" : kind.name().toLowerCase(Locale.ROOT);
+    }
+}
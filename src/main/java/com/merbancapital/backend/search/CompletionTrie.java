@@ -0,0 +1,239 @@
+package com.merbancapital.backend.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compressed (radix) trie for type-ahead: maps case-folded keys to item ids and answers "best items under this
+ * prefix" without visiting the subtree.
+ *
+ * Every node stores the ids of its {@code topK} heaviest items (weights are capped at {@code Integer.MAX_VALUE}), merged bottom-up at build time, so a completion
+ * is one walk down the prefix plus a copy. Ties in weight go to the lower id. Nodes live in flat arrays:
+ * labels in one char pool, children contiguous and sorted by first char. Immutable once built.
+ */
+public final class CompletionTrie {
+
+    private final char[] pool;        // concatenated edge labels
+    private final int[] labelStart;   // per node
+    private final int[] labelLength;
+    private final int[] firstChild;   // children of a node are [firstChild, firstChild + childCount)
+    private final int[] childCount;
+    private final int[][] top;        // per node, best ids first
+    private final int topK;
+
+    private CompletionTrie(char[] pool, int[] labelStart, int[] labelLength, int[] firstChild, int[] childCount,
+                           int[][] top, int topK) {
+        this.pool = pool;
+        this.labelStart = labelStart;
+        this.labelLength = labelLength;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.top = top;
+        this.topK = topK;
+    }
+
+    /**
+     * @param keys    completion keys; folded with {@link #fold} before indexing, nulls and blanks skipped
+     * @param ids     item id per key; several keys may share an id
+     * @param weights weight per item id; higher completes first
+     * @param topK    most completions a query can return
+     */
+    public static CompletionTrie build(List<String> keys, int[] ids, long[] weights, int topK) {
+        List<String> folded = new ArrayList<>(keys.size());
+        List<Integer> order = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            String k = keys.get(i) == null ? "" : fold(keys.get(i));
+            folded.add(k);
+            if (!k.isEmpty()) order.add(i);
+        }
+        order.sort(Comparator.comparing(folded::get));
+        String[] sorted = new String[order.size()];
+        int[] sortedIds = new int[order.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = folded.get(order.get(i));
+            sortedIds[i] = ids[order.get(i)];
+        }
+        Builder b = new Builder(sorted, sortedIds, weights, topK);
+        b.build();
+        return b.finish();
+    }
+
+    /** Lower-cased, trimmed, inner whitespace collapsed to single spaces. */
+    public static String fold(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) sb.append(' ');
+            space = false;
+            sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public int maxCompletions() {
+        return topK;
+    }
+
+    /** Up to {@code limit} (at most {@link #maxCompletions()}) item ids with a key starting with {@code prefix}. */
+    public int[] complete(String prefix, int limit) {
+        if (labelStart.length == 0) return new int[0];
+        String p = prefix == null ? "" : fold(prefix);
+        // A trailing space means the word is complete: "ann " should not complete to "anna"
+        if (!p.isEmpty() && Character.isWhitespace(prefix.charAt(prefix.length() - 1))) p += ' ';
+        int node = 0;
+        int pos = 0;
+        while (pos < p.length()) {
+            int child = findChild(node, p.charAt(pos));
+            if (child < 0) return new int[0];
+            int len = labelLength[child];
+            int start = labelStart[child];
+            int n = Math.min(len, p.length() - pos);
+            for (int i = 0; i < n; i++) {
+                if (pool[start + i] != p.charAt(pos + i)) return new int[0];
+            }
+            pos += n;
+            node = child;
+        }
+        int[] best = top[node];
+        return Arrays.copyOf(best, Math.min(best.length, Math.max(0, limit)));
+    }
+
+    private int findChild(int node, char c) {
+        int lo = firstChild[node];
+        int hi = lo + childCount[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = pool[labelStart[mid]];
+            if (m < c) lo = mid + 1;
+            else if (m > c) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /** Recursive construction over the sorted keys; children are laid out contiguously per node. */
+    private static final class Builder {
+        private final String[] keys;
+        private final int[] ids;
+        private final long[] weights;
+        private final int topK;
+        private final StringBuilder pool = new StringBuilder();
+        private int[] labelStart = new int[16], labelLength = new int[16], firstChild = new int[16], childCount = new int[16];
+        private int[][] top = new int[16][];
+        private int nodes;
+
+        Builder(String[] keys, int[] ids, long[] weights, int topK) {
+            this.keys = keys;
+            this.ids = ids;
+            this.weights = weights;
+            this.topK = topK;
+        }
+
+        void build() {
+            int root = allocate();
+            fill(root, 0, keys.length, 0);
+        }
+
+        /** Node {@code node} covers keys [lo, hi), all sharing their first {@code depth} chars. */
+        private void fill(int node, int lo, int hi, int depth) {
+            // Keys that end exactly here come first in sorted order
+            int i = lo;
+            List<Integer> here = new ArrayList<>();
+            while (i < hi && keys[i].length() == depth) here.add(ids[i++]);
+
+            // Group the rest by the next char and give each group one child with their common prefix as label
+            List<int[]> groups = new ArrayList<>();
+            while (i < hi) {
+                char c = keys[i].charAt(depth);
+                int j = i + 1;
+                while (j < hi && keys[j].charAt(depth) == c) j++;
+                groups.add(new int[]{i, j});
+                i = j;
+            }
+            int first = nodes;
+            for (int g = 0; g < groups.size(); g++) allocate();
+            firstChild[node] = first;
+            childCount[node] = groups.size();
+
+            List<int[]> candidates = new ArrayList<>();
+            if (!here.isEmpty()) candidates.add(best(here));
+            for (int g = 0; g < groups.size(); g++) {
+                int glo = groups.get(g)[0], ghi = groups.get(g)[1];
+                int common = commonPrefix(keys[glo], keys[ghi - 1], depth);
+                int child = first + g;
+                labelStart[child] = pool.length();
+                labelLength[child] = common - depth;
+                pool.append(keys[glo], depth, common);
+                fill(child, glo, ghi, common);
+                candidates.add(top[child]);
+            }
+            top[node] = merge(candidates);
+        }
+
+        private int[] best(List<Integer> items) {
+            int[] all = new int[items.size()];
+            for (int k = 0; k < all.length; k++) all[k] = items.get(k);
+            return merge(List.of(all));
+        }
+
+        /** Best {@code topK} distinct ids across the lists, heaviest first, lower id on ties. */
+        private int[] merge(List<int[]> lists) {
+            int total = 0;
+            for (int[] l : lists) total += l.length;
+            // (weight desc, id asc) packed into one sortable long
+            long[] packed = new long[total];
+            int n = 0;
+            for (int[] l : lists) {
+                for (int id : l) {
+                    long w = Math.min(Math.max(weights[id], 0L), Integer.MAX_VALUE);
+                    packed[n++] = ((Integer.MAX_VALUE - w) << 32) | id;
+                }
+            }
+            Arrays.sort(packed);
+            int[] out = new int[Math.min(topK, n)];
+            int m = 0;
+            for (int k = 0; k < n && m < out.length; k++) {
+                if (k > 0 && packed[k] == packed[k - 1]) continue;
+                out[m++] = (int) packed[k];
+            }
+            return m == out.length ? out : Arrays.copyOf(out, m);
+        }
+
+        private static int commonPrefix(String a, String b, int from) {
+            int n = Math.min(a.length(), b.length());
+            int i = from;
+            while (i < n && a.charAt(i) == b.charAt(i)) i++;
+            return i;
+        }
+
+        private int allocate() {
+            if (nodes == labelStart.length) {
+                int cap = nodes * 2;
+                labelStart = Arrays.copyOf(labelStart, cap);
+                labelLength = Arrays.copyOf(labelLength, cap);
+                firstChild = Arrays.copyOf(firstChild, cap);
+                childCount = Arrays.copyOf(childCount, cap);
+                top = Arrays.copyOf(top, cap);
+            }
+            return nodes++;
+        }
+
+        CompletionTrie finish() {
+            if (keys.length == 0) {
+                return new CompletionTrie(new char[0], new int[0], new int[0], new int[0], new int[0], new int[0][], topK);
+            }
+            char[] chars = new char[pool.length()];
+            pool.getChars(0, chars.length, chars, 0);
+            return new CompletionTrie(chars, Arrays.copyOf(labelStart, nodes), Arrays.copyOf(labelLength, nodes),
+                    Arrays.copyOf(firstChild, nodes), Arrays.copyOf(childCount, nodes), Arrays.copyOf(top, nodes), topK);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.merbancapital.backend.search;
+
+/**
+ * A {@link SearchCursor} refers to a catalog generation that is no longer retained, so its next page cannot be
+ * produced consistently; the client has to restart the search.
+ */
+public class CursorExpiredException extends RuntimeException {
+
+    public CursorExpiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,287 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Substring index over digit-only keys (filename digit projections), for account-number lookups.
+ *
+ * Over a ten-symbol alphabet trigrams have at most 1000 values, so on a large catalog each posting list covers a
+ * sizeable share of it and intersecting them is close to a scan. Here every position of a key contributes one
+ * gram of up to {@link #K} digits (shorter only where the key ends), so an 8-digit account number is looked up
+ * through a handful of 6-digit grams that are each rare, intersected smallest first and verified with
+ * {@link String#contains}. A query shorter than {@code K} is answered exactly from the grams it prefixes.
+ *
+ * Grams are stored as sorted {@code int} codes with their posting lists packed into one array, so the index
+ * holds no per-gram objects.
+ */
+final class DigitIndex {
+
+    /** Digits per gram. */
+    static final int K = 6;
+
+    private static final int[] EMPTY = new int[0];
+    private static final int[] POW10 = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    private final IntFunction<String> keys;
+    private final int size;
+    // Sorted distinct gram codes; the postings of grams[g] are postings[starts[g], starts[g + 1])
+    private final int[] grams;
+    private final int[] starts;
+    private final int[] postings;
+
+    private DigitIndex(IntFunction<String> keys, int size, int[] grams, int[] starts, int[] postings) {
+        this.keys = keys;
+        this.size = size;
+        this.grams = grams;
+        this.starts = starts;
+        this.postings = postings;
+    }
+
+    /**
+     * Index {@code keys} (digits only; null never matches) but keep only {@code lookup}, which must return the
+     * same key for each ordinal, for verifying candidates.
+     */
+    static DigitIndex build(String[] keys, IntFunction<String> lookup) {
+        // Pass 1: count the documents per gram
+        IntCounts counts = new IntCounts();
+        int[] scratch = new int[16];
+        for (String k : keys) {
+            if (k == null || k.isEmpty()) continue;
+            scratch = gramsOf(k, scratch);
+            int n = distinct(scratch, k.length());
+            for (int j = 0; j < n; j++) counts.add(scratch[j]);
+        }
+        int[] grams = counts.keys();
+        Arrays.sort(grams);
+        int[] starts = new int[grams.length + 1];
+        for (int g = 0; g < grams.length; g++) {
+            int slot = counts.slot(grams[g]);
+            starts[g + 1] = starts[g] + counts.values[slot];
+            // From here on the map holds each gram's next free position in the postings
+            counts.values[slot] = starts[g];
+        }
+
+        // Pass 2: fill, in ordinal order so every list comes out ascending
+        int[] postings = new int[starts[grams.length]];
+        for (int i = 0; i < keys.length; i++) {
+            String k = keys[i];
+            if (k == null || k.isEmpty()) continue;
+            scratch = gramsOf(k, scratch);
+            int n = distinct(scratch, k.length());
+            for (int j = 0; j < n; j++) postings[counts.values[counts.slot(scratch[j])]++] = i;
+        }
+        return new DigitIndex(lookup, keys.length, grams, starts, postings);
+    }
+
+    void writeTo(CatalogFile.Output out) throws IOException {
+        out.writeInt(size);
+        out.writeInts(grams);
+        out.writeInts(starts);
+        out.writeInts(postings);
+    }
+
+    /** The index written by {@link #writeTo}, verifying candidates with {@code lookup}. */
+    static DigitIndex readFrom(CatalogFile.Input in, IntFunction<String> lookup) {
+        int size = in.readInt();
+        int[] grams = in.readInts();
+        int[] starts = in.readInts();
+        int[] postings = in.readInts();
+        if (starts.length != grams.length + 1 || starts[0] != 0 || starts[grams.length] != postings.length) {
+            throw new IllegalStateException("Bad digit postings");
+        }
+        for (int g = 0; g < grams.length; g++) {
+            if (starts[g + 1] < starts[g]) throw new IllegalStateException("Bad digit postings");
+        }
+        for (int ordinal : postings) {
+            if (ordinal < 0 || ordinal >= size) throw new IllegalStateException("Bad digit posting " + ordinal);
+        }
+        return new DigitIndex(lookup, size, grams, starts, postings);
+    }
+
+    /** Ascending ordinals of all keys containing {@code q}, which must consist of digits only. */
+    int[] search(String q) {
+        if (q.isEmpty()) return scanAll();
+        if (q.length() < K) return prefixed(q);
+
+        // Distinct grams of the query, rarest first
+        int[] lists = new int[q.length() - K + 1];
+        int n = 0;
+        outer:
+        for (int p = 0; p + K <= q.length(); p++) {
+            int g = find(code(K, value(q, p, K)));
+            if (g < 0) return EMPTY;
+            for (int j = 0; j < n; j++) {
+                if (lists[j] == g) continue outer;
+            }
+            // Insertion by posting count; a query has only a few grams
+            int j = n++;
+            while (j > 0 && length(lists[j - 1]) > length(g)) {
+                lists[j] = lists[j - 1];
+                j--;
+            }
+            lists[j] = g;
+        }
+        int[] candidates = Arrays.copyOfRange(postings, starts[lists[0]], starts[lists[0] + 1]);
+        int count = candidates.length;
+        for (int j = 1; j < n && count > 0; j++) count = intersect(candidates, count, starts[lists[j]], starts[lists[j] + 1]);
+        // Every gram present does not mean they are adjacent in the key: verify
+        int[] out = new int[count];
+        int m = 0;
+        for (int j = 0; j < count; j++) {
+            String k = keys.apply(candidates[j]);
+            if (k != null && k.contains(q)) out[m++] = candidates[j];
+        }
+        return m == out.length ? out : Arrays.copyOf(out, m);
+    }
+
+    /**
+     * Keys with {@code q} (shorter than a gram) at some position: exactly those with a gram of length
+     * {@code m >= q.length()} starting with {@code q}, which for each {@code m} is one range of gram codes.
+     */
+    private int[] prefixed(String q) {
+        int len = q.length();
+        int value = value(q, 0, len);
+        long[] bits = new long[Bits.words(size)];
+        for (int m = len; m <= K; m++) {
+            int span = POW10[m - len];
+            int lo = code(m, value * span);
+            int hi = lo + span;
+            int g = find(lo);
+            if (g < 0) g = -g - 1;
+            for (; g < grams.length && grams[g] < hi; g++) {
+                for (int p = starts[g]; p < starts[g + 1]; p++) bits[postings[p] >>> 6] |= 1L << postings[p];
+            }
+        }
+        return Bits.toOrdinals(bits);
+    }
+
+    private int[] scanAll() {
+        int[] out = new int[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (keys.apply(i) != null) out[n++] = i;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Keep the first {@code aLen} entries of {@code a} that also occur in {@code postings[from, to)}; both are
+     * ascending. Gallops, as the candidates are usually far fewer than the postings. Returns the new length.
+     */
+    private int intersect(int[] a, int aLen, int from, int to) {
+        int n = 0;
+        int j = from;
+        for (int i = 0; i < aLen && j < to; i++) {
+            int v = a[i];
+            int step = 1;
+            int hi = j;
+            while (hi < to && postings[hi] < v) {
+                j = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            int pos = Arrays.binarySearch(postings, j, Math.min(hi + 1, to), v);
+            if (pos >= 0) {
+                a[n++] = v;
+                j = pos + 1;
+            } else {
+                j = -pos - 1;
+            }
+        }
+        return n;
+    }
+
+    private int length(int gram) {
+        return starts[gram + 1] - starts[gram];
+    }
+
+    private int find(int code) {
+        return Arrays.binarySearch(grams, code);
+    }
+
+    /** Gram codes at every position of {@code k}: up to K digits, fewer only in the last K - 1 positions. */
+    private static int[] gramsOf(String k, int[] out) {
+        int len = k.length();
+        if (out.length < len) out = new int[Math.max(len, out.length * 2)];
+        for (int p = 0; p < len; p++) {
+            int m = Math.min(K, len - p);
+            out[p] = code(m, value(k, p, m));
+        }
+        return out;
+    }
+
+    /** Sort the first {@code n} codes and drop duplicates; returns how many remain. */
+    private static int distinct(int[] codes, int n) {
+        Arrays.sort(codes, 0, n);
+        int d = 0;
+        for (int j = 0; j < n; j++) {
+            if (d == 0 || codes[d - 1] != codes[j]) codes[d++] = codes[j];
+        }
+        return d;
+    }
+
+    /** Grams of different lengths never collide, and grams of one length with a common prefix are contiguous. */
+    private static int code(int length, int value) {
+        return length * POW10[K] + value;
+    }
+
+    private static int value(String s, int from, int length) {
+        int v = 0;
+        for (int i = from; i < from + length; i++) v = v * 10 + (s.charAt(i) - '0');
+        return v;
+    }
+
+    /** Open-addressing int -> int map (gram -> count, then next position), only used while building. */
+    private static final class IntCounts {
+        private int[] keys = new int[1024];
+        private int[] values = new int[1024];
+        private boolean[] used = new boolean[1024];
+        private int size;
+
+        void add(int key) {
+            if (size * 2 >= keys.length) grow();
+            int slot = slot(key);
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot]++;
+        }
+
+        /** Slot of {@code key}, or of the free slot it would take. */
+        int slot(int key) {
+            int mask = keys.length - 1;
+            int s = (key * 0x9E3779B9) >>> 7 & mask;
+            while (used[s] && keys[s] != key) s = (s + 1) & mask;
+            return s;
+        }
+
+        int[] keys() {
+            int[] out = new int[size];
+            int n = 0;
+            for (int s = 0; s < keys.length; s++) {
+                if (used[s]) out[n++] = keys[s];
+            }
+            return out;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int s = 0; s < oldKeys.length; s++) {
+                if (!oldUsed[s]) continue;
+                int slot = slot(oldKeys[s]);
+                used[slot] = true;
+                keys[slot] = oldKeys[s];
+                values[slot] = oldValues[s];
+            }
+        }
+    }
+}
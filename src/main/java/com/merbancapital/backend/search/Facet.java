@@ -0,0 +1,39 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+
+/**
+ * Dimensions the catalog is counted by. Values are strings: the normalised extension, the index status
+ * name, and the department / client id.
+ */
+public enum Facet {
+    EXTENSION("extension"),
+    DEPARTMENT("department"),
+    INDEX_STATUS("indexStatus"),
+    CLIENT("client");
+
+    private final String wireName;
+
+    Facet(String wireName) {
+        this.wireName = wireName;
+    }
+
+    /** Key used in JSON responses. */
+    public String wireName() {
+        return wireName;
+    }
+
+    /** The document's value for this facet, or null when it has none. */
+    public String valueOf(Document d) {
+        switch (this) {
+            case EXTENSION:
+                return CatalogColumns.extensionOf(d);
+            case DEPARTMENT:
+                return d.getDepartmentId() == null ? null : d.getDepartmentId().toString();
+            case INDEX_STATUS:
+                return d.getIndexStatus() == null ? null : d.getIndexStatus().name();
+            default:
+                return d.getClientId() == null ? null : d.getClientId().toString();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-facet document counts.
+ *
+ * The mutable instance is kept up to date by the catalog refresh as entries are added and removed, and
+ * {@link #freeze()} hands out an immutable copy ordered by count (descending, then value) that readers can use
+ * without locking. {@link #of(CatalogColumns, int[], SearchExecutor)} counts a search's match set straight from the columns.
+ */
+public final class FacetCounts {
+
+    private final Map<Facet, Map<String, Long>> counts = new EnumMap<>(Facet.class);
+
+    public FacetCounts() {
+        for (Facet facet : Facet.values()) counts.put(facet, new HashMap<>());
+    }
+
+    public void add(Document d) {
+        for (Facet facet : Facet.values()) {
+            String v = facet.valueOf(d);
+            if (v != null) counts.get(facet).merge(v, 1L, Long::sum);
+        }
+    }
+
+    public void remove(Document d) {
+        for (Facet facet : Facet.values()) {
+            String v = facet.valueOf(d);
+            if (v != null) counts.get(facet).computeIfPresent(v, (k, c) -> c <= 1 ? null : c - 1);
+        }
+    }
+
+    /** Add every count of {@code other}, such as a whole catalog counted by {@link #of}. */
+    public void add(FacetCounts other) {
+        for (Facet facet : Facet.values()) {
+            Map<String, Long> m = counts.get(facet);
+            other.counts.get(facet).forEach((v, c) -> m.merge(v, c, Long::sum));
+        }
+    }
+
+    public void clear() {
+        for (Map<String, Long> m : counts.values()) m.clear();
+    }
+
+    /** Counts for one facet; on a frozen instance unmodifiable and ordered by count descending, then value. */
+    public Map<String, Long> get(Facet facet) {
+        return counts.get(facet);
+    }
+
+    /** Immutable, sorted copy. */
+    public FacetCounts freeze() {
+        FacetCounts frozen = new FacetCounts();
+        for (Facet facet : Facet.values()) frozen.counts.put(facet, sorted(counts.get(facet)));
+        return frozen;
+    }
+
+    /**
+     * Counts over the matched ordinals (null = whole catalog), read from the primitive columns. Segments of the
+     * match set are tallied in parallel and the per-segment counts summed.
+     */
+    public static FacetCounts of(CatalogColumns columns, int[] hits, SearchExecutor executor) {
+        int n = hits == null ? columns.size() : hits.length;
+        Tally total = new Tally(columns);
+        for (Tally t : executor.map(n, (from, to) -> new Tally(columns).count(columns, hits, from, to))) total.add(t);
+        return total.toCounts(columns);
+    }
+
+    /** Raw per-code counts for one segment of a match set. */
+    private static final class Tally {
+        final long[] ext;
+        final long[] status = new long[Document.IndexStatus.values().length + 1];
+        final Map<Integer, long[]> dept = new HashMap<>();
+        final Map<Integer, long[]> client = new HashMap<>();
+
+        Tally(CatalogColumns columns) {
+            ext = new long[columns.extensionCount()];
+        }
+
+        Tally count(CatalogColumns columns, int[] hits, int from, int to) {
+            for (int j = from; j < to; j++) {
+                int i = hits == null ? j : hits[j];
+                ext[columns.extension(i)]++;
+                status[columns.indexStatus(i)]++;
+                int d = columns.department(i);
+                if (d >= 0) dept.computeIfAbsent(d, k -> new long[1])[0]++;
+                int c = columns.client(i);
+                if (c >= 0) client.computeIfAbsent(c, k -> new long[1])[0]++;
+            }
+            return this;
+        }
+
+        void add(Tally o) {
+            for (int c = 0; c < ext.length; c++) ext[c] += o.ext[c];
+            for (int c = 0; c < status.length; c++) status[c] += o.status[c];
+            o.dept.forEach((k, v) -> dept.computeIfAbsent(k, x -> new long[1])[0] += v[0]);
+            o.client.forEach((k, v) -> client.computeIfAbsent(k, x -> new long[1])[0] += v[0]);
+        }
+
+        FacetCounts toCounts(CatalogColumns columns) {
+            FacetCounts out = new FacetCounts();
+            Map<String, Long> m = out.counts.get(Facet.EXTENSION);
+            for (short code = 1; code < ext.length; code++) if (ext[code] > 0) m.put(columns.extensionName(code), ext[code]);
+            m = out.counts.get(Facet.INDEX_STATUS);
+            for (int code = 1; code < status.length; code++) {
+                if (status[code] > 0) m.put(Document.IndexStatus.values()[code - 1].name(), status[code]);
+            }
+            m = out.counts.get(Facet.DEPARTMENT);
+            for (Map.Entry<Integer, long[]> e : dept.entrySet()) m.put(e.getKey().toString(), e.getValue()[0]);
+            m = out.counts.get(Facet.CLIENT);
+            for (Map.Entry<Integer, long[]> e : client.entrySet()) m.put(e.getKey().toString(), e.getValue()[0]);
+            return out.freeze();
+        }
+    }
+
+    private static Map<String, Long> sorted(Map<String, Long> in) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(in.entrySet());
+        entries.sort((a, b) -> {
+            int c = Long.compare(b.getValue(), a.getValue());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        Map<String, Long> out = new LinkedHashMap<>(entries.size() * 2);
+        for (Map.Entry<String, Long> e : entries) out.put(e.getKey(), e.getValue());
+        return Collections.unmodifiableMap(out);
+    }
+}
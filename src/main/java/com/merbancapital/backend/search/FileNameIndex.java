@@ -0,0 +1,136 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.function.IntFunction;
+
+/**
+ * Exact, case-insensitive file name lookup: an open-addressing hash table from case-folded name to the first
+ * ordinal carrying it, fronted by a Bloom filter so names that are not in the catalog are usually rejected
+ * after a few bit probes without hashing into the table at all.
+ *
+ * Folding is {@code toLowerCase(toUpperCase(c))} per char, which matches exactly the pairs that
+ * {@link String#equalsIgnoreCase} considers equal.
+ */
+final class FileNameIndex {
+
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7; // ~1% false positives at 10 bits per key
+
+    private final IntFunction<String> names;   // raw name per ordinal, null when the document has none
+    private final int[] table;                 // ordinal + 1, 0 = empty slot
+    private final int mask;
+    private final long[] bloom;
+    private final int bloomBits;
+
+    private FileNameIndex(IntFunction<String> names, int[] table, long[] bloom) {
+        this.names = names;
+        this.table = table;
+        this.mask = table.length - 1;
+        this.bloom = bloom;
+        this.bloomBits = bloom.length * 64;
+    }
+
+    /**
+     * @param names  file names by ordinal, used only while building
+     * @param lookup returns {@code names[i]} later on; names are folded again when a probe lands on them
+     */
+    static FileNameIndex build(String[] names, IntFunction<String> lookup) {
+        int n = names.length;
+        int capacity = Integer.highestOneBit(Math.max(4, n * 2 - 1)) << 1; // load factor <= 0.5
+        int[] table = new int[capacity];
+        long[] bloom = new long[Math.max(1, (int) (((long) n * BLOOM_BITS_PER_KEY + 63) / 64))];
+        FileNameIndex index = new FileNameIndex(i -> names[i], table, bloom);
+        for (int i = 0; i < n; i++) {
+            if (names[i] == null) continue;
+            String key = fold(names[i]);
+            int h = key.hashCode();
+            if (index.slotOf(key, h) >= 0) continue; // keep the first ordinal for duplicate names
+            int slot = mix(h) & index.mask;
+            while (table[slot] != 0) slot = (slot + 1) & index.mask;
+            table[slot] = i + 1;
+            index.addToBloom(h, secondHash(key));
+        }
+        return new FileNameIndex(lookup, table, bloom);
+    }
+
+    void writeTo(CatalogFile.Output out) throws IOException {
+        out.writeInts(table);
+        out.writeLongs(bloom);
+    }
+
+    /** The index written by {@link #writeTo}, over names read back through {@code lookup}. */
+    static FileNameIndex readFrom(CatalogFile.Input in, int size, IntFunction<String> lookup) {
+        int[] table = in.readInts();
+        if (Integer.bitCount(table.length) != 1) throw new IllegalStateException("Bad name table");
+        for (int entry : table) {
+            if (entry < 0 || entry > size) throw new IllegalStateException("Bad name table entry " + entry);
+        }
+        long[] bloom = in.readLongs();
+        if (bloom.length == 0) throw new IllegalStateException("Empty name filter");
+        return new FileNameIndex(lookup, table, bloom);
+    }
+
+    /** First ordinal whose name equals {@code name} ignoring case, or -1. */
+    int find(String name) {
+        if (name == null) return -1;
+        String key = fold(name);
+        int h = key.hashCode();
+        if (!mightContain(h, secondHash(key))) return -1;
+        int slot = slotOf(key, h);
+        return slot < 0 ? -1 : table[slot] - 1;
+    }
+
+    private int slotOf(String key, int h) {
+        int slot = mix(h) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            String name = names.apply(entry - 1);
+            if (name != null && key.equals(fold(name))) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Kirsch-Mitzenmacher: probe i is h1 + i * h2
+    private void addToBloom(int h1, int h2) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bloomBits);
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(int h1, int h2) {
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bloomBits);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    static String fold(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.toLowerCase(Character.toUpperCase(c)) != c) {
+                char[] out = s.toCharArray();
+                for (int j = i; j < out.length; j++) out[j] = Character.toLowerCase(Character.toUpperCase(out[j]));
+                return new String(out);
+            }
+        }
+        return s;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // FNV-1a over the chars, independent of String.hashCode; forced odd so probes cycle the filter
+    private static int secondHash(String s) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        return h | 1;
+    }
+}
@@ -0,0 +1,463 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Embedded inverted index over document text (OCR snippet) with BM25 ranking.
+ *
+ * Text is lower-cased and split on anything that is not a letter or digit. Each term's posting list is
+ * stored as variable-length encoded (doc delta, term frequency) pairs in a single byte array. Queries are
+ * conjunctive: a document must contain every query term, and is scored with Okapi BM25.
+ */
+public final class FullTextIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private final Map<String, Postings> terms;
+    private final int[] docLengths;
+    private final int docsWithText;
+    private final float avgDocLength;
+
+    private FullTextIndex(Map<String, Postings> terms, int[] docLengths, int docsWithText, float avgDocLength) {
+        this.terms = terms;
+        this.docLengths = docLengths;
+        this.docsWithText = docsWithText;
+        this.avgDocLength = avgDocLength;
+    }
+
+    /**
+     * Build an index over {@code texts}; ordinals are positions in the array and null entries are skipped.
+     */
+    public static FullTextIndex build(String[] texts) {
+        Map<String, PostingsBuilder> builders = new HashMap<>();
+        int[] docLengths = new int[texts.length];
+        int docsWithText = 0;
+        long totalLength = 0;
+        Map<String, int[]> tf = new HashMap<>();
+        for (int doc = 0; doc < texts.length; doc++) {
+            if (texts[doc] == null || texts[doc].isBlank()) continue;
+            tf.clear();
+            int length = 0;
+            for (String token : tokenize(texts[doc])) {
+                tf.computeIfAbsent(token, t -> new int[1])[0]++;
+                length++;
+            }
+            if (length == 0) continue;
+            docLengths[doc] = length;
+            docsWithText++;
+            totalLength += length;
+            for (Map.Entry<String, int[]> e : tf.entrySet()) {
+                builders.computeIfAbsent(e.getKey(), t -> new PostingsBuilder()).add(doc, e.getValue()[0]);
+            }
+        }
+        Map<String, Postings> terms = new HashMap<>(Math.max(16, (int) (builders.size() / 0.75f) + 1));
+        for (Map.Entry<String, PostingsBuilder> e : builders.entrySet()) {
+            terms.put(e.getKey(), e.getValue().build());
+        }
+        float avg = docsWithText == 0 ? 0f : (float) totalLength / docsWithText;
+        return new FullTextIndex(terms, docLengths, docsWithText, avg);
+    }
+
+    /** Write the index for {@link #readFrom}: statistics, then the sorted terms with their encoded postings. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        String[] sorted = terms.keySet().toArray(new String[0]);
+        Arrays.sort(sorted);
+        out.writeInts(docLengths);
+        out.writeInt(docsWithText);
+        out.writeFloat(avgDocLength);
+        out.writeStrings(sorted);
+        for (String term : sorted) {
+            Postings p = terms.get(term);
+            out.writeInt(p.docFreq);
+            out.writeBytes(p.data);
+        }
+    }
+
+    /** The index written by {@link #writeTo}, over {@code size} ordinals. */
+    static FullTextIndex readFrom(CatalogFile.Input in, int size) {
+        int[] docLengths = in.readInts();
+        if (docLengths.length != size) throw new IllegalStateException("Expected " + size + " document lengths");
+        int docsWithText = in.readInt();
+        float avgDocLength = in.readFloat();
+        String[] sorted = in.readStrings();
+        Map<String, Postings> terms = new HashMap<>(Math.max(16, (int) (sorted.length / 0.75f) + 1));
+        for (String term : sorted) {
+            int docFreq = in.readInt();
+            if (term == null || docFreq <= 0 || docFreq > size) throw new IllegalStateException("Bad postings for " + term);
+            terms.put(term, new Postings(in.readByteArray(), docFreq));
+        }
+        return new FullTextIndex(terms, docLengths, docsWithText, avgDocLength);
+    }
+
+    /**
+     * Split text into lower-cased letter/digit runs. Over-long runs (OCR noise) are dropped.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if (i - start <= MAX_TOKEN_LENGTH) out.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    /**
+     * Conjunctive BM25 query. Returns matches in ascending ordinal order with their scores; an empty result
+     * when the query has no tokens or any token is absent from the index.
+     */
+    public Result search(String query) {
+        return search(query, null);
+    }
+
+    /**
+     * {@link #search(String)} over this index's documents, scored with the collection statistics (documents,
+     * document frequencies, average length) of this index and {@code other} combined. Searching two indexes
+     * over disjoint documents this way scores each match as one index over both would.
+     *
+     * @param other index over the rest of the collection, or null
+     */
+    Result search(String query, FullTextIndex other) {
+        Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+        if (tokens.isEmpty()) return Result.EMPTY;
+        List<String> order = new ArrayList<>(tokens.size());
+        for (String t : tokens) {
+            if (!terms.containsKey(t)) return Result.EMPTY;
+            order.add(t);
+        }
+        // Start from the rarest term so the working set only shrinks
+        order.sort((a, b) -> Integer.compare(terms.get(a).docFreq, terms.get(b).docFreq));
+
+        int collection = docsWithText + (other == null ? 0 : other.docsWithText);
+        float avg = other == null || collection == 0 ? avgDocLength
+                : (avgDocLength * docsWithText + other.avgDocLength * other.docsWithText) / collection;
+
+        Postings first = terms.get(order.get(0));
+        int[] docs = new int[first.docFreq];
+        float[] scores = new float[first.docFreq];
+        int size = 0;
+        PostingsReader r = new PostingsReader(first);
+        float idf = idf(docFreq(order.get(0), other), collection);
+        while (r.next()) {
+            docs[size] = r.doc;
+            scores[size] = idf * tfNorm(r.freq, docLengths[r.doc], avg);
+            size++;
+        }
+
+        for (int j = 1; j < order.size() && size > 0; j++) {
+            Postings p = terms.get(order.get(j));
+            idf = idf(docFreq(order.get(j), other), collection);
+            r = new PostingsReader(p);
+            int n = 0;
+            boolean more = r.next();
+            for (int i = 0; i < size && more; i++) {
+                while (more && r.doc < docs[i]) more = r.next();
+                if (more && r.doc == docs[i]) {
+                    docs[n] = docs[i];
+                    scores[n] = scores[i] + idf * tfNorm(r.freq, docLengths[r.doc], avg);
+                    n++;
+                }
+            }
+            size = n;
+        }
+        return new Result(docs, scores, size);
+    }
+
+    private int docFreq(String term, FullTextIndex other) {
+        int df = terms.get(term).docFreq;
+        if (other != null) {
+            Postings p = other.terms.get(term);
+            if (p != null) df += p.docFreq;
+        }
+        return df;
+    }
+
+    private static float idf(int docFreq, int docsWithText) {
+        return (float) Math.log(1.0 + (docsWithText - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    private static float tfNorm(int freq, int docLength, float avgDocLength) {
+        float norm = avgDocLength == 0f ? 1f : docLength / avgDocLength;
+        return freq * (K1 + 1) / (freq + K1 * (1 - B + B * norm));
+    }
+
+    /** Scored matches in ascending ordinal order. */
+    public static final class Result {
+
+        static final Result EMPTY = new Result(new int[0], new float[0], 0);
+
+        private final int[] docs;
+        private final float[] scores;
+        private final int size;
+
+        Result(int[] docs, float[] scores, int size) {
+            this.docs = docs;
+            this.scores = scores;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int doc(int i) {
+            return docs[i];
+        }
+
+        public float score(int i) {
+            return scores[i];
+        }
+
+        /** Ascending matched ordinals. */
+        public int[] docs() {
+            return Arrays.copyOf(docs, size);
+        }
+
+        /** Score of a matched ordinal, or NaN when it is not in the result. */
+        public float scoreOf(int ordinal) {
+            int i = Arrays.binarySearch(docs, 0, size, ordinal);
+            return i < 0 ? Float.NaN : scores[i];
+        }
+
+        /**
+         * This result followed by {@code other}, whose ordinals are shifted up by {@code offset}; every shifted
+         * ordinal must be above this result's ordinals.
+         */
+        Result concat(Result other, int offset) {
+            if (other.size == 0) return this;
+            int[] d = Arrays.copyOf(docs, size + other.size);
+            float[] s = Arrays.copyOf(scores, size + other.size);
+            for (int i = 0; i < other.size; i++) {
+                d[size + i] = other.docs[i] + offset;
+                s[size + i] = other.scores[i];
+            }
+            return new Result(d, s, size + other.size);
+        }
+
+        /**
+         * Keep only matches whose ordinal is in {@code allowed} (ascending).
+         */
+        public Result retain(int[] allowed) {
+            int[] d = new int[Math.min(size, allowed.length)];
+            float[] s = new float[d.length];
+            int n = 0;
+            int j = 0;
+            for (int i = 0; i < size && j < allowed.length; i++) {
+                while (j < allowed.length && allowed[j] < docs[i]) j++;
+                if (j < allowed.length && allowed[j] == docs[i]) {
+                    d[n] = docs[i];
+                    s[n] = scores[i];
+                    n++;
+                }
+            }
+            return new Result(d, s, n);
+        }
+
+        /**
+         * The best {@code k} matches as ordinals, ordered by score descending then ordinal ascending. Uses a
+         * bounded min-heap, so the cost is O(size log k) rather than a full sort.
+         */
+        public int[] topK(int k) {
+            return topKAfter(Float.POSITIVE_INFINITY, -1, k);
+        }
+
+        /**
+         * Like {@link #topK} but only over matches ranked strictly after ({@code score}, {@code ordinal}), so a
+         * cursor can resume ranking with a heap bounded by the page size instead of the page depth.
+         */
+        public int[] topKAfter(float score, int ordinal, int k) {
+            return toDocs(topIndexes(score, ordinal, k, 0, size));
+        }
+
+        /**
+         * {@link #topKAfter} with the matches split into segments that are ranked in parallel; the per-segment
+         * winners are then merged, so the result is the same.
+         */
+        public int[] topKAfter(float score, int ordinal, int k, SearchExecutor executor) {
+            if (size <= executor.segmentSize()) return topKAfter(score, ordinal, k);
+            List<int[]> parts = executor.map(size, (from, to) -> topIndexes(score, ordinal, k, from, to));
+            int total = 0;
+            for (int[] p : parts) total += p.length;
+            int[] merged = new int[total];
+            int n = 0;
+            for (int[] p : parts) {
+                System.arraycopy(p, 0, merged, n, p.length);
+                n += p.length;
+            }
+            // Each part is already ordered; the merged candidates are few (segments * k), so re-rank them all
+            return toDocs(topIndexes(merged, k));
+        }
+
+        private int[] toDocs(int[] indexes) {
+            int[] out = new int[indexes.length];
+            for (int i = 0; i < indexes.length; i++) out[i] = docs[indexes[i]];
+            return out;
+        }
+
+        /** Best {@code k} indexes in [from, to) ranked after (score, ordinal), best first. */
+        private int[] topIndexes(float score, int ordinal, int k, int from, int to) {
+            k = Math.min(k, to - from);
+            if (k <= 0) return new int[0];
+            int[] heap = new int[k]; // indexes into docs/scores, worst match at the root
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                if (scores[i] > score || (scores[i] == score && docs[i] <= ordinal)) continue;
+                if (n < k) {
+                    heap[n] = i;
+                    siftUp(heap, n++);
+                } else if (better(i, heap[0])) {
+                    heap[0] = i;
+                    siftDown(heap, n);
+                }
+            }
+            return drain(heap, n);
+        }
+
+        /** Best {@code k} of the candidate indexes, best first. */
+        private int[] topIndexes(int[] candidates, int k) {
+            k = Math.min(k, candidates.length);
+            if (k <= 0) return new int[0];
+            int[] heap = new int[k];
+            int n = 0;
+            for (int i : candidates) {
+                if (n < k) {
+                    heap[n] = i;
+                    siftUp(heap, n++);
+                } else if (better(i, heap[0])) {
+                    heap[0] = i;
+                    siftDown(heap, n);
+                }
+            }
+            return drain(heap, n);
+        }
+
+        private int[] drain(int[] heap, int n) {
+            int[] out = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                out[i] = heap[0];
+                heap[0] = heap[i];
+                siftDown(heap, i);
+            }
+            return out;
+        }
+
+        private boolean better(int a, int b) {
+            if (scores[a] != scores[b]) return scores[a] > scores[b];
+            return docs[a] < docs[b];
+        }
+
+        private void siftUp(int[] heap, int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(heap[parent], heap[i])) break;
+                int t = heap[parent];
+                heap[parent] = heap[i];
+                heap[i] = t;
+                i = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int n) {
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= n) break;
+                int worst = l;
+                if (l + 1 < n && better(heap[l], heap[l + 1])) worst = l + 1;
+                if (!better(heap[i], heap[worst])) break;
+                int t = heap[worst];
+                heap[worst] = heap[i];
+                heap[i] = t;
+                i = worst;
+            }
+        }
+    }
+
+    /** Immutable, varint-compressed posting list of (doc delta, frequency) pairs. */
+    private static final class Postings {
+        final byte[] data;
+        final int docFreq;
+
+        Postings(byte[] data, int docFreq) {
+            this.data = data;
+            this.docFreq = docFreq;
+        }
+    }
+
+    private static final class PostingsReader {
+        private final byte[] data;
+        private int pos;
+        int doc = -1;
+        int freq;
+
+        PostingsReader(Postings p) {
+            this.data = p.data;
+        }
+
+        boolean next() {
+            if (pos >= data.length) return false;
+            doc += readVarInt() + (doc < 0 ? 1 : 0);
+            freq = readVarInt();
+            return true;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    private static final class PostingsBuilder {
+        private byte[] buf = new byte[8];
+        private int len;
+        private int lastDoc = -1;
+        private int docFreq;
+
+        void add(int doc, int freq) {
+            // The first entry stores the absolute ordinal; the reader starts from -1 and compensates
+            writeVarInt(lastDoc < 0 ? doc : doc - lastDoc);
+            writeVarInt(freq);
+            lastDoc = doc;
+            docFreq++;
+        }
+
+        private void writeVarInt(int v) {
+            if (len + 5 > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + 5));
+            while ((v & ~0x7F) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        Postings build() {
+            return new Postings(Arrays.copyOf(buf, len), docFreq);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.merbancapital.backend.search;
+
+/**
+ * The documents a query matched in one catalog snapshot, independent of ordering and paging.
+ *
+ * {@code hits} are ascending ordinals, or null when the query did not filter at all; {@code ranked} carries
+ * the BM25 scores when the query had a full-text part. Instances are immutable and shared between requests;
+ * facet counts are derived on first request and kept with the cached match set.
+ */
+public final class MatchSet {
+
+    private final int[] hits;
+    private final FullTextIndex.Result ranked;
+    private volatile FacetCounts facets;
+
+    public MatchSet(int[] hits, FullTextIndex.Result ranked) {
+        this.hits = hits;
+        this.ranked = ranked;
+    }
+
+    /** Ascending matched ordinals, or null when every document matches. Do not modify. */
+    public int[] hits() {
+        return hits;
+    }
+
+    /** Scored matches when the query had a full-text part, otherwise null. */
+    public FullTextIndex.Result ranked() {
+        return ranked;
+    }
+
+    /** Facet counts over the matches; computed once, concurrent first callers compute identical results. */
+    public FacetCounts facets(CatalogColumns columns, SearchExecutor executor) {
+        FacetCounts f = facets;
+        if (f == null) facets = f = FacetCounts.of(columns, hits, executor);
+        return f;
+    }
+
+    public int total(int catalogSize) {
+        return hits == null ? catalogSize : hits.length;
+    }
+
+    /** Approximate retained size in ints, used to bound the result cache. */
+    public long weight() {
+        return (hits == null ? 0 : hits.length) + (ranked == null ? 0 : 2L * ranked.size()) + 8;
+    }
+}
@@ -0,0 +1,136 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.dto.SearchFilters;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Opaque continuation token for keyset paging through search results.
+ *
+ * It records the catalog generation the results came from, the ordering in use and where the previous page
+ * ended in that ordering, so the next page resumes from that point against the same snapshot instead of
+ * re-walking every earlier result. A fingerprint of the filters guards against reusing a token with a
+ * different query.
+ */
+public final class SearchCursor {
+
+    /** Ordering: catalog (ordinal) order. Sort keys use their {@link SortOrder.Key} ordinal. */
+    public static final int MODE_CATALOG = -1;
+    /** Ordering: full-text relevance (score desc, ordinal asc). */
+    public static final int MODE_RELEVANCE = -2;
+
+    private static final byte VERSION = 1;
+    private static final int LENGTH = 1 + 8 + 1 + 1 + 8 + 4 + 4;
+
+    private final long generation;
+    private final int mode;
+    private final boolean desc;
+    // Catalog: last ordinal. Sort key: last position in the permutation. Relevance: score bits << 32 | ordinal.
+    private final long position;
+    private final int returned;
+    private final int fingerprint;
+
+    public SearchCursor(long generation, int mode, boolean desc, long position, int returned, int fingerprint) {
+        this.generation = generation;
+        this.mode = mode;
+        this.desc = desc;
+        this.position = position;
+        this.returned = returned;
+        this.fingerprint = fingerprint;
+    }
+
+    /** Relevance position for a (score, ordinal) pair. */
+    public static long relevancePosition(float score, int ordinal) {
+        return ((long) Float.floatToIntBits(score) << 32) | (ordinal & 0xFFFFFFFFL);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public int mode() {
+        return mode;
+    }
+
+    public boolean desc() {
+        return desc;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public float lastScore() {
+        return Float.intBitsToFloat((int) (position >>> 32));
+    }
+
+    /** Last ordinal handed out (catalog and relevance orderings). */
+    public int lastOrdinal() {
+        return (int) position;
+    }
+
+    /** Number of results already handed out before the page this cursor points at. */
+    public int returned() {
+        return returned;
+    }
+
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    public String encode() {
+        ByteBuffer buf = ByteBuffer.allocate(LENGTH);
+        buf.put(VERSION).putLong(generation).put((byte) mode).put((byte) (desc ? 1 : 0))
+                .putLong(position).putInt(returned).putInt(fingerprint);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token is malformed or from an unknown version
+     */
+    public static SearchCursor decode(String token) {
+        try {
+            byte[] raw = Base64.getUrlDecoder().decode(token.trim());
+            if (raw.length != LENGTH || raw[0] != VERSION) throw new IllegalArgumentException("Invalid search cursor");
+            ByteBuffer buf = ByteBuffer.wrap(raw, 1, LENGTH - 1);
+            return new SearchCursor(buf.getLong(), buf.get(), buf.get() != 0, buf.getLong(), buf.getInt(), buf.getInt());
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new IllegalArgumentException("Invalid search cursor", e);
+        }
+    }
+
+    /**
+     * Check the decoded fields against the snapshot the cursor resumes on. The token is not signed, so every
+     * position it carries is treated as untrusted input.
+     *
+     * @param expectedMode the ordering the current filters select
+     * @param size         the pinned snapshot's ordinal count
+     * @throws IllegalArgumentException when the cursor points outside the snapshot or at another ordering
+     */
+    public void checkWithin(int expectedMode, int size) {
+        if (mode != expectedMode || returned < 0) throw new IllegalArgumentException("Invalid search cursor");
+        long max = size;
+        boolean valid;
+        if (mode == MODE_RELEVANCE) {
+            valid = lastOrdinal() >= 0 && lastOrdinal() < max && !Float.isNaN(lastScore());
+        } else {
+            // Catalog: last ordinal; sort key: last position in the permutation, also < size
+            valid = position >= 0 && position < max;
+        }
+        if (!valid) throw new IllegalArgumentException("Invalid search cursor");
+    }
+
+    /**
+     * Hash of every filter that affects the match set or its order, and of the caller's scope; paging fields
+     * are excluded.
+     */
+    public static int fingerprint(SearchFilters f, SearchScope scope) {
+        return Objects.hash(scope, f.getClientName(), f.getClientNameFuzzy(), f.getClientNameMaxEdits(), f.getAccountNumber(), f.getDepartment(), f.getFundDateStart(),
+                f.getFundDateEnd(), f.getFileExtensions(), f.getDateModifiedStart(), f.getDateModifiedEnd(),
+                f.getFileSizeMin(), f.getFileSizeMax(), f.getOcrConfidenceMin(), f.getIndexStatus(),
+                f.getFullTextSearch(), f.getSortBy(), f.getSortOrder());
+    }
+}
@@ -0,0 +1,102 @@
+package com.merbancapital.backend.search;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs per-segment search work in parallel on a dedicated ForkJoinPool, separate from the request threads.
+ *
+ * Work over {@code n} items is cut into fixed-size segments (a multiple of 64, so segments of a bitset never
+ * share a word). The calling thread works through segments itself and at most
+ * {@code search.query.max-parallelism - 1} pool workers help it, so one large query cannot take every
+ * worker away from concurrent ones. Helpers that have not started when the caller runs out of segments are
+ * abandoned rather than waited for. Small inputs (a single segment) run inline.
+ */
+@Component
+public class SearchExecutor {
+
+    /** Work for items {@code [from, to)}; segments are independent and may run concurrently. */
+    @FunctionalInterface
+    public interface SegmentTask<R> {
+        R run(int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+    private final int segmentSize;
+    private final int maxPerQuery;
+
+    public SearchExecutor(@Value("${search.pool.parallelism:0}") int parallelism,
+                          @Value("${search.segment-size:65536}") int segmentSize,
+                          @Value("${search.query.max-parallelism:0}") int maxPerQuery) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("search-worker-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+        this.segmentSize = Math.max(64, segmentSize & ~63);
+        this.maxPerQuery = maxPerQuery > 0 ? maxPerQuery : Math.max(1, threads / 2);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    /** Results of {@code task} per segment of {@code [0, n)}, in segment order. */
+    public <R> List<R> map(int n, SegmentTask<R> task) {
+        int segments = (int) (((long) n + segmentSize - 1) / segmentSize);
+        if (segments <= 1 || maxPerQuery <= 1) {
+            List<R> out = new ArrayList<>(Math.max(1, segments));
+            for (int s = 0; s < segments; s++) out.add(task.run(s * segmentSize, Math.min(n, (s + 1) * segmentSize)));
+            return out;
+        }
+
+        Object[] results = new Object[segments];
+        AtomicInteger next = new AtomicInteger();
+        Runnable drain = () -> {
+            int s;
+            while ((s = next.getAndIncrement()) < segments) {
+                results[s] = task.run(s * segmentSize, Math.min(n, (s + 1) * segmentSize));
+            }
+        };
+
+        int helpers = Math.min(maxPerQuery, segments) - 1;
+        AtomicBoolean[] claimed = new AtomicBoolean[helpers];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[helpers];
+        for (int i = 0; i < helpers; i++) {
+            AtomicBoolean mine = claimed[i] = new AtomicBoolean();
+            tasks[i] = pool.submit(() -> {
+                if (mine.compareAndSet(false, true)) drain.run();
+            });
+        }
+        drain.run();
+        for (int i = 0; i < helpers; i++) {
+            // A helper that never started is skipped; one that did start is finishing a segment
+            if (!claimed[i].compareAndSet(false, true)) tasks[i].join();
+        }
+        @SuppressWarnings("unchecked")
+        List<R> out = (List<R>) Arrays.asList(results);
+        return out;
+    }
+
+    /** Runs {@code task} over every segment of {@code [0, n)} for its side effects. */
+    public void forEach(int n, SegmentTask<?> task) {
+        map(n, task);
+    }
+}
@@ -0,0 +1,56 @@
+package com.merbancapital.backend.search;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records {@link SearchProfile}s as timers with percentile histograms: {@code search.stage} tagged with the
+ * stage name, and {@code search.query} for the whole search tagged with whether the match set came from cache.
+ */
+@Component
+public class SearchMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> stages = new ConcurrentHashMap<>();
+    private final Timer hit;
+    private final Timer miss;
+
+    public SearchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.hit = query("hit");
+        this.miss = query("miss");
+    }
+
+    public void record(SearchProfile profile) {
+        for (SearchProfile.Stage s : profile.getStages()) {
+            stages.computeIfAbsent(s.getName(), this::stage).record(s.nanos(), TimeUnit.NANOSECONDS);
+        }
+        (profile.isCacheHit() ? hit : miss).record(profile.totalNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer stage(String name) {
+        return Timer.builder("search.stage")
+                .tag("stage", name)
+                .description("Time spent in one stage of a document search")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    private Timer query(String cache) {
+        return Timer.builder("search.query")
+                .tag("cache", cache)
+                .description("Document search time, filters through page assembly")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+}
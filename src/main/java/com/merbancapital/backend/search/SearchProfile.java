@@ -0,0 +1,117 @@
+package com.merbancapital.backend.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-stage record of one search: how long each stage took, how many candidates were left after it, which
+ * index or scan strategy it used and roughly how many bytes it allocated for its intermediate results.
+ *
+ * Every search is profiled (a handful of {@code System.nanoTime()} calls) so {@link SearchMetrics} can feed the
+ * stage timings into histograms; the profile itself is only returned to admins who ask for it. A stage lasts
+ * from the end of the previous one (or {@link #restart()}) until {@link #stage} is called. Not thread-safe.
+ */
+public final class SearchProfile {
+
+    /** One finished stage; getters are what the explain output shows. */
+    public static final class Stage {
+        private final String name;
+        private final String strategy;
+        private final long nanos;
+        private final long candidates;
+        private final long allocatedBytes;
+
+        Stage(String name, String strategy, long nanos, long candidates, long allocatedBytes) {
+            this.name = name;
+            this.strategy = strategy;
+            this.nanos = nanos;
+            this.candidates = candidates;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+
+        /** Documents still matching after this stage; -1 when the stage does not narrow the set. */
+        public long getCandidates() {
+            return candidates;
+        }
+
+        /** Estimate from the sizes of the arrays and bitsets the stage created, not a measurement. */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        long nanos() {
+            return nanos;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>(8);
+    private final long started;
+    private long mark;
+    private boolean cacheHit;
+
+    public SearchProfile() {
+        started = mark = System.nanoTime();
+    }
+
+    /** Close the stage running since the previous mark. */
+    public void stage(String name, String strategy, long candidates, long allocatedBytes) {
+        long now = System.nanoTime();
+        stages.add(new Stage(name, strategy, now - mark, candidates, allocatedBytes));
+        mark = now;
+    }
+
+    /** Start the next stage now, leaving the time since the previous mark unaccounted. */
+    public void restart() {
+        mark = System.nanoTime();
+    }
+
+    public void cacheHit(boolean hit) {
+        this.cacheHit = hit;
+    }
+
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /** Wall time from construction to the end of the last stage. */
+    public double getTotalMillis() {
+        return totalNanos() / 1e6;
+    }
+
+    public long getAllocatedBytes() {
+        long sum = 0;
+        for (Stage s : stages) sum += s.allocatedBytes;
+        return sum;
+    }
+
+    long totalNanos() {
+        return mark - started;
+    }
+
+    /** Estimated size of an int[] of {@code n} elements. */
+    public static long intArrayBytes(long n) {
+        return 16 + 4 * n;
+    }
+
+    /** Estimated size of a bitset over {@code n} ordinals. */
+    public static long bitsetBytes(int n) {
+        return 16 + 8L * Bits.words(n);
+    }
+}
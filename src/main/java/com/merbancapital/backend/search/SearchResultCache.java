@@ -0,0 +1,142 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.dto.SearchFilters;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of {@link MatchSet}s in front of document search.
+ *
+ * Keys are the canonicalised match-affecting filters only, so every page and every sort order of the same
+ * query share one entry. Entries belong to a catalog generation: the first lookup for a newer generation
+ * drops everything, and lookups for older (cursor-pinned) generations bypass the cache. The cache is bounded
+ * both by entry count and by total weight (roughly the number of ordinals held).
+ *
+ * Hit, miss and eviction counts are published as {@code search.cache.*} meters.
+ */
+@Component
+public class SearchResultCache implements MeterBinder {
+
+    @Value("${search.cache.max-entries:256}")
+    private int maxEntries;
+
+    @Value("${search.cache.max-weight:4000000}")
+    private long maxWeight;
+
+    private final LinkedHashMap<List<Object>, MatchSet> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long generation;
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Cached match set for the filters and scope in this generation, or null. */
+    public MatchSet get(long generation, SearchFilters f, SearchScope scope) {
+        List<Object> key = keyOf(f, scope);
+        synchronized (this) {
+            if (advanceTo(generation)) {
+                MatchSet m = entries.get(key);
+                if (m != null) {
+                    hits.incrementAndGet();
+                    return m;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(long generation, SearchFilters f, SearchScope scope, MatchSet matches) {
+        long w = matches.weight();
+        if (w > maxWeight) return;
+        List<Object> key = keyOf(f, scope);
+        synchronized (this) {
+            if (!advanceTo(generation)) return;
+            MatchSet previous = entries.put(key, matches);
+            if (previous != null) weight -= previous.weight();
+            weight += w;
+            Iterator<MatchSet> it = entries.values().iterator();
+            while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+                MatchSet eldest = it.next();
+                it.remove();
+                weight -= eldest.weight();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Move the cache to {@code gen}, dropping entries of older generations. Returns false when {@code gen} is
+     * older than the cache's generation and must not be served or stored.
+     */
+    private boolean advanceTo(long gen) {
+        if (gen == generation) return true;
+        if (gen < generation) return false;
+        generation = gen;
+        clear();
+        return true;
+    }
+
+    /**
+     * Canonical form of the filters that decide membership: case-folded name (and fuzzy edit budget), digits of the account number,
+     * case-folded department name, normalised extension set, mapped status and full-text tokens, plus the caller's visibility scope. Paging
+     * and sort fields are left out.
+     */
+    static List<Object> keyOf(SearchFilters f, SearchScope scope) {
+        String name = f.getClientName() == null || f.getClientName().isBlank() ? null : f.getClientName().toLowerCase();
+        Integer fuzzyEdits = name == null || !Boolean.TRUE.equals(f.getClientNameFuzzy()) ? null
+                : f.getClientNameMaxEdits() == null ? CatalogSnapshot.DEFAULT_MAX_EDITS : f.getClientNameMaxEdits();
+        String digits = f.getAccountNumber() == null ? "" : CatalogSnapshot.digitsOf(f.getAccountNumber());
+        String department = f.getDepartment() == null || f.getDepartment().isBlank() ? null
+                : f.getDepartment().trim().toLowerCase(Locale.ROOT);
+        TreeSet<String> extensions = null;
+        if (f.getFileExtensions() != null && !f.getFileExtensions().isEmpty()) {
+            extensions = new TreeSet<>();
+            for (String e : f.getFileExtensions()) {
+                String n = CatalogColumns.normaliseExtension(e);
+                extensions.add(n == null ? "" : n);
+            }
+        }
+        Object status = f.getIndexStatus() == null || f.getIndexStatus().isBlank() ? null
+                : String.valueOf(CatalogFilter.statusOf(f.getIndexStatus()));
+        List<String> text = f.getFullTextSearch() == null || f.getFullTextSearch().isBlank() ? null
+                : List.copyOf(new TreeSet<>(FullTextIndex.tokenize(f.getFullTextSearch())));
+        return Arrays.asList(scope, name, fuzzyEdits, digits.isEmpty() ? null : digits, department, extensions, status, text,
+                f.getFileSizeMin(), f.getFileSizeMax(), f.getDateModifiedStart(), f.getDateModifiedEnd(),
+                f.getFundDateStart(), f.getFundDateEnd(), f.getOcrConfidenceMin());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("search.cache.gets", hits, AtomicLong::get)
+                .tag("result", "hit").description("Search match-set cache hits").register(registry);
+        FunctionCounter.builder("search.cache.gets", misses, AtomicLong::get)
+                .tag("result", "miss").description("Search match-set cache misses").register(registry);
+        FunctionCounter.builder("search.cache.evictions", evictions, AtomicLong::get)
+                .description("Search match-set cache evictions").register(registry);
+        Gauge.builder("search.cache.size", this, SearchResultCache::size)
+                .description("Cached search match sets").register(registry);
+    }
+}
@@ -0,0 +1,66 @@
+package com.merbancapital.backend.search;
+
+import java.util.Objects;
+
+/**
+ * Which part of the catalog a caller may see. Admins search everything; other users only documents of their
+ * own department (plus, if configured, documents not assigned to any department). The scope is evaluated
+ * inside the engine as a bitset intersection, so totals, pages and facets already reflect it.
+ */
+public final class SearchScope {
+
+    private static final SearchScope ALL = new SearchScope(false, null, true);
+
+    private final boolean restricted;
+    private final Integer departmentId;
+    private final boolean includeUnassigned;
+
+    private SearchScope(boolean restricted, Integer departmentId, boolean includeUnassigned) {
+        this.restricted = restricted;
+        this.departmentId = departmentId;
+        this.includeUnassigned = includeUnassigned;
+    }
+
+    /** No restriction. */
+    public static SearchScope all() {
+        return ALL;
+    }
+
+    /**
+     * Documents of {@code departmentId} (null: the caller has no department and sees none of them), plus the
+     * unassigned ones when {@code includeUnassigned}.
+     */
+    public static SearchScope department(Integer departmentId, boolean includeUnassigned) {
+        return new SearchScope(true, departmentId, includeUnassigned);
+    }
+
+    public boolean restricted() {
+        return restricted;
+    }
+
+    public Integer departmentId() {
+        return departmentId;
+    }
+
+    public boolean includeUnassigned() {
+        return includeUnassigned;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SearchScope)) return false;
+        SearchScope s = (SearchScope) o;
+        return restricted == s.restricted && includeUnassigned == s.includeUnassigned && Objects.equals(departmentId, s.departmentId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(restricted, departmentId, includeUnassigned);
+    }
+
+    @Override
+    public String toString() {
+        return restricted ? "department=" + departmentId + (includeUnassigned ? "+unassigned" : "") : "all";
+    }
+}
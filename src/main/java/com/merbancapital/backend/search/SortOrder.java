@@ -0,0 +1,458 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Precomputed sort permutation of a catalog snapshot for one {@link Key}.
+ *
+ * Documents with a value come first, ordered by value and then by ordinal; documents without a value
+ * follow in ordinal order and stay last in both directions. Pages are produced either by walking the
+ * permutation or, when the match set is small relative to the catalog, by a bounded top-k heap over the
+ * matches' positions, whichever is cheaper. Both give the same order.
+ *
+ * Ordinals appended by an incremental change are sorted into a small run of their own ({@link #withTail}) and
+ * merged with the shared base permutation at query time, in the same order a full build would give.
+ */
+public final class SortOrder {
+
+    /** Sortable fields; the wire names accepted by {@link #parse} are the Document property names. */
+    public enum Key {
+        FILE_NAME, DATE_MODIFIED, FILE_SIZE, FUND_DATE, OCR_CONFIDENCE;
+
+        /**
+         * Parse a {@code sortBy} value (camelCase or snake_case, case-insensitive). Returns null when the
+         * value is absent or not a sortable field, meaning catalog/relevance order.
+         */
+        public static Key parse(String sortBy) {
+            if (sortBy == null || sortBy.isBlank()) return null;
+            switch (sortBy.replace("_", "").toLowerCase()) {
+                case "filename":
+                case "name":
+                    return FILE_NAME;
+                case "datemodified":
+                case "modified":
+                    return DATE_MODIFIED;
+                case "filesize":
+                case "size":
+                    return FILE_SIZE;
+                case "funddate":
+                    return FUND_DATE;
+                case "ocrconfidence":
+                case "confidence":
+                    return OCR_CONFIDENCE;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final int[] order;   // ordinals in ascending position order
+    private final int[] rank;    // rank[ordinal] = ascending position
+    private final int present;   // positions [0, present) have a value
+    // Ordinals from order.length on, sorted on their own (those with a value first, as above); null when none
+    private final int[] tailOrder;
+    private final int[] tailRank;    // tailRank[ordinal - order.length] = index in tailOrder
+    private final int tailPresent;
+    // How many entries of order precede tailOrder[j] in the merged order; non-decreasing
+    private final int[] baseBefore;
+
+    private SortOrder(int[] order, int present) {
+        this(order, ranks(order, 0), present, null, 0, null);
+    }
+
+    private SortOrder(int[] order, int[] rank, int present, int[] tailOrder, int tailPresent, int[] baseBefore) {
+        this.order = order;
+        this.rank = rank;
+        this.present = present;
+        this.tailOrder = tailOrder;
+        this.tailRank = tailOrder == null ? null : ranks(tailOrder, order.length);
+        this.tailPresent = tailPresent;
+        this.baseBefore = baseBefore;
+    }
+
+    /** @param names file names by ordinal; only needed (and only read) for {@link Key#FILE_NAME} */
+    static SortOrder build(Key key, String[] names, CatalogColumns columns) {
+        IntFunction<String> lookup = i -> names[i];
+        int n = columns.size();
+        int[] order = new int[n];
+        int present = partition(key, 0, n, lookup, columns, order);
+        mergeSort(order, 0, present, comparator(key, lookup, columns));
+        return new SortOrder(order, present);
+    }
+
+    /**
+     * The base of this permutation with the ordinals appended to the catalog since it was built, which are the
+     * ones from the base's size up to {@code columns.size()}, as a separate run. Only those are sorted, and each
+     * is placed against the base by binary search, so the cost is {@code t log n} for a tail of {@code t};
+     * the base arrays are shared.
+     *
+     * @param names file names by ordinal; only read for {@link Key#FILE_NAME}
+     */
+    SortOrder withTail(Key key, IntFunction<String> names, CatalogColumns columns) {
+        int n = order.length;
+        int total = columns.size();
+        if (total == n) return tailOrder == null ? this : new SortOrder(order, rank, present, null, 0, null);
+        int[] run = new int[total - n];
+        int runPresent = partition(key, n, total, names, columns, run);
+        IntComparator cmp = comparator(key, names, columns);
+        mergeSort(run, 0, runPresent, cmp);
+
+        int[] before = new int[run.length];
+        int lo = 0;
+        for (int j = 0; j < runPresent; j++) {
+            // Ties keep the existing (lower) ordinal first, as a full build would
+            int hi = present;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cmp.compare(order[mid], run[j]) <= 0) lo = mid + 1;
+                else hi = mid;
+            }
+            before[j] = lo;
+        }
+        // Without a value: after every base entry, in ordinal order
+        Arrays.fill(before, runPresent, run.length, n);
+        return new SortOrder(order, rank, present, run, runPresent, before);
+    }
+
+    /** Write this full-build permutation for {@link #readFrom}. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        if (tailOrder != null) throw new IllegalStateException("Only full-build sort orders are written");
+        out.writeInt(present);
+        out.writeInts(order);
+    }
+
+    /** The permutation of {@code size} ordinals written by {@link #writeTo}. */
+    static SortOrder readFrom(CatalogFile.Input in, int size) {
+        int present = in.readInt();
+        int[] order = in.readInts();
+        if (order.length != size || present < 0 || present > size) throw new IllegalStateException("Bad sort order");
+        long[] seen = new long[Bits.words(size)];
+        for (int o : order) {
+            if (o < 0 || o >= size || (seen[o >>> 6] & 1L << o) != 0) throw new IllegalStateException("Not a permutation");
+            seen[o >>> 6] |= 1L << o;
+        }
+        return new SortOrder(order, present);
+    }
+
+    /**
+     * Write ordinals {@code [from, to)} into {@code out}: those with a value first, then the rest, each in
+     * ordinal order. Returns how many have a value.
+     */
+    private static int partition(Key key, int from, int to, IntFunction<String> names, CatalogColumns columns, int[] out) {
+        int present = 0;
+        int missing = to - from;
+        // Documents with a value to the front, the rest to the back (reversed, fixed below)
+        for (int i = from; i < to; i++) {
+            if (hasValue(key, i, names, columns)) out[present++] = i;
+            else out[--missing] = i;
+        }
+        reverse(out, present, to - from);
+        return present;
+    }
+
+    private static IntComparator comparator(Key key, IntFunction<String> names, CatalogColumns columns) {
+        switch (key) {
+            case FILE_NAME:
+                return (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(names.apply(a), names.apply(b));
+            case DATE_MODIFIED:
+                return (a, b) -> Long.compare(columns.dateModified(a), columns.dateModified(b));
+            case FILE_SIZE:
+                return (a, b) -> Long.compare(columns.fileSize(a), columns.fileSize(b));
+            case FUND_DATE:
+                return (a, b) -> Long.compare(columns.fundDate(a), columns.fundDate(b));
+            default:
+                return (a, b) -> Integer.compare(columns.ocrConfidence(a), columns.ocrConfidence(b));
+        }
+    }
+
+    public int size() {
+        return tailOrder == null ? order.length : order.length + tailOrder.length;
+    }
+
+    /** Ordinal at {@code position} in the requested direction. */
+    public int ordinalAt(int position, boolean desc) {
+        int all = present + tailPresent;
+        return ascending(desc && position < all ? all - 1 - position : position);
+    }
+
+    /** Position of {@code ordinal} in the requested direction. */
+    public int positionOf(int ordinal, boolean desc) {
+        int all = present + tailPresent;
+        int r = rankOf(ordinal);
+        return desc && r < all ? all - 1 - r : r;
+    }
+
+    /** Ordinal at ascending position {@code p} of the merged order. */
+    private int ascending(int p) {
+        if (tailOrder == null) return order[p];
+        int j = tailBefore(p);
+        return j < tailOrder.length && baseBefore[j] + j == p ? tailOrder[j] : order[p - j];
+    }
+
+    /** Number of tail entries at ascending positions below {@code p}. */
+    private int tailBefore(int p) {
+        if (tailOrder == null) return 0;
+        // tailOrder[j] sits at baseBefore[j] + j, which increases with j: find the first at or after p
+        int lo = 0;
+        int hi = tailOrder.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (baseBefore[mid] + mid < p) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Ascending position of {@code ordinal} in the merged order. */
+    private int rankOf(int ordinal) {
+        if (tailOrder == null) return rank[ordinal];
+        if (ordinal >= order.length) {
+            int j = tailRank[ordinal - order.length];
+            return baseBefore[j] + j;
+        }
+        int r = rank[ordinal];
+        // Tail entries ahead of it are those placed after at most r base entries
+        int lo = 0;
+        int hi = tailOrder.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (baseBefore[mid] <= r) lo = mid + 1;
+            else hi = mid;
+        }
+        return r + lo;
+    }
+
+    /**
+     * Ordinals at positions {@code [from, to)} of the matches in the requested direction.
+     *
+     * @param matches ascending matched ordinals, or null when every document matches
+     */
+    public int[] page(int[] matches, boolean desc, int from, int to) {
+        return page(matches, desc, from, to, null);
+    }
+
+    /**
+     * {@link #page(int[], boolean, int, int)} where the bounded heap, if chosen, runs per segment of the matches
+     * on {@code executor} (may be null) and the per-segment smallest positions are merged.
+     */
+    public int[] page(int[] matches, boolean desc, int from, int to, SearchExecutor executor) {
+        int total = matches == null ? size() : matches.length;
+        to = Math.min(to, total);
+        if (from >= to) return new int[0];
+        int[] out = new int[to - from];
+        if (matches == null) {
+            Walk walk = new Walk(from, desc);
+            for (int p = from; p < to; p++) out[p - from] = walk.next();
+            return out;
+        }
+
+        if (walks(total, to)) {
+            long[] bits = Bits.of(matches, size());
+            Walk walk = new Walk(0, desc);
+            int seen = 0;
+            for (int p = 0, n = size(); p < n && seen < to; p++) {
+                int o = walk.next();
+                if (!Bits.get(bits, o)) continue;
+                if (seen >= from) out[seen - from] = o;
+                seen++;
+            }
+            return out;
+        }
+
+        int limit = to;
+        int[] top;
+        if (executor == null || total <= executor.segmentSize()) {
+            top = smallestPositions(matches, desc, 0, total, limit);
+        } else {
+            List<int[]> parts = executor.map(total, (lo, hi) -> smallestPositions(matches, desc, lo, hi, limit));
+            int n = 0;
+            for (int[] p : parts) n += p.length;
+            top = new int[n];
+            n = 0;
+            for (int[] p : parts) {
+                System.arraycopy(p, 0, top, n, p.length);
+                n += p.length;
+            }
+            Arrays.sort(top);
+        }
+        for (int j = from; j < to; j++) out[j - from] = ordinalAt(top[j], desc);
+        return out;
+    }
+
+    /**
+     * Whether {@link #page} answers a page ending at {@code to} out of {@code matched} matches by walking the
+     * permutation (true) or by a bounded heap over the matches' positions (false).
+     */
+    public boolean walks(int matched, int to) {
+        int n = size();
+        if (matched >= n) return true;
+        // Walking visits ~to * n / m positions; the heap costs ~m * log2(to)
+        long walkCost = (long) to * n / Math.max(1, matched);
+        long heapCost = (long) matched * (32 - Integer.numberOfLeadingZeros(to));
+        return walkCost <= heapCost;
+    }
+
+    /**
+     * Up to {@code size} matched ordinals at positions strictly after {@code afterPosition} in the requested
+     * direction. Cost is proportional to the positions walked, not to how deep the page is.
+     *
+     * @param matches ascending matched ordinals, or null when every document matches
+     */
+    public int[] pageAfter(int[] matches, boolean desc, int afterPosition, int size) {
+        int[] out = new int[size];
+        int n = 0;
+        long[] bits = matches == null ? null : Bits.of(matches, size());
+        Walk walk = new Walk(afterPosition + 1, desc);
+        for (int p = afterPosition + 1, total = size(); p < total && n < size; p++) {
+            int o = walk.next();
+            if (bits == null || Bits.get(bits, o)) out[n++] = o;
+        }
+        return n == size ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Calls {@code action} with every matched ordinal in the requested direction, walking the permutation once.
+     *
+     * @param matches ascending matched ordinals, or null when every document matches
+     */
+    public void forEach(int[] matches, boolean desc, IntConsumer action) {
+        long[] bits = matches == null ? null : Bits.of(matches, size());
+        Walk walk = new Walk(0, desc);
+        for (int p = 0, n = size(); p < n; p++) {
+            int o = walk.next();
+            if (bits == null || Bits.get(bits, o)) action.accept(o);
+        }
+    }
+
+    /**
+     * The ordinals at successive positions in one direction, from a start position. Base and tail are merged in
+     * step, so walking costs one search to start rather than one per position.
+     */
+    private final class Walk {
+        private final int all = present + tailPresent;
+        // Walking the positions with a value in reverse, before those without one
+        private boolean down;
+        // Next ascending position, and the tail entries below it (walking up) or up to it (walking down)
+        private int a;
+        private int j;
+
+        Walk(int from, boolean desc) {
+            down = desc && from < all;
+            a = down ? all - 1 - from : from;
+            j = tailBefore(down ? a + 1 : a);
+        }
+
+        /** Ordinal at the next position; the caller stops at {@link #size()}. */
+        int next() {
+            int o;
+            if (down) {
+                o = j > 0 && baseBefore[j - 1] + j - 1 == a ? tailOrder[--j] : order[a - j];
+                if (--a < 0) {
+                    down = false;
+                    a = all;
+                    j = tailBefore(all);
+                }
+            } else {
+                o = tailOrder != null && j < tailOrder.length && baseBefore[j] + j == a ? tailOrder[j++] : order[a - j];
+                a++;
+            }
+            return o;
+        }
+    }
+
+    /** The k smallest positions among {@code matches[lo, hi)}, ascending, via a bounded max-heap. */
+    private int[] smallestPositions(int[] matches, boolean desc, int lo, int hi, int k) {
+        int[] heap = new int[Math.min(k, hi - lo)];
+        k = heap.length;
+        int n = 0;
+        for (int m = lo; m < hi; m++) {
+            int p = positionOf(matches[m], desc);
+            if (n < k) {
+                heap[n] = p;
+                int i = n++;
+                while (i > 0 && heap[(i - 1) >>> 1] < heap[i]) {
+                    int parent = (i - 1) >>> 1;
+                    int t = heap[parent];
+                    heap[parent] = heap[i];
+                    heap[i] = t;
+                    i = parent;
+                }
+            } else if (p < heap[0]) {
+                heap[0] = p;
+                int i = 0;
+                while (true) {
+                    int l = 2 * i + 1;
+                    if (l >= n) break;
+                    int big = l + 1 < n && heap[l + 1] > heap[l] ? l + 1 : l;
+                    if (heap[i] >= heap[big]) break;
+                    int t = heap[big];
+                    heap[big] = heap[i];
+                    heap[i] = t;
+                    i = big;
+                }
+            }
+        }
+        int[] out = Arrays.copyOf(heap, n);
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static boolean hasValue(Key key, int i, IntFunction<String> names, CatalogColumns columns) {
+        switch (key) {
+            case FILE_NAME:
+                return names.apply(i) != null;
+            case DATE_MODIFIED:
+                return columns.dateModified(i) != CatalogColumns.NO_VALUE;
+            case FILE_SIZE:
+                return columns.fileSize(i) != CatalogColumns.NO_VALUE;
+            case FUND_DATE:
+                return columns.fundDate(i) != CatalogColumns.NO_VALUE;
+            default:
+                return columns.ocrConfidence(i) >= 0;
+        }
+    }
+
+    /** rank[order[p] - offset] = p. */
+    private static int[] ranks(int[] order, int offset) {
+        int[] rank = new int[order.length];
+        for (int p = 0; p < order.length; p++) rank[order[p] - offset] = p;
+        return rank;
+    }
+
+    private static void reverse(int[] a, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    @FunctionalInterface
+    interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    /**
+     * Stable merge sort of {@code a[from, to)} with a primitive comparator; ties keep their input order,
+     * which is ascending ordinal here.
+     */
+    private static void mergeSort(int[] a, int from, int to, IntComparator cmp) {
+        int[] tmp = new int[to - from];
+        for (int width = 1; width < to - from; width <<= 1) {
+            for (int lo = from; lo < to - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(mid + width, to);
+                if (cmp.compare(a[mid - 1], a[mid]) <= 0) continue; // already ordered
+                int i = lo, j = mid, k = 0;
+                while (i < mid && j < hi) tmp[k++] = cmp.compare(a[j], a[i]) < 0 ? a[j++] : a[i++];
+                while (i < mid) tmp[k++] = a[i++];
+                while (j < hi) tmp[k++] = a[j++];
+                System.arraycopy(tmp, 0, a, lo, k);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One nullable string per ordinal, either as a plain {@code String[]} or, for off-heap {@link CatalogStorage},
+ * as UTF-8 bytes in an arena of off-heap chunks addressed by a fixed-width column of 8-byte references.
+ * Off-heap values are decoded on every {@link #get}; nothing is cached on the heap.
+ *
+ * {@link #copyOf} makes a longer column for an incrementally extended snapshot. Off-heap copies share the
+ * arena, which is only ever appended to, so values written for the copy never disturb the original.
+ *
+ * A column read back from a {@link CatalogFile} with mapped storage uses the file's value block itself as
+ * its first arena chunk: the block has the arena's layout, so only the references are computed.
+ */
+abstract class StringColumn {
+
+    static StringColumn create(int n, CatalogStorage storage) {
+        return storage.onHeap() ? new OnHeap(n) : new Arena(n, storage);
+    }
+
+    abstract void set(int i, String value);
+
+    abstract String get(int i);
+
+    abstract int size();
+
+    /** A column of {@code n} values, the first ones copied from this column and the rest null. */
+    abstract StringColumn copyOf(int n);
+
+    /** Write the values for {@link #readFrom}: a count, then each value as {@link CatalogFile.Output#writeString}. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        int n = size();
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) out.writeString(get(i));
+    }
+
+    /** A column of the {@code n} values written by {@link #writeTo}, in {@code storage}. */
+    static StringColumn readFrom(CatalogFile.Input in, int n, CatalogStorage storage) {
+        in.readLength(n);
+        if (storage.kind() == CatalogStorage.Kind.MAPPED) return Arena.wrap(in, n, storage);
+        StringColumn column = create(n, storage);
+        for (int i = 0; i < n; i++) column.set(i, in.readString());
+        return column;
+    }
+
+    /** Heap bytes retained, strings included. */
+    abstract long heapBytes();
+
+    /** Off-heap bytes reserved, references and arena chunks. */
+    abstract long offHeapBytes();
+
+    private static final class OnHeap extends StringColumn {
+        private final String[] values;
+
+        OnHeap(int n) {
+            values = new String[n];
+        }
+
+        private OnHeap(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        void set(int i, String value) {
+            values[i] = value;
+        }
+
+        @Override
+        String get(int i) {
+            return values[i];
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        StringColumn copyOf(int n) {
+            return new OnHeap(Arrays.copyOf(values, n));
+        }
+
+        @Override
+        long heapBytes() {
+            long bytes = 16 + 4L * values.length;
+            for (String s : values) bytes += CatalogRecords.stringBytes(s);
+            return bytes;
+        }
+
+        @Override
+        long offHeapBytes() {
+            return 0;
+        }
+    }
+
+    /** Reference = chunk index << 32 | offset of a length-prefixed UTF-8 value; -1 = null. */
+    private static final class Arena extends StringColumn {
+        private final CatalogStorage storage;
+        private final LongBuffer refs;
+        private final Chunks chunks;
+
+        Arena(int n, CatalogStorage storage) {
+            this(storage, storage.longs(n), new Chunks());
+            for (int i = 0; i < n; i++) refs.put(i, -1L);
+        }
+
+        private Arena(CatalogStorage storage, LongBuffer refs, Chunks chunks) {
+            this.storage = storage;
+            this.refs = refs;
+            this.chunks = chunks;
+        }
+
+        /** The next {@code n} values of {@code in}, left where they are as the first, read-only chunk. */
+        static Arena wrap(CatalogFile.Input in, int n, CatalogStorage storage) {
+            ByteBuffer block = in.view();
+            LongBuffer refs = storage.longs(n);
+            int offset = 0;
+            for (int i = 0; i < n; i++) {
+                int len = block.getInt(offset);
+                if (len < -1 || len > block.capacity() - offset - Integer.BYTES) {
+                    throw new IllegalStateException("Bad string length " + len);
+                }
+                refs.put(i, len < 0 ? -1L : offset);
+                offset += Integer.BYTES + Math.max(0, len);
+            }
+            in.skip(offset);
+            Chunks chunks = new Chunks();
+            chunks.add(block.slice(0, offset));
+            return new Arena(storage, refs, chunks);
+        }
+
+        @Override
+        void set(int i, String value) {
+            refs.put(i, value == null ? -1L : chunks.append(value.getBytes(StandardCharsets.UTF_8), storage));
+        }
+
+        @Override
+        String get(int i) {
+            long ref = refs.get(i);
+            if (ref < 0) return null;
+            ByteBuffer chunk = chunks.get((int) (ref >>> 32));
+            int offset = (int) ref;
+            int len = chunk.getInt(offset);
+            byte[] b = new byte[len];
+            chunk.get(offset + Integer.BYTES, b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        int size() {
+            return refs.capacity();
+        }
+
+        @Override
+        StringColumn copyOf(int n) {
+            int size = refs.capacity();
+            LongBuffer copy = storage.longs(n);
+            copy.put(0, refs, 0, size);
+            for (int i = size; i < n; i++) copy.put(i, -1L);
+            return new Arena(storage, copy, chunks);
+        }
+
+        @Override
+        long heapBytes() {
+            // buffer objects only: the refs view and one per chunk
+            return 64L * (1 + chunks.count());
+        }
+
+        @Override
+        long offHeapBytes() {
+            return 8L * refs.capacity() + chunks.reserved();
+        }
+    }
+
+    /**
+     * Append-only off-heap chunks shared by a column and its copies. Bytes are never overwritten, so readers
+     * of any copy need no locking; appends are serialised here.
+     */
+    private static final class Chunks {
+        private static final int CHUNK = 4 << 20;
+
+        private final List<ByteBuffer> chunks = new CopyOnWriteArrayList<>();
+        private ByteBuffer tail;
+        private long reserved;
+
+        synchronized long append(byte[] b, CatalogStorage storage) {
+            int need = Integer.BYTES + b.length;
+            if (tail == null || tail.remaining() < need) {
+                // Values larger than a chunk get a chunk of their own
+                tail = storage.allocate(Math.max(CHUNK, need));
+                chunks.add(tail);
+                reserved += tail.capacity();
+            }
+            int offset = tail.position();
+            tail.putInt(b.length).put(b);
+            return ((long) (chunks.size() - 1) << 32) | offset;
+        }
+
+        /** A filled chunk, such as a mapped value block; appends still go to chunks of their own. */
+        synchronized void add(ByteBuffer chunk) {
+            chunks.add(chunk);
+            reserved += chunk.capacity();
+        }
+
+        ByteBuffer get(int chunk) {
+            return chunks.get(chunk);
+        }
+
+        int count() {
+            return chunks.size();
+        }
+
+        synchronized long reserved() {
+            return reserved;
+        }
+    }
+}
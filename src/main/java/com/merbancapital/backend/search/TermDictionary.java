@@ -0,0 +1,201 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorted dictionary of the tokens that occur in file names, each with the ascending ordinals containing it,
+ * used for typo-tolerant name matching.
+ *
+ * A fuzzy lookup runs a Levenshtein automaton for the query token over the sorted terms. The automaton state
+ * is the edit-distance row, so consecutive terms share the rows of their common prefix. As soon as every cell
+ * of a row exceeds the edit budget, the whole block of terms with that prefix is skipped by binary search. The
+ * work grows with the automaton states actually reachable, not with the size of the dictionary. Adjacent
+ * transpositions count as one edit ("mensha" is one edit from "mensah"), as OCR swaps letters as often as it
+ * drops them.
+ */
+final class TermDictionary {
+
+    private final String[] terms;
+    private final int[][] postings;
+    private final int maxTermLength;
+
+    private TermDictionary(String[] terms, int[][] postings) {
+        this.terms = terms;
+        this.postings = postings;
+        int max = 0;
+        for (String t : terms) max = Math.max(max, t.length());
+        this.maxTermLength = max;
+    }
+
+    /** @param lowerNames lower-cased file names by ordinal, nulls skipped */
+    static TermDictionary build(String[] lowerNames) {
+        Map<String, int[]> lists = new HashMap<>();
+        Map<String, Integer> sizes = new HashMap<>();
+        for (int doc = 0; doc < lowerNames.length; doc++) {
+            if (lowerNames[doc] == null) continue;
+            for (String token : FullTextIndex.tokenize(lowerNames[doc])) {
+                int[] list = lists.get(token);
+                int size = sizes.getOrDefault(token, 0);
+                if (list == null) list = new int[2];
+                if (size > 0 && list[size - 1] == doc) continue; // token repeated in the same name
+                if (size == list.length) list = Arrays.copyOf(list, size * 2);
+                list[size] = doc;
+                lists.put(token, list);
+                sizes.put(token, size + 1);
+            }
+        }
+        String[] terms = lists.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) postings[i] = Arrays.copyOf(lists.get(terms[i]), sizes.get(terms[i]));
+        return new TermDictionary(terms, postings);
+    }
+
+    /** Write the terms, then their postings packed into one array, for {@link #readFrom}. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        int[] starts = new int[terms.length + 1];
+        for (int t = 0; t < terms.length; t++) starts[t + 1] = starts[t] + postings[t].length;
+        int[] packed = new int[starts[terms.length]];
+        for (int t = 0; t < terms.length; t++) System.arraycopy(postings[t], 0, packed, starts[t], postings[t].length);
+        out.writeStrings(terms);
+        out.writeInts(starts);
+        out.writeInts(packed);
+    }
+
+    /** The dictionary written by {@link #writeTo}, over {@code size} ordinals. */
+    static TermDictionary readFrom(CatalogFile.Input in, int size) {
+        String[] terms = in.readStrings();
+        int[] starts = in.readInts();
+        int[] packed = in.readInts();
+        if (starts.length != terms.length + 1 || starts[0] != 0 || starts[terms.length] != packed.length) {
+            throw new IllegalStateException("Bad term postings");
+        }
+        int[][] postings = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            if (terms[t] == null || starts[t + 1] < starts[t]) throw new IllegalStateException("Bad term postings");
+            postings[t] = Arrays.copyOfRange(packed, starts[t], starts[t + 1]);
+        }
+        for (int ordinal : packed) {
+            if (ordinal < 0 || ordinal >= size) throw new IllegalStateException("Bad term posting " + ordinal);
+        }
+        return new TermDictionary(terms, postings);
+    }
+
+    int size() {
+        return terms.length;
+    }
+
+    /**
+     * Ascending ordinals whose name has, for every token of {@code query}, some token within that token's edit
+     * budget: {@code maxEdits}, reduced to 0 for tokens of up to 2 chars and 1 for tokens of up to 5.
+     *
+     * @param catalogSize number of ordinals in the snapshot
+     */
+    int[] searchFuzzy(String query, int maxEdits, int catalogSize) {
+        List<String> tokens = FullTextIndex.tokenize(query);
+        if (tokens.isEmpty()) return new int[0];
+        long[] result = null;
+        for (String token : tokens) {
+            long[] bits = new long[Bits.words(catalogSize)];
+            int k = Math.min(maxEdits, token.length() <= 2 ? 0 : token.length() <= 5 ? 1 : 2);
+            boolean any = k == 0 ? exact(token, bits) : walk(token, k, bits);
+            if (!any) return new int[0];
+            if (result == null) {
+                result = bits;
+            } else {
+                boolean nonEmpty = false;
+                for (int w = 0; w < result.length; w++) nonEmpty |= (result[w] &= bits[w]) != 0;
+                if (!nonEmpty) return new int[0];
+            }
+        }
+        return Bits.toOrdinals(result);
+    }
+
+    private boolean exact(String token, long[] bits) {
+        int i = Arrays.binarySearch(terms, token);
+        if (i < 0) return false;
+        for (int doc : postings[i]) bits[doc >>> 6] |= 1L << doc;
+        return true;
+    }
+
+    /** Marks the postings of every term within {@code k} edits of {@code q}; true when any term matched. */
+    private boolean walk(String q, int k, long[] bits) {
+        int m = q.length();
+        int maxLen = Math.min(maxTermLength, m + k);
+        // rows[d] = automaton state after reading d chars of the current term
+        int[][] rows = new int[maxLen + 1][m + 1];
+        for (int j = 0; j <= m; j++) rows[0][j] = j;
+        boolean matched = false;
+        String prev = "";
+        int t = 0;
+        while (t < terms.length) {
+            String term = terms[t];
+            int shared = commonPrefix(prev, term);
+            int depth = shared;
+            int dead = -1;
+            int end = Math.min(term.length(), maxLen);
+            for (int d = shared + 1; d <= end; d++) {
+                if (!step(rows, d, q, term, k)) {
+                    dead = d;
+                    break;
+                }
+                depth = d;
+            }
+            prev = term.substring(0, depth);
+            if (dead >= 0 || term.length() > maxLen) {
+                // No term starting with term[0, dead) (or longer than the budget allows) can match: skip them all
+                int cut = dead >= 0 ? dead : maxLen + 1;
+                t = skipPrefix(term.substring(0, cut), t + 1);
+                continue;
+            }
+            if (rows[term.length()][m] <= k) {
+                matched = true;
+                for (int doc : postings[t]) bits[doc >>> 6] |= 1L << doc;
+            }
+            t++;
+        }
+        return matched;
+    }
+
+    /** Compute rows[d] for term char d-1; false when every cell exceeds {@code k} (the automaton is dead). */
+    private static boolean step(int[][] rows, int d, String q, String term, int k) {
+        int[] cur = rows[d];
+        int[] up = rows[d - 1];
+        int[] up2 = d >= 2 ? rows[d - 2] : null;
+        char c = term.charAt(d - 1);
+        cur[0] = d;
+        int min = d;
+        for (int j = 1; j < cur.length; j++) {
+            int cost = q.charAt(j - 1) == c ? 0 : 1;
+            int v = Math.min(Math.min(up[j] + 1, cur[j - 1] + 1), up[j - 1] + cost);
+            if (up2 != null && j >= 2 && q.charAt(j - 1) == term.charAt(d - 2) && q.charAt(j - 2) == c) {
+                v = Math.min(v, up2[j - 2] + 1); // adjacent transposition
+            }
+            cur[j] = v;
+            if (v < min) min = v;
+        }
+        return min <= k;
+    }
+
+    /** First index at or after {@code from} whose term does not start with {@code prefix}. */
+    private int skipPrefix(String prefix, int from) {
+        int lo = from, hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].startsWith(prefix) || terms[mid].compareTo(prefix) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+}
@@ -0,0 +1,247 @@
+package com.merbancapital.backend.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory trigram posting-list index over a fixed array of keys.
+ *
+ * Keys are expected to be normalised by the caller (e.g. lower-cased file names); a null key never matches.
+ * A substring query intersects the posting lists of its trigrams and then verifies each surviving
+ * candidate with {@link String#contains}, so results are identical to a linear contains() scan.
+ */
+public final class TrigramIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final IntFunction<String> keys;
+    private final int size;
+    private final Map<Long, int[]> postings;
+
+    private TrigramIndex(IntFunction<String> keys, int size, Map<Long, int[]> postings) {
+        this.keys = keys;
+        this.size = size;
+        this.postings = postings;
+    }
+
+    /**
+     * Build an index over the given keys. Ordinals returned by {@link #search} are positions in this array.
+     */
+    public static TrigramIndex build(String[] keys) {
+        return build(keys, i -> keys[i]);
+    }
+
+    /**
+     * Build an index over {@code keys} but keep only {@code lookup}, which must return the same key for each
+     * ordinal, for verifying candidates later; lets the caller drop the array after building.
+     */
+    public static TrigramIndex build(String[] keys, IntFunction<String> lookup) {
+        Map<Long, PostingBuilder> builders = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            String k = keys[i];
+            if (k == null) continue;
+            for (int p = 0; p + 3 <= k.length(); p++) {
+                builders.computeIfAbsent(trigram(k, p), t -> new PostingBuilder()).add(i);
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(Math.max(16, (int) (builders.size() / 0.75f) + 1));
+        for (Map.Entry<Long, PostingBuilder> e : builders.entrySet()) {
+            postings.put(e.getKey(), e.getValue().toArray());
+        }
+        return new TrigramIndex(lookup, keys.length, postings);
+    }
+
+    /** Write the posting lists for {@link #readFrom}: the trigrams, then their lists packed into one array. */
+    void writeTo(CatalogFile.Output out) throws IOException {
+        long[] trigrams = new long[postings.size()];
+        int[] starts = new int[trigrams.length + 1];
+        int t = 0;
+        for (Map.Entry<Long, int[]> e : postings.entrySet()) {
+            trigrams[t] = e.getKey();
+            starts[t + 1] = starts[t] + e.getValue().length;
+            t++;
+        }
+        int[] packed = new int[starts[trigrams.length]];
+        t = 0;
+        for (int[] list : postings.values()) {
+            System.arraycopy(list, 0, packed, starts[t++], list.length);
+        }
+        out.writeInt(size);
+        out.writeLongs(trigrams);
+        out.writeInts(starts);
+        out.writeInts(packed);
+    }
+
+    /** The index written by {@link #writeTo}, verifying candidates with {@code lookup}. */
+    static TrigramIndex readFrom(CatalogFile.Input in, IntFunction<String> lookup) {
+        int size = in.readInt();
+        long[] trigrams = in.readLongs();
+        int[] starts = in.readInts();
+        int[] packed = in.readInts();
+        if (starts.length != trigrams.length + 1 || starts[0] != 0 || starts[trigrams.length] != packed.length) {
+            throw new IllegalStateException("Bad trigram postings");
+        }
+        Map<Long, int[]> postings = new HashMap<>(Math.max(16, (int) (trigrams.length / 0.75f) + 1));
+        for (int t = 0; t < trigrams.length; t++) {
+            if (starts[t + 1] < starts[t]) throw new IllegalStateException("Bad trigram postings");
+            postings.put(trigrams[t], Arrays.copyOfRange(packed, starts[t], starts[t + 1]));
+        }
+        for (int ordinal : packed) {
+            if (ordinal < 0 || ordinal >= size) throw new IllegalStateException("Bad trigram posting " + ordinal);
+        }
+        return new TrigramIndex(lookup, size, postings);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Normalised key stored at the given ordinal (may be null). */
+    public String key(int ordinal) {
+        return keys.apply(ordinal);
+    }
+
+    /**
+     * Return the ascending ordinals of all keys containing {@code q}. The query must be normalised the
+     * same way as the keys.
+     */
+    public int[] search(String q) {
+        if (q.length() < 3) {
+            // Too short to produce a trigram: verify directly against the normalised keys.
+            return scan(q, null, size);
+        }
+
+        List<int[]> lists = new ArrayList<>();
+        long[] seen = new long[q.length() - 2];
+        int distinct = 0;
+        outer:
+        for (int p = 0; p + 3 <= q.length(); p++) {
+            long t = trigram(q, p);
+            for (int j = 0; j < distinct; j++) {
+                if (seen[j] == t) continue outer;
+            }
+            seen[distinct++] = t;
+            int[] list = postings.get(t);
+            if (list == null) return EMPTY;
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(l -> l.length));
+
+        int[] candidates = lists.get(0);
+        int count = candidates.length;
+        if (lists.size() > 1) {
+            candidates = Arrays.copyOf(candidates, count);
+            for (int j = 1; j < lists.size() && count > 0; j++) {
+                count = intersect(candidates, count, lists.get(j));
+            }
+        }
+        // Trigram containment is necessary but not sufficient (order/adjacency), so verify survivors.
+        return scan(q, candidates, count);
+    }
+
+    private int[] scan(String q, int[] candidates, int count) {
+        int[] out = new int[count];
+        int n = 0;
+        for (int j = 0; j < count; j++) {
+            int i = candidates == null ? j : candidates[j];
+            String k = keys.apply(i);
+            if (k != null && k.contains(q)) out[n++] = i;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Intersect two ascending ordinal arrays into a new array.
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        int[] out = Arrays.copyOf(a, a.length);
+        int n = intersect(out, out.length, b);
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Union of two ascending ordinal arrays, as a new ascending array without duplicates.
+     */
+    public static int[] union(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) out[n++] = a[i++];
+            else if (a[i] > b[j]) out[n++] = b[j++];
+            else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) out[n++] = a[i++];
+        while (j < b.length) out[n++] = b[j++];
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Intersect the first {@code aLen} entries of {@code a} with {@code b} in place. Both inputs are sorted
+     * ascending; returns the new length of {@code a}. Gallops through {@code b} when it is much larger.
+     */
+    static int intersect(int[] a, int aLen, int[] b) {
+        int n = 0;
+        int j = 0;
+        boolean gallop = b.length > aLen * 8;
+        for (int i = 0; i < aLen && j < b.length; i++) {
+            int v = a[i];
+            if (gallop) {
+                int step = 1;
+                int hi = j;
+                while (hi < b.length && b[hi] < v) {
+                    j = hi + 1;
+                    hi += step;
+                    step <<= 1;
+                }
+                int pos = Arrays.binarySearch(b, j, Math.min(hi + 1, b.length), v);
+                if (pos >= 0) {
+                    a[n++] = v;
+                    j = pos + 1;
+                } else {
+                    j = -pos - 1;
+                }
+            } else {
+                while (j < b.length && b[j] < v) j++;
+                if (j < b.length && b[j] == v) {
+                    a[n++] = v;
+                    j++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static long trigram(String s, int p) {
+        return ((long) s.charAt(p) << 32) | ((long) s.charAt(p + 1) << 16) | s.charAt(p + 2);
+    }
+
+    /** Growable, de-duplicating posting list used only while building. */
+    private static final class PostingBuilder {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return size == ids.length ? ids : Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.merbancapital.backend.service;
+
+import com.merbancapital.backend.model.Client;
+import com.merbancapital.backend.model.Department;
+import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.repository.ClientRepository;
+import com.merbancapital.backend.repository.DepartmentRepository;
+import com.merbancapital.backend.search.Facet;
+import com.merbancapital.backend.search.FacetCounts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facet counts for the whole catalog, kept current as the catalog refresh adds and removes entries.
+ *
+ * Updates happen on the refresh thread; each one republishes an immutable view plus the ready-made payloads
+ * of the /filters endpoints, so those endpoints only read a volatile field. Department and client ids are
+ * shown by name, looked up from the database when an id appears that has not been seen yet.
+ */
+@Service
+public class CatalogFacetService {
+
+    private final Logger log = LoggerFactory.getLogger(CatalogFacetService.class);
+    private final DepartmentRepository departmentRepository;
+    private final ClientRepository clientRepository;
+
+    private final FacetCounts counts = new FacetCounts(); // guarded by this
+    private volatile FacetCounts current = new FacetCounts().freeze();
+    private volatile Map<Integer, String> departmentNames = Map.of();
+    private volatile Map<Integer, String> clientNames = Map.of();
+    private volatile List<String> departments = List.of();
+    private volatile List<Map<String, Object>> extensions = List.of();
+    private volatile List<String> clients = List.of();
+
+    public CatalogFacetService(DepartmentRepository departmentRepository, ClientRepository clientRepository) {
+        this.departmentRepository = departmentRepository;
+        this.clientRepository = clientRepository;
+    }
+
+    /** Recount from scratch for a completely new catalog. */
+    public synchronized void reset(Collection<Document> documents) {
+        counts.clear();
+        for (Document d : documents) counts.add(d);
+        publish();
+    }
+
+    /** Recount from counts taken over the whole of a new catalog, such as its columns. */
+    public synchronized void reset(FacetCounts catalog) {
+        counts.clear();
+        counts.add(catalog);
+        publish();
+    }
+
+    /** Apply a catalog change: only the touched entries are counted. */
+    public synchronized void update(Collection<Document> added, Collection<Document> removed) {
+        for (Document d : removed) counts.remove(d);
+        for (Document d : added) counts.add(d);
+        publish();
+    }
+
+    public FacetCounts current() {
+        return current;
+    }
+
+    /** Department names present in the catalog, most documents first. */
+    public List<String> departments() {
+        return departments;
+    }
+
+    /**
+     * Ids of the departments called {@code name} (ignoring case and surrounding blanks), from the names loaded
+     * for the department facet; empty when no department in the catalog has that name.
+     */
+    public Set<Integer> departmentIds(String name) {
+        String wanted = name.trim();
+        Set<Integer> ids = new HashSet<>();
+        for (Map.Entry<Integer, String> e : departmentNames.entrySet()) {
+            if (e.getValue() != null && e.getValue().trim().equalsIgnoreCase(wanted)) ids.add(e.getKey());
+        }
+        return ids;
+    }
+
+    /** {@code {extension, count}} pairs, most documents first. */
+    public List<Map<String, Object>> extensions() {
+        return extensions;
+    }
+
+    /** Client names present in the catalog, most documents first. */
+    public List<String> clients() {
+        return clients;
+    }
+
+    /**
+     * Wire form of {@code facets}: facet name to (display value to count), with department and client ids
+     * replaced by their names where known.
+     */
+    public Map<String, Map<String, Long>> describe(FacetCounts facets) {
+        Map<String, Map<String, Long>> out = new LinkedHashMap<>();
+        for (Facet facet : Facet.values()) {
+            Map<Integer, String> names = facet == Facet.DEPARTMENT ? departmentNames : facet == Facet.CLIENT ? clientNames : null;
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> e : facets.get(facet).entrySet()) {
+                values.merge(names == null ? e.getKey() : displayName(names, e.getKey()), e.getValue(), Long::sum);
+            }
+            out.put(facet.wireName(), values);
+        }
+        return out;
+    }
+
+    private void publish() {
+        FacetCounts frozen = counts.freeze();
+        departmentNames = resolve(frozen.get(Facet.DEPARTMENT), departmentNames, true);
+        clientNames = resolve(frozen.get(Facet.CLIENT), clientNames, false);
+
+        List<Map<String, Object>> ext = new ArrayList<>();
+        for (Map.Entry<String, Long> e : frozen.get(Facet.EXTENSION).entrySet()) {
+            ext.add(Map.of("extension", e.getKey(), "count", e.getValue()));
+        }
+        departments = displayNames(frozen.get(Facet.DEPARTMENT), departmentNames);
+        clients = displayNames(frozen.get(Facet.CLIENT), clientNames);
+        extensions = List.copyOf(ext);
+        current = frozen;
+    }
+
+    /** Reload the id-to-name map when the counts mention an id it does not know. */
+    private Map<Integer, String> resolve(Map<String, Long> ids, Map<Integer, String> known, boolean department) {
+        boolean missing = false;
+        for (String id : ids.keySet()) {
+            if (!known.containsKey(Integer.valueOf(id))) {
+                missing = true;
+                break;
+            }
+        }
+        if (!missing) return known;
+        try {
+            Map<Integer, String> names = new HashMap<>();
+            if (department) {
+                for (Department d : departmentRepository.findAll()) names.put(d.getDepartmentId(), d.getName());
+            } else {
+                for (Client c : clientRepository.findAll()) names.put(c.getClientId(), c.getFullName());
+            }
+            return Map.copyOf(names);
+        } catch (RuntimeException e) {
+            log.warn("Could not load {} names: {}", department ? "department" : "client", e.getMessage());
+            return known;
+        }
+    }
+
+    private static List<String> displayNames(Map<String, Long> counts, Map<Integer, String> names) {
+        List<String> out = new ArrayList<>(counts.size());
+        for (String id : counts.keySet()) out.add(displayName(names, id));
+        return List.copyOf(out);
+    }
+
+    private static String displayName(Map<Integer, String> names, String id) {
+        String name = names.get(Integer.valueOf(id));
+        return name == null ? id : name;
+    }
+}
@@ -0,0 +1,52 @@
+package com.merbancapital.backend.service;
+
+import com.merbancapital.backend.search.CatalogSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Reports catalog warm-up progress as the "catalog" health component, which is part of the readiness group.
+ *
+ * Readiness is held (OUT_OF_SERVICE) until the first catalog snapshot is built. If that takes longer than
+ * {@code catalog.warmup.timeout-ms} the pod reports UP in degraded mode and serves whatever catalog it has,
+ * so a slow or unreachable OCR service cannot keep it out of rotation forever.
+ */
+@Component
+public class CatalogHealthIndicator implements HealthIndicator {
+
+    private final DocumentSearchService documentSearchService;
+
+    @Value("${catalog.warmup.timeout-ms:120000}")
+    private long timeoutMs;
+
+    public CatalogHealthIndicator(DocumentSearchService documentSearchService) {
+        this.documentSearchService = documentSearchService;
+    }
+
+    @Override
+    public Health health() {
+        CatalogSnapshot snapshot = documentSearchService.getCatalog();
+        Duration elapsed = documentSearchService.getWarmupElapsed();
+        Health.Builder builder;
+        if (documentSearchService.isCatalogLoaded()) {
+            builder = Health.up()
+                    .withDetail("entries", snapshot.size())
+                    .withDetail("generation", snapshot.generation())
+                    .withDetail("builtAt", snapshot.builtAt().toString());
+        } else {
+            builder = elapsed.toMillis() >= timeoutMs
+                    ? Health.up().withDetail("degraded", true)
+                    : Health.outOfService();
+            builder.withDetail("entriesLoaded", documentSearchService.getEntriesLoading());
+        }
+        builder.withDetail("source", documentSearchService.getCatalogSource())
+                .withDetail("elapsedMs", elapsed.toMillis());
+        String error = documentSearchService.getLastLoadError();
+        if (error != null) builder.withDetail("lastError", error);
+        return builder.build();
+    }
+}
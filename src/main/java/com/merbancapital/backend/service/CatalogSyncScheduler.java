@@ -0,0 +1,73 @@
+package com.merbancapital.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically runs the incremental catalog sync so new OCR output shows up without a restart.
+ *
+ * Each run is scheduled {@code period + random(0, jitter)} after the previous one finished, which keeps
+ * several backend instances from polling the OCR service in lock-step.
+ */
+@Component
+public class CatalogSyncScheduler {
+
+    private final Logger log = LoggerFactory.getLogger(CatalogSyncScheduler.class);
+    private final DocumentSearchService documentSearchService;
+
+    @Value("${catalog.sync.enabled:true}")
+    private boolean enabled;
+    @Value("${catalog.sync.period-ms:300000}")
+    private long periodMs;
+    @Value("${catalog.sync.jitter-ms:30000}")
+    private long jitterMs;
+
+    private ScheduledExecutorService scheduler;
+
+    public CatalogSyncScheduler(DocumentSearchService documentSearchService) {
+        this.documentSearchService = documentSearchService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || !documentSearchService.isRemote()) {
+            log.info("Catalog sync disabled (enabled={}, remote={})", enabled, documentSearchService.isRemote());
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleNext();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    private void scheduleNext() {
+        long delay = Math.max(1000L, periodMs) + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        scheduler.schedule(this::runOnce, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runOnce() {
+        try {
+            documentSearchService.syncAsync().join();
+        } catch (Exception e) {
+            log.warn("Catalog sync failed: {}", e.getMessage());
+        } finally {
+            if (!scheduler.isShutdown()) scheduleNext();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.merbancapital.backend.service;
+
+import com.merbancapital.backend.model.Client;
+import com.merbancapital.backend.repository.ClientRepository;
+import com.merbancapital.backend.search.CompletionTrie;
+import com.merbancapital.backend.search.Facet;
+import com.merbancapital.backend.search.FacetCounts;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Type-ahead over client full names and account numbers, served from an in-memory {@link CompletionTrie}.
+ *
+ * Each client is indexed under its full name, every later word of the name ("smith" finds "John Smith") and
+ * its account number. Completions are weighted by how many catalog documents the client has. A background
+ * check rebuilds the trie when the client table changes (row count, highest id, or latest updated_at, which
+ * a rename moves) or the catalog's client counts change; lookups never touch the database.
+ *
+ * The same refresh keeps account-number and exact-name maps, so {@link #resolve} can find a client's id for an
+ * OCR notification without a query. A miss asks for an early refresh, for clients added since the last one.
+ */
+@Service
+public class ClientAutocompleteService {
+
+    private static final int MAX_COMPLETIONS = 25;
+    // Name key shared by more than one client
+    private static final int AMBIGUOUS = -1;
+
+    private final Logger log = LoggerFactory.getLogger(ClientAutocompleteService.class);
+    private final ClientRepository clientRepository;
+    private final CatalogFacetService catalogFacetService;
+
+    @Value("${clients.autocomplete.check-ms:30000}")
+    private long checkMs;
+
+    private volatile Index index = new Index(List.of(), CompletionTrie.build(List.of(), new int[0], new long[0], MAX_COMPLETIONS),
+            Map.of(), Map.of());
+    private ScheduledExecutorService scheduler;
+    // An early refresh is queued and has not run yet
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    // What the current index was built from
+    private long builtCount = -1;
+    private Integer builtMaxId;
+    private Instant builtUpdatedAt;
+    private FacetCounts builtFacets;
+
+    private static final class Index {
+        final List<String> names; // by item id
+        final CompletionTrie trie;
+        final Map<String, Integer> byAccount;
+        final Map<String, Integer> byName; // nameKey -> client id, or AMBIGUOUS
+
+        Index(List<String> names, CompletionTrie trie, Map<String, Integer> byAccount, Map<String, Integer> byName) {
+            this.names = names;
+            this.trie = trie;
+            this.byAccount = byAccount;
+            this.byName = byName;
+        }
+    }
+
+    public ClientAutocompleteService(ClientRepository clientRepository, CatalogFacetService catalogFacetService) {
+        this.clientRepository = clientRepository;
+        this.catalogFacetService = catalogFacetService;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "client-autocomplete");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshIfChanged, 0, Math.max(1000L, checkMs), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+    }
+
+    /** Up to {@code limit} client names (at most 25) whose name, a word of it, or account number starts with {@code query}. */
+    public List<String> complete(String query, int limit) {
+        Index current = index;
+        int[] ids = current.trie.complete(query, Math.min(limit, MAX_COMPLETIONS));
+        List<String> out = new ArrayList<>(ids.length);
+        for (int id : ids) out.add(current.names.get(id));
+        return out;
+    }
+
+    /**
+     * Id of the client with this account number, otherwise of the one client whose full name matches exactly
+     * (ignoring case); null when there is none. Answered from the last refresh; a miss queues an early one.
+     */
+    public Integer resolve(String clientName, String accountNumber) {
+        Index current = index;
+        if (accountNumber != null && !accountNumber.isBlank()) {
+            Integer id = current.byAccount.get(accountNumber.trim());
+            if (id != null) return id;
+        }
+        if (clientName == null || clientName.isBlank()) return null;
+        Integer id = current.byName.get(nameKey(clientName));
+        if (id == null) {
+            refreshSoon();
+            return null;
+        }
+        return id == AMBIGUOUS ? null : id;
+    }
+
+    private void refreshSoon() {
+        if (scheduler == null || !refreshQueued.compareAndSet(false, true)) return;
+        try {
+            scheduler.execute(this::refreshIfChanged);
+        } catch (RejectedExecutionException e) {
+            refreshQueued.set(false);
+        }
+    }
+
+    private void refreshIfChanged() {
+        refreshQueued.set(false);
+        try {
+            long count = clientRepository.count();
+            Integer maxId = clientRepository.findMaxClientId();
+            Instant updatedAt = clientRepository.findLastUpdatedAt();
+            FacetCounts facets = catalogFacetService.current();
+            if (count == builtCount && Objects.equals(maxId, builtMaxId) && Objects.equals(updatedAt, builtUpdatedAt)
+                    && facets == builtFacets) return;
+            rebuild(facets);
+            builtCount = count;
+            builtMaxId = maxId;
+            builtUpdatedAt = updatedAt;
+            builtFacets = facets;
+        } catch (RuntimeException e) {
+            log.warn("Client autocomplete refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void rebuild(FacetCounts facets) {
+        long start = System.nanoTime();
+        List<Client> clients = new ArrayList<>(clientRepository.findAll());
+        Map<String, Integer> byAccount = new HashMap<>();
+        Map<String, Integer> byName = new HashMap<>();
+        for (Client c : clients) {
+            if (c.getClientId() == null) continue;
+            if (c.getAccountNumber() != null && !c.getAccountNumber().isBlank()) byAccount.put(c.getAccountNumber().trim(), c.getClientId());
+            if (c.getFullName() != null && !c.getFullName().isBlank()) {
+                byName.merge(nameKey(c.getFullName()), c.getClientId(), (a, b) -> AMBIGUOUS);
+            }
+        }
+        // Ids in name order, so equal weights complete alphabetically
+        clients.removeIf(c -> c.getFullName() == null || c.getFullName().isBlank());
+        clients.sort(Comparator.comparing(c -> CompletionTrie.fold(c.getFullName())));
+        Map<String, Long> docsByClient = facets.get(Facet.CLIENT);
+
+        List<String> names = new ArrayList<>(clients.size());
+        long[] weights = new long[clients.size()];
+        List<String> keys = new ArrayList<>(clients.size() * 3);
+        List<Integer> keyIds = new ArrayList<>(clients.size() * 3);
+        for (int id = 0; id < clients.size(); id++) {
+            Client c = clients.get(id);
+            String name = c.getFullName().trim();
+            names.add(name);
+            Long docs = c.getClientId() == null ? null : docsByClient.get(c.getClientId().toString());
+            weights[id] = docs == null ? 0 : docs;
+            String folded = CompletionTrie.fold(name);
+            keys.add(folded);
+            keyIds.add(id);
+            for (int sp = folded.indexOf(' '); sp >= 0; sp = folded.indexOf(' ', sp + 1)) {
+                keys.add(folded.substring(sp + 1));
+                keyIds.add(id);
+            }
+            if (c.getAccountNumber() != null && !c.getAccountNumber().isBlank()) {
+                keys.add(c.getAccountNumber());
+                keyIds.add(id);
+            }
+        }
+        int[] ids = new int[keyIds.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = keyIds.get(i);
+        index = new Index(List.copyOf(names), CompletionTrie.build(keys, ids, weights, MAX_COMPLETIONS),
+                Map.copyOf(byAccount), Map.copyOf(byName));
+        log.info("Client autocomplete rebuilt: {} clients, {} keys in {} ms", names.size(), keys.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Trimmed name folded so that keys are equal exactly when the names are equal ignoring case. */
+    private static String nameKey(String name) {
+        return name.trim().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,175 @@
+package com.merbancapital.backend.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.merbancapital.backend.model.Document;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Writes documents one at a time to an export stream, either as NDJSON (one JSON object per line, same
+ * shape as in search responses) or as CSV with a header row. Nothing is buffered beyond the writer's own
+ * buffer, so memory stays flat however many documents are exported; a slow client simply blocks the writes.
+ * The caller may pass a cancellation check, asked before each document, to stop an export whose request is gone.
+ */
+public abstract class DocumentExportWriter implements Consumer<Document>, AutoCloseable {
+
+    private BooleanSupplier cancelled = () -> false;
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        /** Format for a request parameter value, or null when it is not supported. */
+        public static Format parse(String value) {
+            if (value == null || value.isBlank()) return NDJSON;
+            switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "ndjson":
+                case "jsonl":
+                    return NDJSON;
+                case "csv":
+                    return CSV;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    public static DocumentExportWriter open(Format format, OutputStream out, ObjectMapper mapper) throws IOException {
+        return format == Format.CSV ? new Csv(out) : new NdJson(out, mapper);
+    }
+
+    /** Like {@link #open(Format, OutputStream, ObjectMapper)}, stopping once {@code cancelled} returns true. */
+    public static DocumentExportWriter open(Format format, OutputStream out, ObjectMapper mapper,
+                                            BooleanSupplier cancelled) throws IOException {
+        DocumentExportWriter writer = open(format, out, mapper);
+        writer.cancelled = cancelled;
+        return writer;
+    }
+
+    /**
+     * Write one document; I/O failures (typically the client going away) surface as UncheckedIOException, and a
+     * cancelled export as CancellationException, so the loop feeding the writer ends either way.
+     */
+    @Override
+    public void accept(Document d) {
+        if (cancelled.getAsBoolean()) throw new CancellationException("export cancelled");
+        try {
+            write(d);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected abstract void write(Document d) throws IOException;
+
+    @Override
+    public abstract void close() throws IOException;
+
+    private static final class NdJson extends DocumentExportWriter {
+        private final JsonGenerator gen;
+
+        NdJson(OutputStream out, ObjectMapper mapper) throws IOException {
+            // No root separator: each value is followed by its own newline instead
+            gen = mapper.getFactory().createGenerator(out).setRootValueSeparator(null);
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setCodec(mapper);
+        }
+
+        @Override
+        protected void write(Document d) throws IOException {
+            gen.writeObject(d);
+            gen.writeRaw('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            gen.close();
+        }
+    }
+
+    private static final class Csv extends DocumentExportWriter {
+        private static final String HEADER = "name,path,extension,size,dateModified,fundDate,ocrConfidence,indexStatus,departmentId,clientId";
+        private final Writer w;
+
+        Csv(OutputStream out) throws IOException {
+            w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 14);
+            w.write(HEADER);
+            w.write("\r\n");
+        }
+
+        @Override
+        protected void write(Document d) throws IOException {
+            field(d.getFileName()).write(',');
+            field(d.getFilePath()).write(',');
+            field(d.getFileExtension()).write(',');
+            field(d.getFileSize()).write(',');
+            field(d.getDateModified()).write(',');
+            field(d.getFundDate()).write(',');
+            field(d.getOcrConfidence()).write(',');
+            field(d.getIndexStatus()).write(',');
+            field(d.getDepartmentId()).write(',');
+            field(d.getClientId()).write("\r\n");
+        }
+
+        /**
+         * RFC 4180 field: quoted only when it contains a comma, quote or line break. Text that a spreadsheet would
+         * take for a formula gets a leading apostrophe (names and paths come from the OCR service, not from us).
+         */
+        private Writer field(Object value) throws IOException {
+            if (value == null) return w;
+            String s = value.toString();
+            if (value instanceof String && isFormula(s)) s = "'" + s;
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                char c = s.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                w.write(s);
+                return w;
+            }
+            w.write('"');
+            w.write(s.replace("\"", "\"\""));
+            w.write('"');
+            return w;
+        }
+
+        private static boolean isFormula(String s) {
+            if (s.isEmpty()) return false;
+            char c = s.charAt(0);
+            return c == '=' || c == '+' || c == '-' || c == '@' || c == '\t' || c == '\r';
+        }
+
+        @Override
+        public void close() throws IOException {
+            w.flush();
+        }
+    }
+}
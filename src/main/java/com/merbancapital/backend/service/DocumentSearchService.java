@@ -3,28 +3,67 @@ package com.merbancapital.backend.service;
 import com.merbancapital.backend.dto.SearchFilters;
 import com.merbancapital.backend.dto.SearchResponse;
 import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.search.Bits;
+import com.merbancapital.backend.search.CatalogFile;
+import com.merbancapital.backend.search.CatalogFilter;
+import com.merbancapital.backend.search.CatalogSnapshot;
+import com.merbancapital.backend.search.CatalogStorage;
+import com.merbancapital.backend.search.CursorExpiredException;
+import com.merbancapital.backend.search.FacetCounts;
+import com.merbancapital.backend.search.FullTextIndex;
+import com.merbancapital.backend.search.MatchSet;
+import com.merbancapital.backend.search.SearchCursor;
+import com.merbancapital.backend.search.SearchExecutor;
+import com.merbancapital.backend.search.SearchMetrics;
+import com.merbancapital.backend.search.SearchProfile;
+import com.merbancapital.backend.search.SearchResultCache;
+import com.merbancapital.backend.search.SearchScope;
+import com.merbancapital.backend.search.SortOrder;
+import com.merbancapital.backend.search.TrigramIndex;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.HttpClientErrorException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.type.TypeReference;
-import org.springframework.http.HttpStatus;
 
 import jakarta.annotation.PostConstruct;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
-import java.time.Instant;
+import java.time.Duration;
 import java.util.*;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 @Service
 public class DocumentSearchService {
 
-        private List<Document> documents = Collections.synchronizedList(new ArrayList<>());
+        // Current immutable catalog + indexes; readers load it once per call and never lock or copy
+        private final AtomicReference<CatalogSnapshot> catalog = new AtomicReference<>(CatalogSnapshot.empty());
+        private final AtomicLong generations = new AtomicLong();
+
+        // Refreshes run here so a rebuild never blocks searches; at most one queued refresh at a time
+        private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "catalog-refresh");
+                t.setDaemon(true);
+                return t;
+        });
+        private final AtomicReference<CompletableFuture<CatalogSnapshot>> pendingRefresh = new AtomicReference<>();
+
+        // Recently published snapshots kept alive so search cursors can keep paging the generation they started on.
+        // Every OCR notification publishes a generation, but snapshots derived from one full build share it and only
+        // add their tail, so they are bounded separately: at most this many full builds...
+        @Value("${catalog.cursor.retained-generations:4}")
+        private int retainedGenerations;
+        // ...and this many generations in all
+        @Value("${catalog.cursor.retained-incremental:64}")
+        private int retainedIncremental;
+        private final LinkedHashMap<Long, CatalogSnapshot> retained = new LinkedHashMap<>();
 
         // When set, operate in remote OCR mode and call the OCR API instead of local FS
         @Value("${ocr.api.url:}")
@@ -32,15 +71,80 @@ public class DocumentSearchService {
         @Value("${ocr.api.token:}")
         private String ocrApiToken;
 
+        // Warm-up progress, reported by CatalogHealthIndicator
+        private volatile boolean catalogLoaded;
+        private volatile String catalogSource = "none";
+        private volatile String lastLoadError;
+        private volatile long warmupStartedNanos;
+
+        // Local copy of the last catalog, restored on boot; blank disables persistence
+        @Value("${catalog.snapshot.path:}")
+        private String snapshotPath;
+
+        // Where catalog records and columns live: heap, direct (off-heap) or mapped (off-heap, file-backed)
+        @Value("${catalog.storage:heap}")
+        private String storageKind;
+        @Value("${catalog.storage.dir:}")
+        private String storageDir;
+        private CatalogStorage storage = CatalogStorage.heap();
+
+        // Incremental changes (OCR notifications) are indexed in a small tail segment of the current snapshot; once it
+        // holds this many documents, or removed entries exceed both this and a quarter of the ordinals, a full rebuild folds it in
+        @Value("${catalog.incremental.max-tail:4096}")
+        private int maxTailDocuments;
+        private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+        // Every change to the published catalog is derived and published under this lock, so an incremental
+        // change never builds on a snapshot that a concurrent sync is about to replace (or the other way round)
+        private final Object catalogWriteLock = new Object();
+
 
 
 
         // Legacy directory constants removed (remote-only mode)
 
+        private final SearchResultCache resultCache;
+        private final OcrCatalogClient catalogClient;
+        private final CatalogFacetService facetService;
+        // Dedicated pool for per-segment filter, ranking and facet work; never runs on Tomcat threads alone
+        private final SearchExecutor searchExecutor;
+        private final SearchMetrics searchMetrics;
+
+        public DocumentSearchService(SearchResultCache resultCache, OcrCatalogClient catalogClient,
+                                     CatalogFacetService facetService, SearchExecutor searchExecutor,
+                                     SearchMetrics searchMetrics) {
+                this.resultCache = resultCache;
+                this.catalogClient = catalogClient;
+                this.facetService = facetService;
+                this.searchExecutor = searchExecutor;
+                this.searchMetrics = searchMetrics;
+        }
+
         @PostConstruct
         public void init() {
                 System.out.println("[DocumentSearchService] Initializing (remote-only). ocrApiUrl=" + (ocrApiUrl == null || ocrApiUrl.isBlank() ? "(none)" : ocrApiUrl));
-                listRemoteFiles();
+                warmupStartedNanos = System.nanoTime();
+                storage = CatalogStorage.of(storageKind, storageDir);
+                // Neither the restore nor the OCR listing blocks context startup: both run on the refresh thread, and
+                // readiness is held by CatalogHealthIndicator until the first snapshot is published
+                refreshExecutor.execute(this::warmUp);
+        }
+
+        /** Serve the last persisted catalog as soon as it is rebuilt, then queue the OCR listing behind it. */
+        private void warmUp() {
+                if (restoreSnapshot()) catalogSource = "disk";
+                if (isRemote()) {
+                        refreshAsync().whenComplete((snapshot, error) -> {
+                                if (error != null) lastLoadError = error.toString();
+                        });
+                } else {
+                        catalogLoaded = true;
+                }
+        }
+
+        @PreDestroy
+        public void shutdown() {
+                refreshExecutor.shutdownNow();
         }
 
         public void scanOcrFolders() {
@@ -50,110 +154,331 @@ public class DocumentSearchService {
 
         /**
          * Populate documents list by calling remote OCR /api/files/list which must return a JSON array of filenames.
+         * The new catalog is built off to the side and published as a single atomic swap. When the OCR service
+         * cannot be listed the current catalog is kept.
          */
         public void listRemoteFiles() {
-                List<Document> newDocuments = new ArrayList<>();
+                OcrCatalogClient.Listing listing = catalogClient.fetchFull();
+                if (listing.kind() == OcrCatalogClient.Kind.FAILED) {
+                        lastLoadError = "OCR file listing failed";
+                        System.err.println("[ERROR] Failed to list remote OCR files; keeping catalog generation " + catalog.get().generation());
+                        return;
+                }
+                CatalogSnapshot snapshot = publish(listing.added());
+                catalogSource = "remote";
+                lastLoadError = null;
+                System.out.println("[DocumentSearchService] Loaded " + snapshot.size() + " docs from remote OCR (generation " + snapshot.generation() + ")");
+                persistSnapshot(snapshot);
+        }
+
+        /**
+         * Incremental sync: a conditional listing that does nothing on 304, applies added/removed entries when the
+         * OCR service returns a delta, and otherwise diffs the full listing against the current snapshot. A new
+         * generation is only published when something actually changed; unchanged entries keep their Document.
+         */
+        public CatalogSnapshot syncRemoteFiles() {
+                OcrCatalogClient.Listing listing = catalogClient.fetchChanges();
+                if (listing.kind() != OcrCatalogClient.Kind.DELTA && listing.kind() != OcrCatalogClient.Kind.FULL) {
+                        return catalog.get(); // NOT_MODIFIED or FAILED
+                }
+                CatalogSnapshot snapshot;
+                synchronized (catalogWriteLock) {
+                        CatalogSnapshot current = catalog.get();
+                        List<Document> added = new ArrayList<>();
+                        List<Document> removed = new ArrayList<>();
+                        List<Document> next = listing.kind() == OcrCatalogClient.Kind.DELTA
+                                        ? applyDelta(current, listing.added(), listing.removed(), added, removed)
+                                        : mergeListing(current, listing.added(), added, removed);
+                        if (next == null) return current;
+                        snapshot = publish(next, added, removed);
+                }
+                catalogSource = "remote";
+                System.out.println("[DocumentSearchService] Synced " + snapshot.size() + " docs from remote OCR (" + listing.kind() + ", generation " + snapshot.generation() + ")");
+                persistSnapshot(snapshot);
+                return snapshot;
+        }
+
+        /**
+         * Apply a change to the live catalog without a full rebuild: documents named in {@code removedNames}, or
+         * with the same name as an {@code added} one, leave the catalog and {@code added} join it. Only the tail is
+         * copied and indexed; the base records, columns, indexes and sort permutations are shared, so the change
+         * costs time in proportion to the tail and is searchable as soon as this returns. Facet counts are updated
+         * incrementally. The change is persisted with the next full build; enough of them trigger one in the background.
+         *
+         * Each change is a new generation, since its matches differ: cached match sets of the previous one are not
+         * reused, and cursors keep paging the generation they started on for as long as it is retained (see
+         * {@code catalog.cursor.retained-incremental}).
+         */
+        public CatalogSnapshot applyChanges(Collection<String> removedNames, List<Document> added) {
+                return applyChanges((current, removing, adding) -> {
+                        removing.addAll(removedNames);
+                        adding.addAll(added);
+                });
+        }
+
+        /**
+         * A catalog change worked out against the snapshot it applies to, for {@link #applyChanges(ChangePlan)}.
+         */
+        public interface ChangePlan {
+                /** Fill {@code removedNames} and {@code added} for a change to {@code current}. */
+                void plan(CatalogSnapshot current, Collection<String> removedNames, List<Document> added);
+        }
+
+        /**
+         * {@link #applyChanges(Collection, List)} with the change planned by {@code plan} under the catalog write
+         * lock, against the snapshot it is applied to, so decisions taken from the current catalog (which entry a
+         * name replaces, what it carries over) cannot be overtaken by a concurrent change or refresh.
+         */
+        public CatalogSnapshot applyChanges(ChangePlan plan) {
+                CatalogSnapshot snapshot;
+                synchronized (catalogWriteLock) {
+                        long start = System.nanoTime();
+                        CatalogSnapshot current = catalog.get();
+                        Set<String> removedNames = new LinkedHashSet<>();
+                        List<Document> added = new ArrayList<>();
+                        plan.plan(current, removedNames, added);
+                        List<Document> removed = new ArrayList<>();
+                        snapshot = current.withChanges(generations.incrementAndGet(), removedNames, added, removed);
+                        facetService.update(added, removed);
+                        install(snapshot);
+                        System.out.println("[DocumentSearchService] Catalog generation " + snapshot.generation() + ": +" + added.size()
+                                        + " / -" + removed.size() + " documents in " + (System.nanoTime() - start) / 1_000 + " us ("
+                                        + snapshot.tailSize() + " in tail segment)");
+                }
+                int dead = snapshot.size() - snapshot.liveCount();
+                if (snapshot.tailSize() > Math.max(0, maxTailDocuments) || dead > Math.max(maxTailDocuments, snapshot.size() / 4)) compactAsync();
+                return snapshot;
+        }
+
+        /**
+         * Fold the tail segment and removed entries of the current snapshot into a full build, on the background
+         * refresh thread. At most one is queued at a time.
+         */
+        private void compactAsync() {
+                if (!compactionQueued.compareAndSet(false, true)) return;
+                refreshExecutor.execute(() -> {
+                        compactionQueued.set(false);
+                        CatalogSnapshot snapshot;
+                        synchronized (catalogWriteLock) {
+                                CatalogSnapshot current = catalog.get();
+                                if (current.tailSize() == 0 && current.liveCount() == current.size()) return;
+                                // Same documents, so facet counts are unchanged
+                                snapshot = publish(new ArrayList<>(current.documents()), List.of(), List.of());
+                        }
+                        persistSnapshot(snapshot);
+                });
+        }
+
+        /** Run {@link #syncRemoteFiles()} on the background refresh thread. */
+        public CompletableFuture<CatalogSnapshot> syncAsync() {
+                return CompletableFuture.supplyAsync(this::syncRemoteFiles, refreshExecutor);
+        }
+
+        /**
+         * Publish the catalog persisted by a previous run, if any. Generations continue from the stored one so
+         * they keep increasing across restarts.
+         */
+        private boolean restoreSnapshot() {
+                if (snapshotPath == null || snapshotPath.isBlank()) return false;
+                Path file = Paths.get(snapshotPath);
+                if (!Files.isRegularFile(file)) return false;
+                long start = System.nanoTime();
                 try {
-                            RestTemplate rt = new RestTemplate();
-                            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-                            if (ocrApiToken != null && !ocrApiToken.isBlank()) {
-                                    headers.set("Authorization", "Bearer " + ocrApiToken);
-                            }
-                            org.springframework.http.HttpEntity<Void> req = new org.springframework.http.HttpEntity<>(headers);
-
-                            // Try a list of common list endpoints in case the deployed OCR uses a different path
-                            String[] candidates = new String[]{
-                                            "api/files/list",
-                                            "files/list",
-                                            "list",
-                                            "api/files",
-                                            "files"
-                            };
-                            ObjectMapper mapper = new ObjectMapper();
-                            String successfulUrl = null;
-                            String responseBody = null;
-                            for (String c : candidates) {
-                                    String url = ocrApiUrl.endsWith("/") ? ocrApiUrl + c : ocrApiUrl + "/" + c;
-                                    try {
-                                            ResponseEntity<String> resp = rt.exchange(url, org.springframework.http.HttpMethod.GET, req, String.class);
-                                            if (resp.getStatusCode().is2xxSuccessful()) {
-                                                    successfulUrl = url;
-                                                    responseBody = resp.getBody();
-                                                    break;
-                                            } else if (resp.getStatusCode() == HttpStatus.NOT_FOUND) {
-                                                    // try next candidate
-                                                    continue;
-                                            } else {
-                                                    // log and continue trying other endpoints
-                                                    System.out.println("[DocumentSearchService] Tried " + url + " -> status=" + resp.getStatusCode());
-                                                    continue;
-                                            }
-                                    } catch (HttpClientErrorException.NotFound nf) {
-                                            // endpoint not present on server, try next
-                                            continue;
-                                    } catch (Exception e) {
-                                            System.err.println("[DocumentSearchService] Error calling " + url + " : " + e.getMessage());
-                                            continue;
-                                    }
-                            }
-
-                            if (successfulUrl != null && responseBody != null && !responseBody.isBlank()) {
-                                    // Try parsing as simple string array first
-                                    try {
-                                            String[] names = mapper.readValue(responseBody, String[].class);
-                                            for (String name : names) {
-                                                    Document d = new Document();
-                                                    d.setFileName(name);
-                                                    d.setFileSize(0L);
-                                                    d.setDateModified(Instant.now());
-                                                    String encoded = URLEncoder.encode(name, StandardCharsets.UTF_8.toString()).replace("+", "%20");
-                                                    String root = (ocrApiUrl.endsWith("/")) ? ocrApiUrl : ocrApiUrl + "/";
-                                                    d.setFilePath(root + "api/files/" + encoded);
-                                                    newDocuments.add(d);
-                                            }
-                                    } catch (Exception ex) {
-                                            // Not a plain string array, try list of objects with name/url
-                                            try {
-                                                    List<Map<String, Object>> objs = mapper.readValue(responseBody, new TypeReference<List<Map<String, Object>>>(){});
-                                                    for (Map<String, Object> obj : objs) {
-                                                            String name = null;
-                                                            String url = null;
-                                                            if (obj.containsKey("filename")) name = String.valueOf(obj.get("filename"));
-                                                            if (obj.containsKey("fileName")) name = String.valueOf(obj.get("fileName"));
-                                                            if (obj.containsKey("name")) name = String.valueOf(obj.get("name"));
-                                                            if (obj.containsKey("url")) url = String.valueOf(obj.get("url"));
-                                                            if (name == null && url != null) {
-                                                                    // attempt to extract name from url
-                                                                    try { name = Paths.get(new java.net.URI(url).getPath()).getFileName().toString(); } catch (Exception ignore) {}
-                                                            }
-                                                            if (name != null) {
-                                                                    Document d = new Document();
-                                                                    d.setFileName(name);
-                                                                    d.setFileSize(0L);
-                                                                    d.setDateModified(Instant.now());
-                                                                    if (url != null && !url.isBlank()) d.setFilePath(url);
-                                                                    else {
-                                                                            String encoded = URLEncoder.encode(name, StandardCharsets.UTF_8.toString()).replace("+", "%20");
-                                                                            String root = (ocrApiUrl.endsWith("/")) ? ocrApiUrl : ocrApiUrl + "/";
-                                                                            d.setFilePath(root + "api/files/" + encoded);
-                                                                    }
-                                                                    newDocuments.add(d);
-                                                            }
-                                                    }
-                                            } catch (Exception ex2) {
-                                                    System.err.println("[DocumentSearchService] Could not parse remote list response: " + ex2.getMessage());
-                                            }
-                                    }
-                            } else {
-                                    System.err.println("[ERROR] No remote OCR list endpoint responded successfully among candidates.");
-                            }
-                } catch (Exception e) {
-                            System.err.println("[ERROR] Failed to list remote OCR files: " + e.getMessage());
-                }
-                synchronized (documents) {
-                        documents.clear();
-                        documents.addAll(newDocuments);
-                        System.out.println("[DocumentSearchService] Loaded " + documents.size() + " docs from remote OCR");
+                        CatalogFile.Contents contents = CatalogFile.read(file);
+                        generations.accumulateAndGet(contents.generation(), Math::max);
+                        // Columns, records, indexes and sort orders come back as stored; nothing is rebuilt
+                        CatalogSnapshot snapshot = publish(generation -> {
+                                try {
+                                        return contents.snapshot(generation, storage);
+                                } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                }
+                        }, null, null);
+                        System.out.println("[DocumentSearchService] Restored " + snapshot.size() + " docs from " + file + " in "
+                                        + (System.nanoTime() - start) / 1_000_000 + " ms (generation " + snapshot.generation() + ")");
+                        return true;
+                } catch (IOException | RuntimeException e) {
+                        // A corrupt file must not stop the warm-up: the OCR listing still follows
+                        System.err.println("[WARN] Could not restore catalog from " + file + ": " + e);
+                        return false;
+                }
+        }
+
+        private void persistSnapshot(CatalogSnapshot snapshot) {
+                if (snapshotPath == null || snapshotPath.isBlank()) return;
+                try {
+                        CatalogFile.write(Paths.get(snapshotPath), snapshot);
+                } catch (IOException e) {
+                        System.err.println("[WARN] Could not persist catalog to " + snapshotPath + ": " + e.getMessage());
+                }
+        }
+
+        /**
+         * Current documents minus removed names, with added entries replacing same-named ones; null if no change.
+         * The documents that left and joined the catalog are collected into {@code added} / {@code removed}.
+         */
+        private static List<Document> applyDelta(CatalogSnapshot current, List<Document> listed, Set<String> removedNames,
+                                                 List<Document> added, List<Document> removed) {
+                if (listed.isEmpty() && removedNames.isEmpty()) return null;
+                Set<String> dropped = new HashSet<>(removedNames);
+                for (Document d : listed) dropped.add(d.getFileName());
+                List<Document> next = new ArrayList<>(current.size() + listed.size());
+                for (Document d : current.documents()) {
+                        if (dropped.contains(d.getFileName())) removed.add(d);
+                        else next.add(d);
+                }
+                next.addAll(listed);
+                added.addAll(listed);
+                return next;
+        }
+
+        /**
+         * The listing, reusing current entries for unchanged ones; null when identical to the current catalog.
+         * New or changed entries go to {@code added}, current ones no longer listed as-is to {@code removed}.
+         * Current entries are compared by name, path and snippet straight from the snapshot's records; only
+         * reused and removed ones are turned back into Documents.
+         */
+        private static List<Document> mergeListing(CatalogSnapshot current, List<Document> listed,
+                                                   List<Document> added, List<Document> removed) {
+                // Same-named entries are matched up in listing order, so duplicates are reused too
+                Map<String, ArrayDeque<Integer>> byName = new HashMap<>(current.size() * 2);
+                for (int o = 0; o < current.size(); o++) {
+                        if (current.isLive(o)) byName.computeIfAbsent(current.fileName(o), k -> new ArrayDeque<>(1)).add(o);
+                }
+                List<Document> next = new ArrayList<>(listed.size());
+                BitSet kept = new BitSet(current.size());
+                // Ordinals and listing positions only line up in a fully built snapshot; otherwise rebuild to compact it
+                boolean changed = listed.size() != current.size() || current.liveCount() != current.size() || current.tailSize() > 0;
+                for (int i = 0; i < listed.size(); i++) {
+                        Document d = listed.get(i);
+                        ArrayDeque<Integer> same = byName.get(d.getFileName());
+                        Integer prev = same == null ? null : same.peek();
+                        if (prev != null && Objects.equals(current.filePath(prev), d.getFilePath()) && Objects.equals(current.snippet(prev), d.getSnippet())) {
+                                same.poll();
+                                kept.set(prev);
+                                changed |= prev != i;
+                                d = current.document(prev);
+                        } else {
+                                added.add(d);
+                                changed = true;
+                        }
+                        next.add(d);
+                }
+                if (!changed) return null;
+                for (int o = kept.nextClearBit(0); o < current.size(); o = kept.nextClearBit(o + 1)) {
+                        if (current.isLive(o)) removed.add(current.document(o));
+                }
+                return next;
+        }
+
+        /**
+         * Rebuild the catalog on the background refresh thread. Concurrent callers share the refresh that is
+         * already queued; searches keep using the current snapshot until the new one is published.
+         */
+        public CompletableFuture<CatalogSnapshot> refreshAsync() {
+                CompletableFuture<CatalogSnapshot> mine = new CompletableFuture<>();
+                CompletableFuture<CatalogSnapshot> existing = pendingRefresh.compareAndExchange(null, mine);
+                if (existing != null) return existing;
+                refreshExecutor.execute(() -> {
+                        pendingRefresh.set(null);
+                        try {
+                                listRemoteFiles();
+                                mine.complete(catalog.get());
+                        } catch (Throwable t) {
+                                mine.completeExceptionally(t);
+                        }
+                });
+                return mine;
+        }
+
+        /** True once a catalog snapshot has been built, from disk or from the OCR service. */
+        public boolean isCatalogLoaded() {
+                return catalogLoaded;
+        }
+
+        /** Where the current catalog came from: "disk", "remote", or "none" before anything loaded. */
+        public String getCatalogSource() {
+                return catalogSource;
+        }
+
+        public Duration getWarmupElapsed() {
+                return warmupStartedNanos == 0L ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - warmupStartedNanos);
+        }
+
+        /** Reason the last full load failed, or null. */
+        public String getLastLoadError() {
+                return lastLoadError;
+        }
+
+        /** Entries parsed so far by the listing in flight. */
+        public int getEntriesLoading() {
+                return catalogClient.entriesRead();
+        }
+
+        /** Current catalog snapshot; cheap, lock-free and safe to hold for the duration of a request. */
+        public CatalogSnapshot getCatalog() {
+                return catalog.get();
+        }
+
+        private CatalogSnapshot publish(List<Document> newDocuments) {
+                return publish(newDocuments, null, null);
+        }
+
+        /**
+         * Build and publish a snapshot of {@code newDocuments}. When the change against the current catalog is
+         * known ({@code added}/{@code removed} non-null) facet counts are updated incrementally, otherwise recounted.
+         */
+        private CatalogSnapshot publish(List<Document> newDocuments, List<Document> added, List<Document> removed) {
+                return publish(generation -> CatalogSnapshot.build(generation, newDocuments, storage), added, removed);
+        }
+
+        /** {@link #publish(List, List, List)} with the snapshot for the next generation made by {@code build}. */
+        private CatalogSnapshot publish(LongFunction<CatalogSnapshot> build, List<Document> added, List<Document> removed) {
+                synchronized (catalogWriteLock) {
+                        CatalogSnapshot snapshot = build.apply(generations.incrementAndGet());
+                        if (added == null) facetService.reset(FacetCounts.of(snapshot.columns(), null, searchExecutor));
+                        else facetService.update(added, removed);
+                        install(snapshot);
+                        System.out.println("[DocumentSearchService] Catalog generation " + snapshot.generation() + ": " + snapshot.size()
+                                        + " documents in " + snapshot.storage() + " storage, ~" + snapshot.heapBytesPerDocument()
+                                        + " heap bytes/document, " + snapshot.offHeapBytes() / (1024 * 1024) + " MiB off-heap");
+                        return snapshot;
+                }
+        }
+
+        private void install(CatalogSnapshot snapshot) {
+                // Generations only move forward even if two builds race to publish
+                catalog.accumulateAndGet(snapshot, (cur, next) -> next.generation() > cur.generation() ? next : cur);
+                synchronized (retained) {
+                        retained.put(snapshot.generation(), snapshot);
+                        trimRetained();
+                }
+                catalogLoaded = true;
+        }
+
+        /** Drop the oldest retained snapshots beyond the full-build and total limits. Caller holds the lock. */
+        private void trimRetained() {
+                while (retained.size() > 1) {
+                        int builds = 0;
+                        CatalogSnapshot previous = null;
+                        for (CatalogSnapshot s : retained.values()) {
+                                if (previous == null || !s.sharesBase(previous)) builds++;
+                                previous = s;
+                        }
+                        if (builds <= Math.max(1, retainedGenerations) && retained.size() <= Math.max(retainedGenerations, retainedIncremental)) return;
+                        retained.remove(retained.keySet().iterator().next());
+                }
+        }
+
+        private CatalogSnapshot pinnedSnapshot(long generation) {
+                CatalogSnapshot current = catalog.get();
+                if (current.generation() == generation) return current;
+                synchronized (retained) {
+                        CatalogSnapshot pinned = retained.get(generation);
+                        if (pinned == null) {
+                                throw new CursorExpiredException("Catalog generation " + generation + " has expired; restart the search");
+                        }
+                        return pinned;
                 }
         }
 
@@ -169,58 +494,95 @@ public class DocumentSearchService {
          */
         public Optional<String> getRemoteFileUrl(String filename) {
                 if (filename == null || filename.isBlank() || !isRemote()) return Optional.empty();
-                String safe = filename.trim();
-                synchronized (documents) {
-                        for (Document d : documents) {
-                                if (d.getFileName() != null && d.getFileName().equalsIgnoreCase(safe)) {
-                                        return Optional.ofNullable(d.getFilePath());
-                                }
-                        }
-                }
-                return Optional.empty();
+                Document d = catalog.get().findByName(filename.trim());
+                return d == null ? Optional.empty() : Optional.ofNullable(d.getFilePath());
         }
 
-        public SearchResponse search(SearchFilters f) {
-                List<Document> filtered = new ArrayList<>(documents);
-                // Simple name-based filter (template matched clientName against filename)
-                if (f.getClientName() != null && !f.getClientName().isBlank()) {
-                        String q = f.getClientName().toLowerCase();
-                        filtered = filtered.stream()
-                                        .filter(d -> d.getFileName() != null && d.getFileName().toLowerCase().contains(q))
-                                        .collect(Collectors.toList());
+        /**
+         * Search the catalog. Offset paging uses {@code page}/{@code pageSize}; when {@code cursor} is set the
+         * page resumes right after the previous one against the same (pinned) catalog generation. Every
+         * response carries a {@code nextCursor} while more results remain. Only documents inside {@code scope}
+         * are ever matched. With {@code explain} set the response also carries the per-stage profile; every
+         * search records its stage timings in {@link SearchMetrics}.
+         *
+         * @throws IllegalArgumentException when the cursor is malformed, belongs to different filters or points
+         *                                  outside its snapshot
+         * @throws CursorExpiredException when the cursor's catalog generation is no longer retained
+         */
+        public SearchResponse search(SearchFilters f, SearchScope scope) {
+                SearchCursor cursor = f.getCursor() == null || f.getCursor().isBlank() ? null : SearchCursor.decode(f.getCursor());
+                int fingerprint = SearchCursor.fingerprint(f, scope);
+                if (cursor != null && cursor.fingerprint() != fingerprint) {
+                        throw new IllegalArgumentException("Search cursor does not match these filters");
                 }
-
-                // If an account number is provided, perform numeric-only matching.
-                // Extract digits from the provided filter; if there are no digits, skip account-number filtering.
-                if (f.getAccountNumber() != null && !f.getAccountNumber().isBlank()) {
-                        String digitsOnly = f.getAccountNumber().replaceAll("\\D+", "");
-                        if (!digitsOnly.isEmpty()) {
-                                final String acc = digitsOnly; // do not lowercase digits
-                                filtered = filtered.stream()
-                                                .filter(d -> {
-                                                        if (d.getFileName() == null) return false;
-                                                        // Extract digits from filename and check contains
-                                                        String fileDigits = d.getFileName().replaceAll("\\D+", "");
-                                                        return fileDigits.contains(acc);
-                                                })
-                                                .collect(Collectors.toList());
-                        } // else: query had no digits -> ignore accountNumber filter
+                CatalogSnapshot snapshot = cursor == null ? catalog.get() : pinnedSnapshot(cursor.generation());
+                SearchProfile profile = new SearchProfile();
+                boolean explain = Boolean.TRUE.equals(f.getExplain());
+                // The match set depends only on the filters and the generation, so all pages and sort orders share it.
+                // Explain re-evaluates the filters so their stages can be reported, and refreshes the cache entry.
+                MatchSet matches = explain ? null : resultCache.get(snapshot.generation(), f, scope);
+                profile.cacheHit(matches != null);
+                profile.stage("cache", matches != null ? "hit" : explain ? "bypassed (explain)" : "miss",
+                                matches != null ? matches.total(snapshot.size()) : -1, 0);
+                if (matches == null) {
+                        matches = match(snapshot, f, scope, departmentIds(f), searchExecutor, profile);
+                        resultCache.put(snapshot.generation(), f, scope, matches);
                 }
+                int[] hits = matches.hits();
+                FullTextIndex.Result ranked = matches.ranked();
+
+                // Ordering: an explicit sortBy wins; otherwise full-text relevance, otherwise catalog order
+                SortOrder.Key sortKey = SortOrder.Key.parse(f.getSortBy());
+                boolean desc = "desc".equalsIgnoreCase(f.getSortOrder());
+                int mode = sortKey != null ? sortKey.ordinal() : ranked != null ? SearchCursor.MODE_RELEVANCE : SearchCursor.MODE_CATALOG;
+                if (cursor != null) cursor.checkWithin(mode, snapshot.size());
 
-                // Pagination
-                int page = f.getPage() == null ? 1 : f.getPage();
+                // Pagination: only the requested page is materialised, the snapshot itself is never copied
+                int total = hits == null ? snapshot.size() : hits.length;
                 int size = f.getPageSize() == null ? 20 : f.getPageSize();
-                int fromIdx = (page - 1) * size;
-                int toIdx = Math.min(fromIdx + size, filtered.size());
-                List<Document> pageList = fromIdx >= filtered.size() ? Collections.emptyList()
-                                : filtered.subList(fromIdx, toIdx);
+                int skipped;
+                int[] ordinals;
+                if (cursor != null) {
+                        // Keyset: resume right after the previous page, cost proportional to this page only
+                        skipped = cursor.returned();
+                        ordinals = pageAfter(snapshot, hits, ranked, sortKey, desc, cursor, size, searchExecutor);
+                } else {
+                        skipped = Math.max(0, ((f.getPage() == null ? 1 : f.getPage()) - 1) * size);
+                        ordinals = pageAt(snapshot, hits, ranked, sortKey, desc, skipped, Math.min(skipped + size, total), searchExecutor);
+                }
+                profile.stage("page", pageStrategy(snapshot, hits, ranked, sortKey, cursor != null, skipped + size),
+                                ordinals.length, pageBytes(snapshot, hits, ranked, sortKey, cursor != null, skipped + size));
+                int page = skipped / size + 1;
+
+                List<Document> pageList = new ArrayList<>(ordinals.length);
+                for (int o : ordinals) pageList.add(snapshot.document(o));
+
+                String nextCursor = null;
+                int handedOut = skipped + ordinals.length;
+                if (ordinals.length > 0 && handedOut < total) {
+                        int last = ordinals[ordinals.length - 1];
+                        long position = sortKey != null ? snapshot.sortOrder(sortKey).positionOf(last, desc)
+                                        : ranked != null ? SearchCursor.relevancePosition(ranked.scoreOf(last), last)
+                                        : last;
+                        nextCursor = new SearchCursor(snapshot.generation(), mode, desc, position, handedOut, fingerprint).encode();
+                }
+
+                Map<String, Map<String, Long>> facets = null;
+                if (Boolean.TRUE.equals(f.getFacets())) {
+                        facets = facetService.describe(matches.facets(snapshot.columns(), searchExecutor));
+                        profile.stage("facets", "per-segment tally over matches", -1, 0);
+                }
+                searchMetrics.record(profile);
 
                 return SearchResponse.builder()
                                 .documents(pageList)
-                                .total(filtered.size())
+                                .nextCursor(nextCursor)
+                                .facets(facets)
+                                .explain(explain ? profile : null)
+                                .total(total)
                                 .page(page)
                                 .pageSize(size)
-                                .totalPages((int) Math.ceil((double) filtered.size() / size))
+                                .totalPages((int) Math.ceil((double) total / size))
                                 .clientName(f.getClientName() == null ? "" : f.getClientName())
                                 .accountNumber(f.getAccountNumber() == null ? "" : f.getAccountNumber())
                                 .department(f.getDepartment() == null ? "" : f.getDepartment())
@@ -241,6 +603,182 @@ public class DocumentSearchService {
                                 .build();
         }
 
+        /**
+         * Every document matching {@code f} within {@code scope}, in {@code sortBy} order (catalog order when no
+         * sort key is given; relevance is not used), against one snapshot. Paging fields and the cursor are
+         * ignored, and nothing is collected: each document goes straight to {@code action}.
+         */
+        public void forEachMatch(SearchFilters f, SearchScope scope, Consumer<Document> action) {
+                CatalogSnapshot snapshot = catalog.get();
+                MatchSet matches = resultCache.get(snapshot.generation(), f, scope);
+                if (matches == null) {
+                        matches = match(snapshot, f, scope, departmentIds(f), searchExecutor, new SearchProfile());
+                        resultCache.put(snapshot.generation(), f, scope, matches);
+                }
+                int[] hits = matches.hits();
+                SortOrder.Key sortKey = SortOrder.Key.parse(f.getSortBy());
+                if (sortKey != null) {
+                        snapshot.sortOrder(sortKey).forEach(hits, "desc".equalsIgnoreCase(f.getSortOrder()), o -> action.accept(snapshot.document(o)));
+                } else if (hits == null) {
+                        for (Document d : snapshot.documents()) action.accept(d);
+                } else {
+                        for (int o : hits) action.accept(snapshot.document(o));
+                }
+        }
+
+        /** Ids of the department {@code f} filters by name, or null when it names none. */
+        private Set<Integer> departmentIds(SearchFilters f) {
+                return f.getDepartment() == null || f.getDepartment().isBlank() ? null : facetService.departmentIds(f.getDepartment());
+        }
+
+        /**
+         * Evaluate every filter of {@code f} against the snapshot, independent of ordering and paging. Each filter
+         * that runs closes a stage of {@code profile}. {@code departmentIds} are those of the department {@code f}
+         * names, or null when it names none.
+         */
+
+        private static MatchSet match(CatalogSnapshot snapshot, SearchFilters f, SearchScope scope, Set<Integer> departmentIds,
+                                      SearchExecutor executor, SearchProfile profile) {
+                int[] hits = null; // ascending ordinals into the snapshot; null means no filter applied yet
+                profile.restart();
+
+                // Simple name-based filter (template matched clientName against filename),
+                // answered from the trigram index instead of lower-casing every filename
+                if (f.getClientName() != null && !f.getClientName().isBlank()) {
+                        if (Boolean.TRUE.equals(f.getClientNameFuzzy())) {
+                                // OCR misspells names: substring matches plus filename tokens within an edit budget
+                                int maxEdits = f.getClientNameMaxEdits() == null ? CatalogSnapshot.DEFAULT_MAX_EDITS : f.getClientNameMaxEdits();
+                                hits = snapshot.matchFileNameFuzzy(f.getClientName(), maxEdits);
+                                profile.stage("clientName", "filename trigram index + fuzzy term automaton, maxEdits=" + maxEdits, hits.length, SearchProfile.intArrayBytes(hits.length));
+                        } else {
+                                hits = snapshot.matchFileName(f.getClientName().toLowerCase());
+                                profile.stage("clientName", "filename trigram index", hits.length, SearchProfile.intArrayBytes(hits.length));
+                        }
+                }
+
+                // If an account number is provided, perform numeric-only matching.
+                // Extract digits from the provided filter; if there are no digits, skip account-number filtering.
+                // Filename digit projections were computed at load time and are indexed for substring lookup.
+                if (f.getAccountNumber() != null && !f.getAccountNumber().isBlank()) {
+                        String digitsOnly = CatalogSnapshot.digitsOf(f.getAccountNumber());
+                        if (!digitsOnly.isEmpty()) {
+                                int[] accHits = snapshot.matchFileDigits(digitsOnly);
+                                long bytes = SearchProfile.intArrayBytes(accHits.length);
+                                if (hits != null) {
+                                        hits = TrigramIndex.intersect(hits, accHits);
+                                        bytes += SearchProfile.intArrayBytes(hits.length);
+                                } else {
+                                        hits = accHits;
+                                }
+                                profile.stage("accountNumber", "filename digit 6-gram index", hits.length, bytes);
+                        } // else: query had no digits -> ignore accountNumber filter
+                }
+
+                // Size, dates, confidence, extensions and status: evaluated against the snapshot's primitive
+                // columns, only over the candidates the index lookups left standing
+                // Department visibility is one more bitset intersected here, so totals and pages are per caller
+                long[] visible = snapshot.visible(scope);
+                CatalogFilter columnFilter = CatalogFilter.compile(f, snapshot.columns(), departmentIds);
+                if (visible != null || !columnFilter.isEmpty()) {
+                        long[] bits;
+                        if (hits == null) {
+                                bits = visible != null ? visible : Bits.all(snapshot.size());
+                        } else {
+                                bits = Bits.of(hits, snapshot.size());
+                                if (visible != null) {
+                                        for (int w = 0; w < bits.length; w++) bits[w] &= visible[w];
+                                }
+                        }
+                        // Segments are word-aligned, so each one clears only its own words of the shared bitset
+                        executor.forEach(snapshot.size(), (from, to) -> {
+                                columnFilter.apply(snapshot.columns(), bits, from, to);
+                                return null;
+                        });
+                        hits = Bits.toOrdinals(bits);
+                        int segments = (snapshot.size() + executor.segmentSize() - 1) / executor.segmentSize();
+                        String strategy = (scope.restricted() ? "department bitset, " : visible != null ? "live-document bitset, " : "")
+                                        + (columnFilter.isEmpty() ? "no column predicates" : "column scan over " + Math.max(1, segments) + " segment(s)");
+                        long bytes = SearchProfile.bitsetBytes(snapshot.size()) * (visible != null && bits != visible ? 2 : 1)
+                                        + SearchProfile.intArrayBytes(hits.length);
+                        profile.stage("columns", strategy, hits.length, bytes);
+                }
+
+                // Full-text: conjunctive BM25 query over the OCR snippet; results are ranked by score
+                FullTextIndex.Result ranked = null;
+                if (f.getFullTextSearch() != null && !f.getFullTextSearch().isBlank()) {
+                        ranked = snapshot.matchFullText(f.getFullTextSearch());
+                        if (hits != null) ranked = ranked.retain(hits);
+                        hits = ranked.docs();
+                        // docs + scores, plus the unfiltered result when retain() narrowed it
+                        profile.stage("fullText", "BM25 inverted index", hits.length, 8L * ranked.size() + 32);
+                }
+                return new MatchSet(hits, ranked);
+        }
+
+        /** Ordinals at result positions [from, to) of the chosen ordering. */
+        private static int[] pageAt(CatalogSnapshot snapshot, int[] hits, FullTextIndex.Result ranked,
+                                    SortOrder.Key sortKey, boolean desc, int from, int to, SearchExecutor executor) {
+                if (from >= to) return new int[0];
+                if (sortKey != null) {
+                        // Precomputed permutation + bounded selection: no per-query sort of the matches
+                        return snapshot.sortOrder(sortKey).page(hits, desc, from, to, executor);
+                }
+                if (ranked != null) {
+                        // Bounded top-k over the scores: only the first `to` ranks are ever ordered
+                        return Arrays.copyOfRange(ranked.topKAfter(Float.POSITIVE_INFINITY, -1, to, executor), from, to);
+                }
+                int[] out = new int[to - from];
+                for (int j = from; j < to; j++) out[j - from] = hits == null ? j : hits[j];
+                return out;
+        }
+
+        /** How {@link #pageAt} / {@link #pageAfter} produce a page ending at result position {@code to}. */
+        private static String pageStrategy(CatalogSnapshot snapshot, int[] hits, FullTextIndex.Result ranked,
+                                           SortOrder.Key sortKey, boolean keyset, int to) {
+                if (sortKey != null) {
+                        if (keyset) return "keyset walk of " + sortKey + " permutation";
+                        int matched = hits == null ? snapshot.size() : hits.length;
+                        return snapshot.sortOrder(sortKey).walks(matched, to) ? "walk of " + sortKey + " permutation"
+                                        : "bounded heap over " + sortKey + " positions, k=" + to;
+                }
+                if (ranked != null) return keyset ? "top-k after cursor score" : "top-k by BM25 score, k=" + to;
+                return keyset ? "keyset slice in catalog order" : "slice in catalog order";
+        }
+
+        /** Rough bytes allocated by the page stage: the page itself plus any bitset or heap behind it. */
+        private static long pageBytes(CatalogSnapshot snapshot, int[] hits, FullTextIndex.Result ranked,
+                                      SortOrder.Key sortKey, boolean keyset, int to) {
+                long bytes = SearchProfile.intArrayBytes(to);
+                if (sortKey != null && hits != null && (keyset || snapshot.sortOrder(sortKey).walks(hits.length, to))) {
+                        bytes += SearchProfile.bitsetBytes(snapshot.size());
+                } else if (sortKey != null || ranked != null) {
+                        bytes += SearchProfile.intArrayBytes(to);
+                }
+                return bytes;
+        }
+
+        /** Up to {@code size} ordinals following the cursor's position in the chosen ordering. */
+        private static int[] pageAfter(CatalogSnapshot snapshot, int[] hits, FullTextIndex.Result ranked,
+                                       SortOrder.Key sortKey, boolean desc, SearchCursor cursor, int size, SearchExecutor executor) {
+                if (sortKey != null) {
+                        return snapshot.sortOrder(sortKey).pageAfter(hits, desc, (int) cursor.position(), size);
+                }
+                if (ranked != null) {
+                        return ranked.topKAfter(cursor.lastScore(), cursor.lastOrdinal(), size, executor);
+                }
+                int last = cursor.lastOrdinal();
+                if (hits == null) {
+                        int from = Math.min(last + 1, snapshot.size());
+                        int to = (int) Math.min((long) from + size, snapshot.size());
+                        int[] out = new int[to - from];
+                        for (int j = from; j < to; j++) out[j - from] = j;
+                        return out;
+                }
+                int from = Arrays.binarySearch(hits, last + 1);
+                if (from < 0) from = -from - 1;
+                return Arrays.copyOfRange(hits, from, Math.min(from + size, hits.length));
+        }
+
         /**
          * Find an indexed file by exact filename (case-insensitive) inside
          * fully_indexed or partially_indexed. Returns an Optional<Path> when found.
@@ -249,15 +787,10 @@ public class DocumentSearchService {
                 if (filename == null || filename.isBlank()) return Optional.empty();
                 String safeName = Paths.get(filename).getFileName().toString();
 
-                // Remote-only: search in loaded document list
-                synchronized (documents) {
-                        for (Document d : documents) {
-                                if (d.getFileName() != null && d.getFileName().equalsIgnoreCase(safeName)) {
-                                        // filePath may be a URL; wrap as Path using just filename for downstream logic.
-                                        try { return Optional.of(Paths.get(d.getFilePath())); } catch (Exception ignored) { return Optional.of(Paths.get(safeName)); }
-                                }
-                        }
-                }
-                return Optional.empty();
+                // Remote-only: hash lookup in the loaded catalog
+                Document d = catalog.get().findByName(safeName);
+                if (d == null) return Optional.empty();
+                // filePath may be a URL; wrap as Path using just filename for downstream logic.
+                try { return Optional.of(Paths.get(d.getFilePath())); } catch (Exception ignored) { return Optional.of(Paths.get(safeName)); }
         }
 }
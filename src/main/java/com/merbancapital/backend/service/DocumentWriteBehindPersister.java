@@ -0,0 +1,410 @@
+package com.merbancapital.backend.service;
+
+import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.search.CatalogColumns;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind copy of notified catalog entries into the {@code documents} table.
+ *
+ * {@link #enqueue} only records the row in memory and returns; a background thread writes the queue with JDBC
+ * batch statements once {@code batch-size} rows are pending or every {@code flush-ms}, so notify latency does not
+ * depend on the database. Rows are keyed by file name, so repeated updates of one file while it waits collapse
+ * into the latest. Each flush is one transaction: files the OCR service renamed are first renamed in place
+ * (keeping their {@code document_id}), or, when a row under the new name exists already, their old row is
+ * deleted so the file has one row; then every row is written with one {@code INSERT ... ON DUPLICATE KEY
+ * UPDATE} on the unique {@code file_name} key, which is safe to repeat after a failed batch or from several
+ * instances.
+ *
+ * The queue is bounded by {@code max-pending} distinct files. Callers check {@link #remainingCapacity} before
+ * accepting work and {@link #enqueue} reports {@link Outcome#FULL} when a row could not be queued, so a backlog
+ * turns into backpressure on the notify endpoints rather than lost rows. A failed flush puts its rows back,
+ * without overwriting newer ones, and is retried with exponential backoff; a batch rejected for its data is
+ * retried row by row so one bad row cannot block the queue. Shutdown flushes what is left. Rows without a
+ * client can only update an existing row ({@code client_id} is required); those that find none are logged and
+ * counted.
+ */
+@Service
+public class DocumentWriteBehindPersister implements MeterBinder {
+
+    /** What {@link #enqueue} did with a row. */
+    public enum Outcome {
+        QUEUED,
+        /** Persistence is switched off; nothing to do. */
+        DISABLED,
+        /** The queue is at {@code max-pending}; the row was not queued and the caller should push back. */
+        FULL
+    }
+
+    private static final int EXTENSION_LENGTH = 10; // documents.file_extension VARCHAR(10)
+
+    // Rename unless another row has the new name already; that row is kept and the old one dropped (DROP_RENAMED)
+    private static final String RENAME = "UPDATE documents renamed LEFT JOIN documents target "
+            + "ON target.file_name = ? AND target.document_id <> renamed.document_id "
+            + "SET renamed.file_name = ? WHERE renamed.file_name = ? AND target.document_id IS NULL";
+    private static final String DROP_RENAMED = "DELETE stale FROM documents stale JOIN documents target "
+            + "ON target.file_name = ? AND target.document_id <> stale.document_id WHERE stale.file_name = ?";
+    private static final String UPSERT = "INSERT INTO documents (file_name, file_path, date_modified, file_extension, "
+            + "index_status, client_id, department_id, fund_date, file_size, ocr_confidence, snippet) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) AS incoming ON DUPLICATE KEY UPDATE "
+            + "file_path = incoming.file_path, date_modified = incoming.date_modified, "
+            + "file_extension = incoming.file_extension, index_status = incoming.index_status, "
+            + "client_id = incoming.client_id, department_id = COALESCE(incoming.department_id, documents.department_id), "
+            + "fund_date = COALESCE(incoming.fund_date, documents.fund_date), "
+            + "file_size = COALESCE(incoming.file_size, documents.file_size), "
+            + "ocr_confidence = COALESCE(incoming.ocr_confidence, documents.ocr_confidence), "
+            + "snippet = COALESCE(incoming.snippet, documents.snippet)";
+    // Rows without a client: the upsert's insert branch would violate client_id NOT NULL
+    private static final String UPDATE = "UPDATE documents SET file_path = ?, date_modified = ?, file_extension = ?, "
+            + "index_status = ?, department_id = COALESCE(?, department_id), fund_date = COALESCE(?, fund_date), "
+            + "file_size = COALESCE(?, file_size), ocr_confidence = COALESCE(?, ocr_confidence), "
+            + "snippet = COALESCE(?, snippet) WHERE file_name = ?";
+
+    private final Logger log = LoggerFactory.getLogger(DocumentWriteBehindPersister.class);
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${documents.persist.enabled:true}")
+    private boolean enabled;
+    @Value("${documents.persist.batch-size:500}")
+    private int batchSize;
+    @Value("${documents.persist.flush-ms:1000}")
+    private long flushMs;
+    @Value("${documents.persist.max-pending:20000}")
+    private int maxPending;
+    @Value("${documents.persist.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    // New file name -> latest row for it, oldest first; guarded by itself
+    private final LinkedHashMap<String, Row> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private ScheduledExecutorService flusher;
+    private volatile long retryAtNanos;
+    private int failures; // consecutive, flusher thread only
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong rejectedFull = new AtomicLong();
+    private final AtomicLong skippedNoClient = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    /** One queued row: the catalog entry and the name the file had before the OCR service renamed it. */
+    private static final class Row {
+        final String originalFileName;
+        final Document document;
+
+        Row(String originalFileName, Document document) {
+            this.originalFileName = originalFileName;
+            this.document = document;
+        }
+
+        boolean renamed() {
+            return originalFileName != null && !originalFileName.equals(document.getFileName());
+        }
+    }
+
+    public DocumentWriteBehindPersister(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "documents-persist");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(50L, flushMs);
+        flusher.scheduleWithFixedDelay(this::flushSafely, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stop the timer and write whatever is still queued (one more attempt if the database is failing). */
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) return;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retryAtNanos = 0L;
+        while (pendingCount() > 0) {
+            if (!flush()) break;
+        }
+        int left = pendingCount();
+        if (left > 0) log.warn("Shutting down with {} document rows not persisted", left);
+    }
+
+    /**
+     * Queue a catalog entry for the {@code documents} table; never blocks on the database. A file already
+     * waiting is replaced in place and always fits; a new file is refused with {@link Outcome#FULL} once
+     * {@code max-pending} files wait.
+     */
+    public Outcome enqueue(String originalFileName, Document document) {
+        if (!enabled || document.getFileName() == null) return Outcome.DISABLED;
+        int size;
+        synchronized (pending) {
+            String key = document.getFileName();
+            boolean renamedPending = originalFileName != null && !originalFileName.equals(key) && pending.containsKey(originalFileName);
+            if (pending.size() >= maxPending && !pending.containsKey(key) && !renamedPending) {
+                rejectedFull.incrementAndGet();
+                return Outcome.FULL;
+            }
+            // A file renamed again before its row was written: one row, renamed from where the table has it
+            Row prior = renamedPending ? pending.remove(originalFileName) : null;
+            // Re-inserting moves the file to the back of the queue
+            Row same = pending.remove(key);
+            String original = originalFileName;
+            if (prior != null) original = prior.originalFileName;
+            else if (same != null && key.equals(originalFileName)) original = same.originalFileName;
+            pending.put(key, new Row(original, document));
+            size = pending.size();
+        }
+        if (size >= Math.max(1, batchSize) && flushQueued.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushQueued.set(false);
+                    flushSafely();
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down: stop() writes the queue
+                flushQueued.set(false);
+            }
+        }
+        return Outcome.QUEUED;
+    }
+
+    /** How many more files can be queued right now; unbounded when persistence is off. */
+    public int remainingCapacity() {
+        if (!enabled) return Integer.MAX_VALUE;
+        return Math.max(0, maxPending - pendingCount());
+    }
+
+    public int pendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            while (pendingCount() > 0 && System.nanoTime() - retryAtNanos >= 0) {
+                if (!flush()) return;
+            }
+        } catch (RuntimeException e) {
+            log.error("Document persister failed unexpectedly", e);
+        }
+    }
+
+    /** Write one batch; false when it failed and was put back for a later retry. */
+    private boolean flush() {
+        List<Row> batch = new ArrayList<>(Math.max(1, batchSize));
+        synchronized (pending) {
+            Iterator<Row> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < Math.max(1, batchSize)) {
+                batch.add(it.next());
+                it.remove();
+            }
+        }
+        if (batch.isEmpty()) return true;
+        long start = System.nanoTime();
+        try {
+            try {
+                writeInTransaction(batch);
+            } catch (DataIntegrityViolationException e) {
+                // The data, not the database, is at fault: write row by row so only the bad rows are given up
+                for (Row r : batch) {
+                    try {
+                        writeInTransaction(List.of(r));
+                    } catch (DataIntegrityViolationException rowError) {
+                        failedRows.incrementAndGet();
+                        log.error("Dropping document row {} (was {}): {}", r.document.getFileName(), r.originalFileName,
+                                rowError.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+            failures = 0;
+            log.debug("Persisted {} document rows in {} ms", batch.size(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (RuntimeException e) {
+            requeue(batch);
+            failedFlushes.incrementAndGet();
+            long backoff = Math.min(Math.max(1000L, maxBackoffMs), Math.max(50L, flushMs) << Math.min(failures, 16));
+            failures++;
+            retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+            log.warn("Could not persist {} document rows, retrying in {} ms: {}", batch.size(), backoff, e.getMessage());
+            return false;
+        }
+    }
+
+    /** Put a failed batch back in front of the queue, unless a newer row for the same file arrived meanwhile. */
+    private void requeue(List<Row> batch) {
+        synchronized (pending) {
+            LinkedHashMap<String, Row> merged = new LinkedHashMap<>();
+            for (Row r : batch) merged.put(r.document.getFileName(), r);
+            for (Map.Entry<String, Row> e : pending.entrySet()) merged.put(e.getKey(), e.getValue());
+            pending.clear();
+            pending.putAll(merged);
+        }
+    }
+
+    private void writeInTransaction(List<Row> batch) {
+        List<String> skipped = transactionTemplate.execute(status -> write(batch));
+        written.addAndGet(batch.size() - skipped.size());
+        if (!skipped.isEmpty()) {
+            skippedNoClient.addAndGet(skipped.size());
+            log.warn("{} document rows have no client and no existing row to update, not persisted: {}", skipped.size(),
+                    skipped.size() <= 10 ? skipped : skipped.subList(0, 10) + " ...");
+        }
+    }
+
+    /**
+     * Rename (or drop the old rows of files whose new name is taken), then upsert the batch. Returns the names of
+     * client-less rows that matched no existing row. Runs inside the flush transaction.
+     */
+    private List<String> write(List<Row> batch) {
+        List<Row> renamed = new ArrayList<>();
+        List<Row> upserts = new ArrayList<>(batch.size());
+        List<Row> updates = new ArrayList<>();
+        for (Row r : batch) {
+            if (r.renamed()) renamed.add(r);
+            if (r.document.getClientId() != null) upserts.add(r);
+            else updates.add(r);
+        }
+        if (!renamed.isEmpty()) {
+            jdbcTemplate.batchUpdate(RENAME, renamed, renamed.size(), (ps, r) -> {
+                ps.setString(1, r.document.getFileName());
+                ps.setString(2, r.document.getFileName());
+                ps.setString(3, r.originalFileName);
+            });
+            // Where the new name was taken the rename did nothing: the existing row is the one the upsert updates,
+            // and the row under the old name would otherwise stay behind as a stale duplicate
+            jdbcTemplate.batchUpdate(DROP_RENAMED, renamed, renamed.size(), (ps, r) -> {
+                ps.setString(1, r.document.getFileName());
+                ps.setString(2, r.originalFileName);
+            });
+        }
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT, upserts, upserts.size(), (ps, r) -> bindUpsert(ps, r.document));
+        }
+        List<String> skipped = new ArrayList<>();
+        if (!updates.isEmpty()) {
+            int[][] counts = jdbcTemplate.batchUpdate(UPDATE, updates, updates.size(), (ps, r) -> bindUpdate(ps, r.document));
+            for (int i = 0; i < updates.size(); i++) {
+                // A driver that does not report counts (SUCCESS_NO_INFO) leaves it unknown; only 0 is a known miss
+                if (counts[0][i] == 0) skipped.add(updates.get(i).document.getFileName());
+            }
+        }
+        return skipped;
+    }
+
+    private static void bindUpsert(PreparedStatement ps, Document d) throws SQLException {
+        ps.setString(1, d.getFileName());
+        ps.setString(2, filePath(d));
+        ps.setTimestamp(3, dateModified(d));
+        ps.setString(4, extension(d));
+        ps.setString(5, indexStatus(d));
+        setInt(ps, 6, d.getClientId());
+        setInt(ps, 7, d.getDepartmentId());
+        setDate(ps, 8, d);
+        setLong(ps, 9, d.getFileSize());
+        setInt(ps, 10, d.getOcrConfidence());
+        ps.setString(11, d.getSnippet());
+    }
+
+    private static void bindUpdate(PreparedStatement ps, Document d) throws SQLException {
+        ps.setString(1, filePath(d));
+        ps.setTimestamp(2, dateModified(d));
+        ps.setString(3, extension(d));
+        ps.setString(4, indexStatus(d));
+        setInt(ps, 5, d.getDepartmentId());
+        setDate(ps, 6, d);
+        setLong(ps, 7, d.getFileSize());
+        setInt(ps, 8, d.getOcrConfidence());
+        ps.setString(9, d.getSnippet());
+        ps.setString(10, d.getFileName());
+    }
+
+    private static String filePath(Document d) {
+        return d.getFilePath() == null ? "" : d.getFilePath();
+    }
+
+    private static Timestamp dateModified(Document d) {
+        return Timestamp.from(d.getDateModified() != null ? d.getDateModified() : Instant.now());
+    }
+
+    private static String extension(Document d) {
+        String extension = CatalogColumns.extensionOf(d);
+        if (extension == null) return "";
+        return extension.length() > EXTENSION_LENGTH ? extension.substring(0, EXTENSION_LENGTH) : extension;
+    }
+
+    private static String indexStatus(Document d) {
+        return d.getIndexStatus() == null ? Document.IndexStatus.Pending.name() : d.getIndexStatus().name();
+    }
+
+    private static void setDate(PreparedStatement ps, int index, Document d) throws SQLException {
+        if (d.getFundDate() == null) ps.setNull(index, Types.DATE);
+        else ps.setDate(index, Date.valueOf(d.getFundDate()));
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value == null) ps.setNull(index, Types.BIGINT);
+        else ps.setLong(index, value);
+    }
+
+    private static void setInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) ps.setNull(index, Types.INTEGER);
+        else ps.setInt(index, value);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("documents.persist.rows", written, AtomicLong::get)
+                .tag("result", "written").description("Document rows written by the write-behind persister").register(registry);
+        FunctionCounter.builder("documents.persist.rows", rejectedFull, AtomicLong::get)
+                .tag("result", "rejected_full").description("Document rows refused because the persist queue was full").register(registry);
+        FunctionCounter.builder("documents.persist.rows", skippedNoClient, AtomicLong::get)
+                .tag("result", "skipped_no_client").description("Client-less document rows with no existing row to update").register(registry);
+        FunctionCounter.builder("documents.persist.rows", failedRows, AtomicLong::get)
+                .tag("result", "failed").description("Document rows the database rejected (constraint violations)").register(registry);
+        FunctionCounter.builder("documents.persist.failures", failedFlushes, AtomicLong::get)
+                .description("Failed document persist batches (retried)").register(registry);
+        Gauge.builder("documents.persist.pending", this, DocumentWriteBehindPersister::pendingCount)
+                .description("Document rows waiting to be written").register(registry);
+    }
+}
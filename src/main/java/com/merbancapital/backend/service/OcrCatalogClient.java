@@ -0,0 +1,299 @@
+package com.merbancapital.backend.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.merbancapital.backend.model.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the file listing from the remote OCR service.
+ *
+ * The first successful call discovers which list endpoint the deployment exposes. Later calls can be
+ * conditional: the ETag / Last-Modified validators of the previous listing are sent back and a 304 means
+ * nothing changed. If the OCR service advertises delta support by returning an {@code X-Catalog-Cursor}
+ * header, the next call asks for {@code ?since=<cursor>} and accepts a
+ * {@code {"added": [...], "removed": ["name", ...], "cursor": "..."}} body holding only the changes.
+ */
+@Component
+public class OcrCatalogClient {
+
+    static final String CURSOR_HEADER = "X-Catalog-Cursor";
+
+    // Try a list of common list endpoints in case the deployed OCR uses a different path
+    private static final String[] CANDIDATES = {
+            "api/files/list",
+            "files/list",
+            "list",
+            "api/files",
+            "files"
+    };
+
+    private final Logger log = LoggerFactory.getLogger(OcrCatalogClient.class);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Value("${ocr.api.url:}")
+    private String ocrApiUrl;
+    @Value("${ocr.api.token:}")
+    private String ocrApiToken;
+
+    // Remembered from the last successful listing
+    private volatile String listUrl;
+    private volatile String etag;
+    private volatile String lastModified;
+    private volatile String deltaCursor;
+    // Entries parsed so far by the listing in flight (or the last one); read by the warm-up health check
+    private final AtomicInteger entriesRead = new AtomicInteger();
+
+    public enum Kind { FULL, DELTA, NOT_MODIFIED, FAILED }
+
+    /** Result of one listing call. */
+    public static final class Listing {
+        private final Kind kind;
+        private final List<Document> added;
+        private final Set<String> removed;
+
+        Listing(Kind kind, List<Document> added, Set<String> removed) {
+            this.kind = kind;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        /** FULL: every entry of the catalog. DELTA: new or changed entries. */
+        public List<Document> added() {
+            return added;
+        }
+
+        /** DELTA only: file names that disappeared. */
+        public Set<String> removed() {
+            return removed;
+        }
+    }
+
+    /** Unconditional full listing; resets validators and delta cursor. */
+    public Listing fetchFull() {
+        etag = null;
+        lastModified = null;
+        deltaCursor = null;
+        return fetch(false);
+    }
+
+    /** Conditional listing: NOT_MODIFIED, a DELTA when the server supports it, otherwise FULL. */
+    public Listing fetchChanges() {
+        return fetch(true);
+    }
+
+    private Listing fetch(boolean conditional) {
+        if (ocrApiUrl == null || ocrApiUrl.isBlank()) return failed();
+        RestTemplate rt = new RestTemplate();
+        HttpHeaders headers = new HttpHeaders();
+        if (ocrApiToken != null && !ocrApiToken.isBlank()) {
+            headers.set("Authorization", "Bearer " + ocrApiToken);
+        }
+        if (conditional) {
+            if (etag != null) headers.set(HttpHeaders.IF_NONE_MATCH, etag);
+            if (lastModified != null) headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        List<String> urls = new ArrayList<>();
+        if (listUrl != null) urls.add(listUrl);
+        for (String c : CANDIDATES) {
+            String url = ocrApiUrl.endsWith("/") ? ocrApiUrl + c : ocrApiUrl + "/" + c;
+            if (!url.equals(listUrl)) urls.add(url);
+        }
+
+        for (String url : urls) {
+            String requestUrl = url;
+            if (conditional && deltaCursor != null && url.equals(listUrl)) {
+                requestUrl = UriComponentsBuilder.fromHttpUrl(url).queryParam("since", deltaCursor).toUriString();
+            }
+            try {
+                // Stream the body straight through the parser; the raw response is never buffered
+                Listing listing = rt.execute(requestUrl, HttpMethod.GET,
+                        request -> request.getHeaders().putAll(headers),
+                        response -> read(url, response));
+                if (listing != null) return listing;
+            } catch (HttpClientErrorException.NotFound nf) {
+                // endpoint not present on server, try next
+            } catch (Exception e) {
+                log.warn("Error calling {} : {}", url, e.getMessage());
+            }
+        }
+        log.error("No remote OCR list endpoint responded successfully among candidates.");
+        return failed();
+    }
+
+    /** Listing for a response, or null when the endpoint answered with something other than 2xx/304. */
+    private Listing read(String url, ClientHttpResponse response) throws IOException {
+        HttpStatusCode status = response.getStatusCode();
+        if (status.value() == HttpStatus.NOT_MODIFIED.value()) {
+            listUrl = url;
+            return new Listing(Kind.NOT_MODIFIED, List.of(), Set.of());
+        }
+        if (!status.is2xxSuccessful()) {
+            log.info("Tried {} -> status={}", url, status);
+            return null;
+        }
+        listUrl = url;
+        Listing listing;
+        try (InputStream body = response.getBody()) {
+            listing = parse(body);
+        }
+        if (listing.kind() != Kind.FAILED) {
+            HttpHeaders h = response.getHeaders();
+            etag = h.getETag();
+            lastModified = h.getFirst(HttpHeaders.LAST_MODIFIED);
+            String cursor = h.getFirst(CURSOR_HEADER);
+            if (cursor != null && !cursor.isBlank()) deltaCursor = cursor;
+        }
+        return listing;
+    }
+
+    /**
+     * Single pass over the body: a top-level array is a full listing, an object with added/removed is a delta.
+     * Entries are turned into Documents as they are read.
+     */
+    private Listing parse(InputStream body) {
+        entriesRead.set(0);
+        try (JsonParser p = JSON.createParser(body)) {
+            JsonToken root = p.nextToken();
+            if (root == null) return failed();
+            if (root == JsonToken.START_ARRAY) {
+                List<Document> docs = new ArrayList<>();
+                readEntries(p, docs);
+                return new Listing(Kind.FULL, docs, Set.of());
+            }
+            if (root == JsonToken.START_OBJECT) {
+                List<Document> added = new ArrayList<>();
+                Set<String> removed = new LinkedHashSet<>();
+                boolean delta = false;
+                String cursor = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken t = p.nextToken();
+                    if ("added".equals(field) && t == JsonToken.START_ARRAY) {
+                        delta = true;
+                        readEntries(p, added);
+                    } else if ("removed".equals(field) && t == JsonToken.START_ARRAY) {
+                        delta = true;
+                        while (p.nextToken() != JsonToken.END_ARRAY) {
+                            if (p.currentToken().isScalarValue()) removed.add(p.getValueAsString());
+                            else p.skipChildren();
+                        }
+                    } else if ("cursor".equals(field) && t != JsonToken.VALUE_NULL && t.isScalarValue()) {
+                        cursor = p.getValueAsString();
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                if (delta) {
+                    if (cursor != null) deltaCursor = cursor;
+                    return new Listing(Kind.DELTA, added, removed);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Could not parse remote list response: {}", e.getMessage());
+            return failed();
+        }
+        log.error("Unrecognised remote list response shape");
+        return failed();
+    }
+
+    /**
+     * Reads array entries up to the closing bracket. Entries are either plain file names or objects with
+     * filename/fileName/name, url and snippet/text.
+     */
+    private void readEntries(JsonParser p, List<Document> out) throws IOException {
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t == null) throw new IOException("Unexpected end of listing");
+            String name = null;
+            String url = null;
+            String text = null;
+            if (t == JsonToken.VALUE_STRING) {
+                name = p.getText();
+            } else if (t == JsonToken.START_OBJECT) {
+                String filename = null, fileName = null, plainName = null, snippet = null, rawText = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken v = p.nextToken();
+                    if (!v.isScalarValue() || v == JsonToken.VALUE_NULL) {
+                        p.skipChildren();
+                        continue;
+                    }
+                    switch (field) {
+                        case "filename": filename = p.getValueAsString(); break;
+                        case "fileName": fileName = p.getValueAsString(); break;
+                        case "name": plainName = p.getValueAsString(); break;
+                        case "url": url = p.getValueAsString(); break;
+                        case "snippet": snippet = p.getValueAsString(); break;
+                        case "text": rawText = p.getValueAsString(); break;
+                        default: break;
+                    }
+                }
+                name = plainName != null ? plainName : fileName != null ? fileName : filename;
+                // OCR text, when the listing carries it, feeds the full-text index
+                text = snippet != null ? snippet : rawText;
+                if (name == null && url != null) {
+                    // attempt to extract name from url
+                    try { name = Paths.get(new URI(url).getPath()).getFileName().toString(); } catch (Exception ignore) {}
+                }
+            } else {
+                p.skipChildren();
+            }
+            if (name == null) continue;
+            Document d = new Document();
+            d.setFileName(name);
+            d.setFileSize(0L);
+            d.setDateModified(Instant.now());
+            if (text != null) d.setSnippet(text);
+            d.setFilePath(url != null && !url.isBlank() ? url : downloadUrl(name));
+            out.add(d);
+            entriesRead.incrementAndGet();
+        }
+    }
+
+    /** Entries parsed so far by the current (or most recent) listing. */
+    public int entriesRead() {
+        return entriesRead.get();
+    }
+
+    /** Download URL the OCR service serves a file under. */
+    public String downloadUrl(String name) {
+        String encoded = URLEncoder.encode(name, StandardCharsets.UTF_8).replace("+", "%20");
+        String root = ocrApiUrl.endsWith("/") ? ocrApiUrl : ocrApiUrl + "/";
+        return root + "api/files/" + encoded;
+    }
+
+    private static Listing failed() {
+        return new Listing(Kind.FAILED, List.of(), Set.of());
+    }
+}
@@ -0,0 +1,260 @@
+package com.merbancapital.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.merbancapital.backend.dto.OcrBulkNotifyResponse;
+import com.merbancapital.backend.dto.OcrMetadata;
+import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.search.CatalogSnapshot;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Applies OCR notifications ({@code POST /api/ocr/notify} and its bulk variant) to the live catalog.
+ *
+ * A notification says the OCR service renamed {@code originalFileName} to {@code newFileName} for a client and
+ * how far indexing got. The renamed file replaces the original entry (and any entry already carrying the new
+ * name) through {@link DocumentSearchService#applyChanges}, so it is searchable as soon as the request returns,
+ * without waiting for the next catalog sync or rebuilding the indexes. A bulk request is validated record by
+ * record as it streams in and then applied as one catalog change, so the tail index is rebuilt once per batch.
+ * Applied entries are also queued for the {@code documents} table through {@link DocumentWriteBehindPersister}.
+ * Clients are resolved from {@link ClientAutocompleteService}'s in-memory maps, so applying never queries the
+ * database.
+ */
+@Service
+public class OcrNotificationService {
+
+    static final String APPLIED = "applied";
+    static final String SUPERSEDED = "superseded";
+    static final String REJECTED = "rejected";
+
+    private final Logger log = LoggerFactory.getLogger(OcrNotificationService.class);
+    private final DocumentSearchService documentSearchService;
+    private final OcrCatalogClient catalogClient;
+    private final ClientAutocompleteService clients;
+    private final Validator validator;
+    private final DocumentWriteBehindPersister persister;
+
+    // Records accepted per bulk request; reading stops (complete=false) at the limit
+    @Value("${ocr.notify.bulk.max-records:50000}")
+    private int maxBulkRecords;
+
+    public OcrNotificationService(DocumentSearchService documentSearchService, OcrCatalogClient catalogClient,
+                                  ClientAutocompleteService clients, Validator validator,
+                                  DocumentWriteBehindPersister persister) {
+        this.documentSearchService = documentSearchService;
+        this.catalogClient = catalogClient;
+        this.clients = clients;
+        this.validator = validator;
+        this.persister = persister;
+    }
+
+    /**
+     * Apply one validated notification; returns the catalog snapshot that holds it.
+     *
+     * @throws PersistBacklogException when the documents table is too far behind to take the row; the
+     *                                 notification can be sent again as it is
+     */
+    public CatalogSnapshot apply(OcrMetadata meta) {
+        if (persister.remainingCapacity() == 0) throw new PersistBacklogException();
+        BitSet unpersisted = new BitSet();
+        CatalogSnapshot snapshot = applyAll(List.of(meta), new BitSet(), unpersisted);
+        // The queue filled up since the check; the catalog change is repeated harmlessly when the caller resends
+        if (unpersisted.get(0)) throw new PersistBacklogException();
+        return snapshot;
+    }
+
+    /**
+     * Read a JSON array or a stream of concatenated / newline-delimited JSON objects of {@link OcrMetadata},
+     * validating each record as it is read, then apply the valid ones as a single catalog change. Reading stops
+     * at the first malformed record, at the batch limit, or once the documents table's write queue has no room
+     * for more; the records before it are still applied and the response says where to resume and why. Results
+     * hold exactly one item per record read.
+     *
+     * @throws PersistBacklogException when the write queue has no room at all; nothing is read or applied
+     */
+    public OcrBulkNotifyResponse applyBulk(InputStream in, ObjectMapper mapper) throws IOException {
+        int room = persister.remainingCapacity();
+        if (room == 0) throw new PersistBacklogException();
+        List<OcrBulkNotifyResponse.Item> results = new ArrayList<>();
+        List<OcrMetadata> accepted = new ArrayList<>();
+        List<OcrBulkNotifyResponse.Item> acceptedItems = new ArrayList<>();
+        String stopReason = null;
+        int index = 0;
+        int rejected = 0;
+        try (MappingIterator<OcrMetadata> records = mapper.readerFor(OcrMetadata.class).readValues(in)) {
+            while (records.hasNextValue()) {
+                if (index >= Math.max(1, maxBulkRecords)) {
+                    stopReason = "Batch limit of " + maxBulkRecords + " records reached";
+                    break;
+                }
+                if (accepted.size() >= room) {
+                    stopReason = "Documents write queue is full";
+                    break;
+                }
+                OcrMetadata meta = records.nextValue();
+                List<String> errors = new ArrayList<>();
+                for (ConstraintViolation<OcrMetadata> v : validator.validate(meta)) errors.add(v.getPropertyPath() + ": " + v.getMessage());
+                OcrBulkNotifyResponse.Item result = item(index++, meta, errors.isEmpty() ? APPLIED : REJECTED, errors.isEmpty() ? null : errors);
+                results.add(result);
+                if (errors.isEmpty()) {
+                    accepted.add(meta);
+                    acceptedItems.add(result);
+                } else {
+                    rejected++;
+                }
+            }
+        } catch (JsonProcessingException e) {
+            stopReason = "Malformed record: " + e.getOriginalMessage();
+        }
+
+        BitSet superseded = new BitSet(accepted.size());
+        BitSet unpersisted = new BitSet(accepted.size());
+        long generation = 0;
+        if (!accepted.isEmpty()) {
+            generation = applyAll(accepted, superseded, unpersisted).generation();
+            for (int i = 0; i < acceptedItems.size(); i++) {
+                OcrBulkNotifyResponse.Item result = acceptedItems.get(i);
+                if (superseded.get(i)) result.setStatus(SUPERSEDED);
+                else result.setPersisted(!unpersisted.get(i));
+            }
+        }
+        return OcrBulkNotifyResponse.builder()
+                .received(index)
+                .applied(accepted.size() - superseded.cardinality())
+                .superseded(superseded.cardinality())
+                .notPersisted(unpersisted.cardinality())
+                .rejected(rejected)
+                .complete(stopReason == null)
+                .resumeFrom(stopReason == null ? null : index)
+                .stopReason(stopReason)
+                .generation(generation)
+                .results(results)
+                .build();
+    }
+
+    private static OcrBulkNotifyResponse.Item item(int index, OcrMetadata meta, String status, List<String> errors) {
+        return OcrBulkNotifyResponse.Item.builder()
+                .index(index)
+                .originalFileName(meta == null ? null : meta.getOriginalFileName())
+                .newFileName(meta == null ? null : meta.getNewFileName())
+                .status(status)
+                .errors(errors)
+                .build();
+    }
+
+    /**
+     * Apply validated notifications, in order, as one catalog change. When a file is named again later in the
+     * batch (renamed once more, or a newer status for the same name) the later record wins and the earlier one is
+     * marked in {@code superseded}. Records whose row the documents write queue refused are marked in
+     * {@code unpersisted}.
+     */
+    private CatalogSnapshot applyAll(List<OcrMetadata> batch, BitSet superseded, BitSet unpersisted) {
+        // New file name -> position of the latest record for it, in the order the entries will be added
+        Map<String, Integer> latest = new LinkedHashMap<>();
+        Map<Integer, Document> documents = new HashMap<>();
+        // Position -> the name the file had before this batch, for renaming its row in the documents table
+        Map<Integer, String> originals = new HashMap<>();
+        // Planned against the catalog the change is applied to, under its write lock
+        CatalogSnapshot snapshot = documentSearchService.applyChanges((current, removed, adding) -> {
+            for (int i = 0; i < batch.size(); i++) {
+                OcrMetadata meta = batch.get(i);
+                String original = meta.getOriginalFileName().trim();
+                String name = meta.getNewFileName().trim();
+                Document previous = null;
+                String firstName = original;
+                for (String replaced : new String[]{original, name}) {
+                    Integer earlier = latest.remove(replaced);
+                    if (earlier == null) continue;
+                    superseded.set(earlier);
+                    Document d = documents.remove(earlier);
+                    String o = originals.remove(earlier);
+                    if (previous == null) {
+                        previous = d;
+                        firstName = o;
+                    }
+                }
+                if (previous == null) previous = current.findByName(name);
+                if (previous == null) previous = current.findByName(original);
+                documents.put(i, toDocument(meta, previous));
+                originals.put(i, firstName);
+                latest.put(name, i);
+                if (!original.equals(name)) removed.add(original);
+            }
+            for (int i : latest.values()) adding.add(documents.get(i));
+        });
+        List<Document> added = new ArrayList<>(latest.size());
+        for (int i : latest.values()) added.add(documents.get(i));
+
+        // The documents table follows behind; queuing never waits on the database
+        for (int i : latest.values()) {
+            if (persister.enqueue(originals.get(i), documents.get(i)) == DocumentWriteBehindPersister.Outcome.FULL) unpersisted.set(i);
+        }
+        if (batch.size() == 1) {
+            Document d = added.get(0);
+            log.info("OCR notify: {} -> {} ({}), client {}, catalog generation {}", batch.get(0).getOriginalFileName(),
+                    d.getFileName(), d.getIndexStatus(), d.getClientId(), snapshot.generation());
+        } else {
+            log.info("OCR notify batch: {} records, {} entries added, {} superseded, catalog generation {}", batch.size(),
+                    added.size(), superseded.cardinality(), snapshot.generation());
+        }
+        if (!unpersisted.isEmpty()) {
+            log.warn("OCR notify: documents write queue full, {} entries not persisted", unpersisted.cardinality());
+        }
+        return snapshot;
+    }
+
+    /**
+     * The catalog entry for a notification. Values the OCR service does not send (text, size, dates, department)
+     * carry over from {@code previous}, the entry known so far under the new or the original name, if any.
+     */
+    Document toDocument(OcrMetadata meta, Document previous) {
+        String name = meta.getNewFileName().trim();
+        Document d = new Document();
+        d.setFileName(name);
+        d.setFilePath(catalogClient.downloadUrl(name));
+        d.setDateModified(Instant.now());
+        d.setFileSize(previous != null && previous.getFileSize() != null ? previous.getFileSize() : 0L);
+        if (previous != null) {
+            d.setSnippet(previous.getSnippet());
+            d.setFundDate(previous.getFundDate());
+            d.setOcrConfidence(previous.getOcrConfidence());
+            d.setDepartmentId(previous.getDepartmentId());
+            d.setClientId(previous.getClientId());
+        }
+        Integer clientId = clients.resolve(meta.getClientName(), meta.getAccountNumber());
+        if (clientId != null) d.setClientId(clientId);
+        d.setIndexStatus(indexStatus(meta.getStatus()));
+        return d;
+    }
+
+    /** FULLY_INDEXED, PARTIAL_INDEXED and FAILED as the catalog's index status. */
+    static Document.IndexStatus indexStatus(String status) {
+        switch (status.trim().toUpperCase(Locale.ROOT)) {
+            case "FULLY_INDEXED":
+                return Document.IndexStatus.Indexed;
+            case "PARTIAL_INDEXED":
+                return Document.IndexStatus.Pending;
+            case "FAILED":
+                return Document.IndexStatus.Error;
+            default:
+                throw new IllegalArgumentException("Unknown OCR status: " + status);
+        }
+    }
+}
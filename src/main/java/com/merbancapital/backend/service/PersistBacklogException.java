@@ -0,0 +1,12 @@
+package com.merbancapital.backend.service;
+
+/**
+ * The {@code documents} table's write queue ({@link DocumentWriteBehindPersister}) is full, so a notification
+ * is refused rather than applied without its row. The caller should retry later.
+ */
+public class PersistBacklogException extends RuntimeException {
+
+    public PersistBacklogException() {
+        super("Documents write queue is full; retry later");
+    }
+}
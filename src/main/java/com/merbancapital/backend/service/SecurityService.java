@@ -1,13 +1,20 @@
 package com.merbancapital.backend.service;
 
 import com.merbancapital.backend.model.Document;
+import com.merbancapital.backend.search.SearchScope;
 import com.merbancapital.backend.security.UserPrincipal;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 @Component("securityService")
 public class SecurityService {
 
+    // Whether department users also see catalog documents that carry no department at all. Off by default, as in
+    // canAccessDocument: listing and notify entries have no department, so they stay admin-only
+    @Value("${search.department-scope.unassigned-visible:false}")
+    private boolean unassignedVisible;
+
     /**
      * Returns true if the currently authenticated user can access/download the given document.
      */
@@ -30,4 +37,27 @@ public class SecurityService {
         Long userDeptId = principal.getDepartmentId();
         return userDeptId != null && userDeptId.equals(doc.getDepartmentId());
     }
+
+    /** True when the caller is authenticated with the admin role. */
+    public boolean isAdmin(Authentication authentication) {
+        return authentication != null && authentication.isAuthenticated()
+                && authentication.getPrincipal() instanceof UserPrincipal principal
+                && principal.getRoles().contains("ROLE_ADMIN");
+    }
+
+    /**
+     * The part of the catalog the current user may search: everything for admins, otherwise their own
+     * department's documents.
+     */
+    public SearchScope searchScopeOf(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()
+                || !(authentication.getPrincipal() instanceof UserPrincipal principal)) {
+            return SearchScope.department(null, false);
+        }
+        if (principal.getRoles().contains("ROLE_ADMIN")) {
+            return SearchScope.all();
+        }
+        Long deptId = principal.getDepartmentId();
+        return SearchScope.department(deptId == null ? null : deptId.intValue(), unassignedVisible);
+    }
 }
@@ -0,0 +1,131 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CatalogFileTest {
+
+    private static final String[] WORDS = {"fund", "notice", "capital", "call", "statement", "quarterly", "report", "wire"};
+
+    private final SearchExecutor executor = new SearchExecutor(1, 1024, 1);
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void restoredSnapshotAnswersLikeTheOneWritten() throws IOException {
+        CatalogSnapshot written = CatalogSnapshot.build(7L, documents(new Random(3), 2000));
+        Path file = dir.resolve("catalog.bin");
+        CatalogFile.write(file, written);
+
+        CatalogFile.Contents contents = CatalogFile.read(file);
+        assertThat(contents.generation()).isEqualTo(7L);
+        for (CatalogStorage storage : List.of(CatalogStorage.heap(), CatalogStorage.of("direct", null),
+                CatalogStorage.of("mapped", dir.toString()))) {
+            assertSameAnswers(contents.snapshot(8L, storage), written);
+        }
+    }
+
+    @Test
+    void snapshotWithChangesIsWrittenAsAFullBuild() throws IOException {
+        Random random = new Random(5);
+        CatalogSnapshot base = CatalogSnapshot.build(1L, documents(random, 500));
+        CatalogSnapshot changed = base.withChanges(2L, List.of(base.fileName(3), base.fileName(40)),
+                documents(random, 50), new ArrayList<>());
+        Path file = dir.resolve("catalog.bin");
+        CatalogFile.write(file, changed);
+
+        CatalogSnapshot restored = CatalogFile.read(file).snapshot(3L, CatalogStorage.heap());
+
+        assertThat(restored.size()).isEqualTo(changed.liveCount());
+        assertThat(restored.tailSize()).isZero();
+        assertSameAnswers(restored, CatalogSnapshot.build(2L, new ArrayList<>(changed.documents())));
+    }
+
+    @Test
+    void damagedFileIsRejected() throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        CatalogFile.write(file, CatalogSnapshot.build(1L, documents(new Random(9), 100)));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x10;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> CatalogFile.read(file)).isInstanceOf(IOException.class);
+    }
+
+    private void assertSameAnswers(CatalogSnapshot restored, CatalogSnapshot expected) {
+        int n = expected.size();
+        assertThat(restored.size()).isEqualTo(n);
+        for (int i = 0; i < n; i++) {
+            assertThat(restored.document(i)).usingRecursiveComparison().isEqualTo(expected.document(i));
+        }
+        for (String q : new String[]{"report", "_1", "ab", "statement_12"}) {
+            assertThat(restored.matchFileName(q)).containsExactly(expected.matchFileName(q));
+        }
+        assertThat(restored.matchFileNameFuzzy("quartrly", 2)).containsExactly(expected.matchFileNameFuzzy("quartrly", 2));
+        assertThat(restored.matchFileDigits("12")).containsExactly(expected.matchFileDigits("12"));
+        assertThat(restored.matchFileDigits("4500123")).containsExactly(expected.matchFileDigits("4500123"));
+        assertThat(restored.findByName(expected.fileName(17).toUpperCase())).usingRecursiveComparison()
+                .isEqualTo(expected.findByName(expected.fileName(17)));
+
+        FullTextIndex.Result want = expected.matchFullText("capital call");
+        FullTextIndex.Result got = restored.matchFullText("capital call");
+        assertThat(got.docs()).containsExactly(want.docs());
+        for (int i = 0; i < want.size(); i++) assertThat(got.score(i)).isEqualTo(want.score(i));
+
+        int[] all = IntStream.range(0, n).toArray();
+        for (SortOrder.Key key : SortOrder.Key.values()) {
+            for (boolean desc : new boolean[]{false, true}) {
+                assertThat(restored.sortOrder(key).page(all, desc, 0, n))
+                        .containsExactly(expected.sortOrder(key).page(all, desc, 0, n));
+            }
+        }
+        for (Facet facet : Facet.values()) {
+            assertThat(FacetCounts.of(restored.columns(), null, executor).get(facet))
+                    .containsExactlyEntriesOf(FacetCounts.of(expected.columns(), null, executor).get(facet));
+        }
+    }
+
+    private static List<Document> documents(Random random, int n) {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            Document d = CatalogSnapshotTest.doc(word + "_" + i + "_450012" + random.nextInt(100) + ".pdf",
+                    random.nextInt(4) == 0 ? null : random.nextInt(4));
+            if (i % 11 == 0) d.setFilePath("/archive/" + i + "/scan.pdf");
+            if (i % 13 == 0) d.setDocumentId(i);
+            if (random.nextBoolean()) d.setFileSize((long) random.nextInt(100_000));
+            if (random.nextBoolean()) d.setDateModified(Instant.ofEpochMilli(1_700_000_000_000L + random.nextInt(1_000_000)));
+            if (random.nextBoolean()) d.setFundDate(LocalDate.of(2020, 1, 1).plusDays(random.nextInt(1500)));
+            if (random.nextInt(4) > 0) d.setOcrConfidence(random.nextInt(101));
+            if (random.nextBoolean()) d.setIndexStatus(Document.IndexStatus.values()[random.nextInt(Document.IndexStatus.values().length)]);
+            d.setClientId(random.nextInt(20));
+            d.setFileExtension(random.nextBoolean() ? "pdf" : random.nextBoolean() ? ".TIF" : null);
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 8; w++) text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            d.setSnippet(i % 17 == 0 ? null : text.toString());
+            docs.add(d);
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,243 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.dto.SearchFilters;
+import com.merbancapital.backend.model.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogSnapshotTest {
+
+    @Test
+    void unrestrictedScopeSeesEverything() {
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, catalog());
+
+        assertThat(snapshot.visible(SearchScope.all())).isNull();
+    }
+
+    @Test
+    void departmentScopeSeesOnlyItsOwnDepartment() {
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, catalog());
+
+        assertThat(ordinals(snapshot.visible(SearchScope.department(1, false)))).containsExactly(0, 3);
+        assertThat(ordinals(snapshot.visible(SearchScope.department(2, false)))).containsExactly(1);
+    }
+
+    @Test
+    void unassignedDocumentsOnlyWhenAskedFor() {
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, catalog());
+
+        assertThat(ordinals(snapshot.visible(SearchScope.department(2, true)))).containsExactly(1, 2, 4);
+    }
+
+    @Test
+    void callerWithoutDepartmentSeesNothingAssigned() {
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, catalog());
+
+        assertThat(ordinals(snapshot.visible(SearchScope.department(null, false)))).isEmpty();
+        assertThat(ordinals(snapshot.visible(SearchScope.department(99, false)))).isEmpty();
+    }
+
+    @Test
+    void scopeIsIntersectedWithMatches() {
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, catalog());
+        long[] visible = snapshot.visible(SearchScope.department(1, false));
+
+        // "acme" matches ordinals 0, 2 and 3; department 1 holds 0 and 3
+        int[] hits = snapshot.matchFileName("acme");
+        assertThat(hits).containsExactly(0, 2, 3);
+        assertThat(Arrays.stream(hits).filter(o -> Bits.get(visible, o))).containsExactly(0, 3);
+    }
+
+    @Test
+    void fuzzyNameMatchIncludesEveryExactMatch() {
+        List<Document> docs = new ArrayList<>(List.of(doc("KwameMensah.pdf", 1), doc("Mensah12345678.pdf", 1),
+                doc("Kwame_Mensha_statement.pdf", 2), doc("Ama_Owusu.pdf", 2)));
+        CatalogSnapshot parent = CatalogSnapshot.build(1L, docs);
+        CatalogSnapshot snapshot = parent.withChanges(2L, List.of(), List.of(doc("Report_MENSAH2024.pdf", 3)), new ArrayList<>());
+
+        for (String query : new String[]{"Mensah", "mensah1234", "Owusu", "Kwame"}) {
+            assertThat(snapshot.matchFileNameFuzzy(query, 2)).contains(snapshot.matchFileName(query.toLowerCase()));
+        }
+        // Substring hits, the transposed token, and the tail entry
+        assertThat(snapshot.matchFileNameFuzzy("Mensah", 2)).containsExactly(0, 1, 2, 4);
+    }
+
+    @Test
+    void withChangesAppendsAndMarksRemoved() {
+        CatalogSnapshot parent = CatalogSnapshot.build(1L, catalog());
+        List<Document> removed = new ArrayList<>();
+
+        CatalogSnapshot child = parent.withChanges(2L, List.of("Globex_87654321_report.pdf"),
+                List.of(doc("ACME_99990000_invoice.pdf", 2)), removed);
+
+        assertThat(removed).extracting(Document::getFileName).containsExactly("Globex_87654321_report.pdf");
+        assertThat(child.size()).isEqualTo(6);
+        assertThat(child.liveCount()).isEqualTo(5);
+        assertThat(child.tailSize()).isEqualTo(1);
+        assertThat(child.isLive(1)).isFalse();
+        assertThat(child.documents()).extracting(Document::getFileName).containsExactly("ACME_12345678_statement.pdf",
+                "acme_fund_notice.docx", "ACME_12345678_letter.pdf", "Initech_55500011_form.pdf", "ACME_99990000_invoice.pdf");
+        assertThat(child.matchFileName("acme")).containsExactly(0, 2, 3, 5);
+        assertThat(child.matchFileDigits("9999")).containsExactly(5);
+        assertThat(child.findByName("acme_99990000_INVOICE.pdf").getDepartmentId()).isEqualTo(2);
+        assertThat(child.findByName("Globex_87654321_report.pdf")).isNull();
+        // The parent is untouched
+        assertThat(parent.size()).isEqualTo(5);
+        assertThat(parent.findByName("Globex_87654321_report.pdf")).isNotNull();
+    }
+
+    @Test
+    void addingAnExistingNameReplacesIt() {
+        CatalogSnapshot parent = CatalogSnapshot.build(1L, catalog());
+        List<Document> removed = new ArrayList<>();
+        Document replacement = doc("Initech_55500011_form.pdf", 1);
+        replacement.setFileSize(42L);
+
+        CatalogSnapshot child = parent.withChanges(2L, List.of(), List.of(replacement), removed);
+
+        assertThat(removed).extracting(Document::getFileName).containsExactly("Initech_55500011_form.pdf");
+        assertThat(child.liveCount()).isEqualTo(5);
+        assertThat(child.isLive(4)).isFalse();
+        assertThat(child.findByName("Initech_55500011_form.pdf").getFileSize()).isEqualTo(42L);
+    }
+
+    @Test
+    void removedEntriesAreNeverVisible() {
+        CatalogSnapshot child = CatalogSnapshot.build(1L, catalog())
+                .withChanges(2L, List.of("ACME_12345678_statement.pdf"), List.of(), new ArrayList<>());
+
+        assertThat(ordinals(child.visible(SearchScope.all()))).containsExactly(1, 2, 3, 4);
+        assertThat(ordinals(child.visible(SearchScope.department(1, true)))).containsExactly(2, 3, 4);
+    }
+
+    @Test
+    void tailEntriesFollowTheirDepartment() {
+        CatalogSnapshot child = CatalogSnapshot.build(1L, catalog())
+                .withChanges(2L, List.of(), List.of(doc("Globex_1_a.pdf", 2), doc("Globex_2_b.pdf", null)), new ArrayList<>())
+                .withChanges(3L, List.of(), List.of(doc("Globex_3_c.pdf", 1)), new ArrayList<>());
+
+        assertThat(child.tailSize()).isEqualTo(3);
+        assertThat(ordinals(child.visible(SearchScope.department(2, false)))).containsExactly(1, 5);
+        assertThat(ordinals(child.visible(SearchScope.department(2, true)))).containsExactly(1, 2, 4, 5, 6);
+        assertThat(ordinals(child.visible(SearchScope.department(1, false)))).containsExactly(0, 3, 7);
+        assertThat(ordinals(child.visible(SearchScope.department(null, true)))).containsExactly(2, 4, 6);
+    }
+
+    @Test
+    void derivedSortOrdersAndFiltersMatchAFullBuild() {
+        Random random = new Random(7);
+        List<Document> all = new ArrayList<>();
+        for (int i = 0; i < 300; i++) all.add(sized("doc_" + random.nextInt(100) + "_" + i + ".pdf", random));
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, all);
+        // Several notifications, so the tail runs are rebuilt on top of earlier ones
+        for (int g = 2; g < 6; g++) {
+            List<Document> added = new ArrayList<>();
+            for (int i = 0; i < 40; i++) added.add(sized("doc_" + random.nextInt(100) + "_" + g + "_" + i + ".pdf", random));
+            // An extension the base has never seen extends the tail's dictionary
+            added.get(0).setFileExtension("jpg");
+            all.addAll(added);
+            snapshot = snapshot.withChanges(g, List.of(), added, new ArrayList<>());
+        }
+        CatalogSnapshot full = CatalogSnapshot.build(9L, all);
+
+        for (SortOrder.Key key : SortOrder.Key.values()) {
+            SortOrder merged = snapshot.sortOrder(key);
+            SortOrder expected = full.sortOrder(key);
+            assertThat(merged.size()).isEqualTo(expected.size());
+            for (boolean desc : new boolean[]{false, true}) {
+                for (int p = 0; p < expected.size(); p++) {
+                    assertThat(merged.ordinalAt(p, desc)).as("%s desc=%s at %d", key, desc, p).isEqualTo(expected.ordinalAt(p, desc));
+                    assertThat(merged.positionOf(p, desc)).isEqualTo(expected.positionOf(p, desc));
+                }
+                // Walks merge base and tail in step rather than per position
+                int[] some = IntStream.range(0, all.size()).filter(o -> o % 7 == 0).toArray();
+                assertThat(merged.page(null, desc, 5, 400)).containsExactly(expected.page(null, desc, 5, 400));
+                assertThat(merged.page(some, desc, 3, 60)).containsExactly(expected.page(some, desc, 3, 60));
+                assertThat(merged.pageAfter(some, desc, 250, 30)).containsExactly(expected.pageAfter(some, desc, 250, 30));
+                List<Integer> walked = new ArrayList<>();
+                merged.forEach(null, desc, walked::add);
+                assertThat(walked).containsExactlyElementsOf(Arrays.stream(expected.page(null, desc, 0, all.size())).boxed().toList());
+            }
+        }
+
+        SearchFilters f = new SearchFilters();
+        f.setFileSizeMin(100L);
+        f.setFileSizeMax(600L);
+        f.setFileExtensions(List.of("tif", "jpg"));
+        assertThat(filtered(snapshot, f)).containsExactly(filtered(full, f));
+        assertThat(filtered(snapshot, f)).isNotEmpty();
+        for (int o : new int[]{0, 299, 300, all.size() - 1}) {
+            assertThat(snapshot.document(o)).usingRecursiveComparison().isEqualTo(full.document(o));
+        }
+    }
+
+    @Test
+    void departmentFilterKeepsItsIdsInBaseAndTail() {
+        CatalogSnapshot parent = CatalogSnapshot.build(1L, catalog());
+        CatalogSnapshot snapshot = parent.withChanges(2L, List.of(), List.of(doc("Hooli_report.pdf", 2), doc("Hooli_memo.pdf", 3)),
+                new ArrayList<>());
+        SearchFilters f = new SearchFilters();
+        f.setDepartment("Operations");
+
+        assertThat(departmentFiltered(snapshot, f, List.of(2))).containsExactly(1, 5);
+        assertThat(departmentFiltered(snapshot, f, List.of(3, 1))).containsExactly(0, 3, 6);
+        // A name no department has matches nothing
+        assertThat(departmentFiltered(snapshot, f, List.of())).isEmpty();
+        // Cache keys fold the name, and differ from a query without one
+        SearchFilters other = new SearchFilters();
+        other.setDepartment(" operations ");
+        assertThat(SearchResultCache.keyOf(f, SearchScope.all())).isEqualTo(SearchResultCache.keyOf(other, SearchScope.all()))
+                .isNotEqualTo(SearchResultCache.keyOf(new SearchFilters(), SearchScope.all()));
+    }
+
+    private static int[] departmentFiltered(CatalogSnapshot snapshot, SearchFilters f, List<Integer> ids) {
+        long[] bits = Bits.all(snapshot.size());
+        CatalogFilter.compile(f, snapshot.columns(), ids).apply(snapshot.columns(), bits, 0, snapshot.size());
+        return Bits.toOrdinals(bits);
+    }
+
+    private static int[] filtered(CatalogSnapshot snapshot, SearchFilters f) {
+        long[] bits = Bits.all(snapshot.size());
+        CatalogFilter.compile(f, snapshot.columns()).apply(snapshot.columns(), bits, 0, snapshot.size());
+        return Bits.toOrdinals(bits);
+    }
+
+    /** A document with a size from a small range (so there are ties), sometimes none, and a varying extension. */
+    private static Document sized(String name, Random random) {
+        Document d = doc(name, random.nextInt(3) == 0 ? null : random.nextInt(3));
+        if (random.nextInt(5) > 0) d.setFileSize((long) random.nextInt(1000));
+        if (random.nextInt(5) > 0) d.setOcrConfidence(random.nextInt(101));
+        d.setFileExtension(random.nextBoolean() ? "pdf" : random.nextBoolean() ? "tif" : "png");
+        return d;
+    }
+
+    /** Departments by ordinal: 1, 2, none, 1, none. */
+    static List<Document> catalog() {
+        List<Document> docs = new ArrayList<>();
+        docs.add(doc("ACME_12345678_statement.pdf", 1));
+        docs.add(doc("Globex_87654321_report.pdf", 2));
+        docs.add(doc("acme_fund_notice.docx", null));
+        docs.add(doc("ACME_12345678_letter.pdf", 1));
+        docs.add(doc("Initech_55500011_form.pdf", null));
+        return docs;
+    }
+
+    static Document doc(String name, Integer department) {
+        Document d = new Document();
+        d.setFileName(name);
+        d.setDepartmentId(department);
+        d.setFilePath("https://ocr.example/api/files/" + name);
+        return d;
+    }
+
+    static int[] ordinals(long[] bits) {
+        return Bits.toOrdinals(bits);
+    }
+}
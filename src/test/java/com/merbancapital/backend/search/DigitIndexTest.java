@@ -0,0 +1,71 @@
+package com.merbancapital.backend.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DigitIndexTest {
+
+    @Test
+    void matchesLinearScanForEveryQueryLength() {
+        Random random = new Random(7);
+        String[] keys = new String[2000];
+        for (int i = 0; i < keys.length; i++) {
+            if (i % 50 == 0) continue; // null: no digits at all
+            keys[i] = digits(random, random.nextInt(20));
+        }
+        DigitIndex index = DigitIndex.build(keys, i -> keys[i]);
+
+        for (int len = 1; len <= 12; len++) {
+            for (int q = 0; q < 40; q++) {
+                // Half the queries are cut from a key, so they hit
+                String key = keys[1 + random.nextInt(keys.length - 1)];
+                String query = q % 2 == 0 && key != null && key.length() >= len
+                        ? key.substring(random.nextInt(key.length() - len + 1)).substring(0, len)
+                        : digits(random, len);
+                assertThat(index.search(query)).as(query).containsExactly(scan(keys, query));
+            }
+        }
+    }
+
+    @Test
+    void findsAccountNumbersAtEitherEndOfTheKey() {
+        String[] keys = {"12345678", "2025072912345678", "12345678000", "1234567", "", null, "99912345678999"};
+        DigitIndex index = DigitIndex.build(keys, i -> keys[i]);
+
+        assertThat(index.search("12345678")).containsExactly(0, 1, 2, 6);
+        assertThat(index.search("678")).containsExactly(0, 1, 2, 6);
+        assertThat(index.search("4567")).containsExactly(0, 1, 2, 3, 6);
+        assertThat(index.search("7")).containsExactly(0, 1, 2, 3, 6);
+        assertThat(index.search("88888888")).isEmpty();
+    }
+
+    @Test
+    void repeatedGramsInQueryAndKey() {
+        String[] keys = {"000000000000", "0000000", "00000", "100000001"};
+        DigitIndex index = DigitIndex.build(keys, i -> keys[i]);
+
+        assertThat(index.search("00000000")).containsExactly(0);
+        assertThat(index.search("000000")).containsExactly(0, 1, 3);
+        assertThat(index.search("00000")).containsExactly(0, 1, 2, 3);
+    }
+
+    private static int[] scan(String[] keys, String q) {
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && keys[i].contains(q)) out.add(i);
+        }
+        return out.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String digits(Random random, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        // A small alphabet makes partial matches (and so verification) common
+        for (int i = 0; i < n; i++) sb.append((char) ('0' + random.nextInt(3)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package com.merbancapital.backend.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchCursorTest {
+
+    @Test
+    void roundTripsEveryField() {
+        long position = SearchCursor.relevancePosition(3.25f, 41);
+        SearchCursor cursor = SearchCursor.decode(new SearchCursor(7L, SearchCursor.MODE_RELEVANCE, true, position, 60, 0xCAFE).encode());
+
+        assertThat(cursor.generation()).isEqualTo(7L);
+        assertThat(cursor.mode()).isEqualTo(SearchCursor.MODE_RELEVANCE);
+        assertThat(cursor.desc()).isTrue();
+        assertThat(cursor.lastScore()).isEqualTo(3.25f);
+        assertThat(cursor.lastOrdinal()).isEqualTo(41);
+        assertThat(cursor.returned()).isEqualTo(60);
+        assertThat(cursor.fingerprint()).isEqualTo(0xCAFE);
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        String valid = new SearchCursor(1L, SearchCursor.MODE_CATALOG, false, 5, 10, 1).encode();
+
+        assertThatThrownBy(() -> SearchCursor.decode("not base64 !")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchCursor.decode(valid.substring(0, valid.length() - 4))).isInstanceOf(IllegalArgumentException.class);
+        byte[] raw = Base64.getUrlDecoder().decode(valid);
+        raw[0] = 99; // unknown version
+        assertThatThrownBy(() -> SearchCursor.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(raw)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void acceptsPositionsInsideTheSnapshot() {
+        assertThatCode(() -> new SearchCursor(1L, SearchCursor.MODE_CATALOG, false, 99, 100, 1).checkWithin(SearchCursor.MODE_CATALOG, 100))
+                .doesNotThrowAnyException();
+        assertThatCode(() -> new SearchCursor(1L, 2, true, 0, 1, 1).checkWithin(2, 100)).doesNotThrowAnyException();
+        long relevance = SearchCursor.relevancePosition(-1.5f, 0);
+        assertThatCode(() -> new SearchCursor(1L, SearchCursor.MODE_RELEVANCE, false, relevance, 1, 1).checkWithin(SearchCursor.MODE_RELEVANCE, 1))
+                .doesNotThrowAnyException();
+    }
+
+    @Test
+    void rejectsTamperedPositions() {
+        // A forged token decodes fine; only the range check against the snapshot catches it
+        SearchCursor pastEnd = SearchCursor.decode(forge(SearchCursor.MODE_CATALOG, 100, 5));
+        assertThatThrownBy(() -> pastEnd.checkWithin(SearchCursor.MODE_CATALOG, 100)).isInstanceOf(IllegalArgumentException.class);
+
+        SearchCursor negative = SearchCursor.decode(forge(1, -1, 5));
+        assertThatThrownBy(() -> negative.checkWithin(1, 100)).isInstanceOf(IllegalArgumentException.class);
+
+        SearchCursor negativeReturned = SearchCursor.decode(forge(1, 3, -20));
+        assertThatThrownBy(() -> negativeReturned.checkWithin(1, 100)).isInstanceOf(IllegalArgumentException.class);
+
+        SearchCursor relevance = SearchCursor.decode(forge(SearchCursor.MODE_RELEVANCE, SearchCursor.relevancePosition(1f, 500), 5));
+        assertThatThrownBy(() -> relevance.checkWithin(SearchCursor.MODE_RELEVANCE, 100)).isInstanceOf(IllegalArgumentException.class);
+
+        SearchCursor nan = SearchCursor.decode(forge(SearchCursor.MODE_RELEVANCE, SearchCursor.relevancePosition(Float.NaN, 1), 5));
+        assertThatThrownBy(() -> nan.checkWithin(SearchCursor.MODE_RELEVANCE, 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsCursorFromAnotherOrdering() {
+        SearchCursor sorted = new SearchCursor(1L, 2, false, 10, 11, 1);
+        assertThatThrownBy(() -> sorted.checkWithin(SearchCursor.MODE_CATALOG, 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /** A token built by hand, as a client tampering with it would. */
+    private static String forge(int mode, long position, int returned) {
+        ByteBuffer buf = ByteBuffer.allocate(27);
+        buf.put((byte) 1).putLong(1L).put((byte) mode).put((byte) 0).putLong(position).putInt(returned).putInt(1);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+}
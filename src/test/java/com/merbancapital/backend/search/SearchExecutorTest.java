@@ -0,0 +1,120 @@
+package com.merbancapital.backend.search;
+
+import com.merbancapital.backend.dto.SearchFilters;
+import com.merbancapital.backend.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchExecutorTest {
+
+    private static final String[] WORDS = {"fund", "notice", "capital", "call", "statement", "quarterly", "report", "wire"};
+
+    // Small segments so a few thousand documents span many of them
+    private final SearchExecutor parallel = new SearchExecutor(4, 64, 4);
+    private final SearchExecutor sequential = new SearchExecutor(1, 64, 1);
+
+    @AfterEach
+    void shutdown() {
+        parallel.shutdown();
+        sequential.shutdown();
+    }
+
+    @Test
+    void segmentResultsComeBackInOrder() {
+        List<int[]> ranges = parallel.map(1000, (from, to) -> new int[]{from, to});
+
+        assertThat(ranges).hasSize(16);
+        for (int s = 0; s < ranges.size(); s++) {
+            assertThat(ranges.get(s)).containsExactly(s * 64, Math.min(1000, (s + 1) * 64));
+        }
+    }
+
+    @Test
+    void columnFilterIsTheSameInParallel() {
+        CatalogSnapshot snapshot = snapshot();
+        SearchFilters f = new SearchFilters();
+        f.setFileSizeMin(200L);
+        f.setOcrConfidenceMin(30);
+        CatalogFilter filter = CatalogFilter.compile(f, snapshot.columns());
+
+        assertThat(filtered(snapshot, filter, parallel)).containsExactly(filtered(snapshot, filter, sequential));
+    }
+
+    @Test
+    void facetCountsAreTheSameInParallel() {
+        CatalogSnapshot snapshot = snapshot();
+        int[] hits = IntStream.range(0, snapshot.size()).filter(o -> o % 3 != 0).toArray();
+
+        for (int[] matches : new int[][]{null, hits}) {
+            FacetCounts p = FacetCounts.of(snapshot.columns(), matches, parallel);
+            FacetCounts s = FacetCounts.of(snapshot.columns(), matches, sequential);
+            for (Facet facet : Facet.values()) assertThat(p.get(facet)).containsExactlyEntriesOf(s.get(facet));
+        }
+    }
+
+    @Test
+    void sortedPagesAreTheSameInParallel() {
+        CatalogSnapshot snapshot = snapshot();
+        // Few matches (but more than a segment), so pages come from the per-segment heaps rather than a walk
+        int[] hits = IntStream.range(0, snapshot.size()).filter(o -> o % 45 == 0).toArray();
+
+        for (SortOrder.Key key : SortOrder.Key.values()) {
+            SortOrder order = snapshot.sortOrder(key);
+            assertThat(order.walks(hits.length, 8)).isFalse();
+            for (boolean desc : new boolean[]{false, true}) {
+                assertThat(order.page(hits, desc, 2, 8, parallel)).containsExactly(order.page(hits, desc, 2, 8, sequential));
+                assertThat(order.page(hits, desc, 0, 8, parallel)).containsExactly(order.page(hits, desc, 0, 8, null));
+            }
+        }
+    }
+
+    @Test
+    void relevanceTopKIsTheSameInParallel() {
+        CatalogSnapshot snapshot = snapshot();
+        FullTextIndex.Result ranked = snapshot.matchFullText("fund");
+
+        assertThat(ranked.size()).isGreaterThan(64);
+        assertThat(ranked.topKAfter(Float.POSITIVE_INFINITY, -1, 50, parallel))
+                .containsExactly(ranked.topKAfter(Float.POSITIVE_INFINITY, -1, 50, sequential));
+    }
+
+    private static int[] filtered(CatalogSnapshot snapshot, CatalogFilter filter, SearchExecutor executor) {
+        long[] bits = Bits.all(snapshot.size());
+        executor.forEach(snapshot.size(), (from, to) -> {
+            filter.apply(snapshot.columns(), bits, from, to);
+            return null;
+        });
+        return Bits.toOrdinals(bits);
+    }
+
+    /** A few thousand documents, with a tail, so the work spans many segments of both parts. */
+    private static CatalogSnapshot snapshot() {
+        Random random = new Random(11);
+        CatalogSnapshot snapshot = CatalogSnapshot.build(1L, documents(random, 3000, "base"));
+        return snapshot.withChanges(2L, List.of(), documents(random, 200, "tail"), new ArrayList<>());
+    }
+
+    private static List<Document> documents(Random random, int n, String prefix) {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Document d = CatalogSnapshotTest.doc(prefix + "_" + random.nextInt(500) + "_" + i + ".pdf",
+                    random.nextInt(4) == 0 ? null : random.nextInt(4));
+            d.setFileSize((long) random.nextInt(1000));
+            if (random.nextInt(4) > 0) d.setOcrConfidence(random.nextInt(101));
+            d.setClientId(random.nextInt(20));
+            d.setFileExtension(random.nextBoolean() ? "pdf" : "tif");
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 6; w++) text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            d.setSnippet(text.toString());
+            docs.add(d);
+        }
+        return docs;
+    }
+}
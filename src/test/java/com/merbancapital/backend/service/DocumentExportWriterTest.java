@@ -0,0 +1,72 @@
+package com.merbancapital.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.merbancapital.backend.model.Document;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DocumentExportWriterTest {
+
+    @Test
+    void csvQuotesFieldsWithSeparators() throws Exception {
+        Document d = new Document();
+        d.setFileName("Smith, \"J\" statement.pdf");
+        d.setFileSize(1024L);
+
+        assertThat(csvRow(d)).isEqualTo("\"Smith, \"\"J\"\" statement.pdf\",,,1024,,,,,,");
+    }
+
+    @Test
+    void csvDefusesFormulaCells() throws Exception {
+        for (String name : new String[]{"=cmd|' /C calc'!A0", "+1+1", "-2+3", "@SUM(A1)", "\tx"}) {
+            Document d = new Document();
+            d.setFileName(name);
+            assertThat(csvRow(d)).startsWith("'" + name.charAt(0));
+        }
+        Document d = new Document();
+        d.setFileName("=HYPERLINK(\"http://x\",\"y\").pdf");
+        d.setFilePath("https://ocr.example/api/files/a.pdf");
+        assertThat(csvRow(d)).startsWith("\"'=HYPERLINK(\"\"http://x\"\",\"\"y\"\").pdf\",https://ocr.example/api/files/a.pdf,");
+    }
+
+    @Test
+    void csvLeavesNumbersAlone() throws Exception {
+        Document d = new Document();
+        d.setFileName("report.pdf");
+        d.setFileSize(-1L);
+
+        assertThat(csvRow(d)).isEqualTo("report.pdf,,,-1,,,,,,");
+    }
+
+    @Test
+    void cancelledExportStopsBeforeTheNextDocument() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Document d = new Document();
+        d.setFileName("report.pdf");
+        try (DocumentExportWriter writer = DocumentExportWriter.open(DocumentExportWriter.Format.NDJSON, out,
+                new ObjectMapper(), cancelled::get)) {
+            writer.accept(d);
+            cancelled.set(true);
+            assertThatThrownBy(() -> writer.accept(d)).isInstanceOf(CancellationException.class);
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8).split("\n")).hasSize(1);
+    }
+
+    private static String csvRow(Document d) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DocumentExportWriter writer = DocumentExportWriter.open(DocumentExportWriter.Format.CSV, out, new ObjectMapper())) {
+            writer.accept(d);
+        }
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        return lines[1];
+    }
+}
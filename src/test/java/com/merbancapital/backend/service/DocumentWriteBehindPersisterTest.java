@@ -0,0 +1,147 @@
+package com.merbancapital.backend.service;
+
+import com.merbancapital.backend.model.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentWriteBehindPersisterTest {
+
+    private final List<String> statements = new ArrayList<>();
+    private Function<String, RuntimeException> failure = sql -> null;
+    private DocumentWriteBehindPersister persister;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbc = new JdbcTemplate() {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> setter) {
+                RuntimeException e = failure.apply(sql + " x" + batchArgs.size());
+                if (e != null) throw e;
+                statements.add(sql.substring(0, sql.indexOf(' ', 7)) + " x" + batchArgs.size());
+                int[] counts = new int[batchArgs.size()];
+                return new int[][]{counts};
+            }
+        };
+        persister = new DocumentWriteBehindPersister(jdbc, new NoOpTransactionManager());
+        ReflectionTestUtils.setField(persister, "enabled", true);
+        ReflectionTestUtils.setField(persister, "batchSize", 100);
+        ReflectionTestUtils.setField(persister, "flushMs", 60_000L);
+        ReflectionTestUtils.setField(persister, "maxPending", 3);
+        ReflectionTestUtils.setField(persister, "maxBackoffMs", 60_000L);
+        persister.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        persister.stop();
+    }
+
+    @Test
+    void renamesThenUpsertsInOneBatch() {
+        persister.enqueue("scan1.pdf", doc("ACME_1.pdf", 1));
+        persister.enqueue("ACME_2.pdf", doc("ACME_2.pdf", 1));
+
+        persister.stop();
+
+        assertThat(statements).containsExactly("UPDATE documents x1", "DELETE stale x1", "INSERT INTO x2");
+        assertThat(persister.pendingCount()).isZero();
+    }
+
+    @Test
+    void collapsesRenameChainsIntoOneRow() {
+        persister.enqueue("scan1.pdf", doc("a.pdf", 1));
+        persister.enqueue("a.pdf", doc("b.pdf", 1));
+
+        assertThat(persister.pendingCount()).isEqualTo(1);
+        persister.stop();
+        assertThat(statements).containsExactly("UPDATE documents x1", "DELETE stale x1", "INSERT INTO x1");
+    }
+
+    @Test
+    void reportsFullInsteadOfDropping() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(persister.enqueue(null, doc(i + ".pdf", 1))).isEqualTo(DocumentWriteBehindPersister.Outcome.QUEUED);
+        }
+
+        assertThat(persister.remainingCapacity()).isZero();
+        assertThat(persister.enqueue(null, doc("3.pdf", 1))).isEqualTo(DocumentWriteBehindPersister.Outcome.FULL);
+        // An update of a file already waiting still fits
+        assertThat(persister.enqueue(null, doc("1.pdf", 2))).isEqualTo(DocumentWriteBehindPersister.Outcome.QUEUED);
+    }
+
+    @Test
+    void clientlessRowsOnlyUpdate() {
+        persister.enqueue(null, doc("orphan.pdf", null));
+
+        persister.stop();
+
+        assertThat(statements).containsExactly("UPDATE documents x1");
+    }
+
+    @Test
+    void keepsRowsWhenTheDatabaseFails() {
+        failure = sql -> new QueryTimeoutException("down");
+        persister.enqueue(null, doc("a.pdf", 1));
+
+        persister.stop();
+
+        assertThat(statements).isEmpty();
+        assertThat(persister.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void isolatesRowsTheDatabaseRejects() {
+        failure = sql -> sql.endsWith("x2") ? new DataIntegrityViolationException("fk") : null;
+        persister.enqueue(null, doc("a.pdf", 1));
+        persister.enqueue(null, doc("b.pdf", 1));
+
+        persister.stop();
+
+        assertThat(statements).containsExactly("INSERT INTO x1", "INSERT INTO x1");
+        assertThat(persister.pendingCount()).isZero();
+    }
+
+    private static Document doc(String name, Integer client) {
+        Document d = new Document();
+        d.setFileName(name);
+        d.setClientId(client);
+        d.setIndexStatus(Document.IndexStatus.Indexed);
+        return d;
+    }
+
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}